@@ -0,0 +1,172 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the name compression of {@link MessageOutputStream} with the former implementation, which recorded
+ * every suffix as a string in a hash map.
+ * <p>
+ * Each benchmark writes the names of a response describing the given number of services of the same registration
+ * type: PTR, SRV and A records, hence many names sharing long suffixes. The response is small enough for every
+ * suffix to be pointed to, so that both implementations write the same bytes.
+ * <p>
+ * As done when sending, the stream is reused for every message whereas the former implementation created a new
+ * hash map for every message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class NameCompressionBenchmark {
+
+    /**
+     * The former implementation: every suffix is a substring of the name, looked up in a hash map.
+     */
+    private static final class StringMapWriter {
+
+        /** buffer. */
+        private final ByteBuffer buf;
+
+        /** suffix to position. */
+        private final Map<String, Integer> pointers;
+
+        StringMapWriter(final ByteBuffer aBuffer) {
+            buf = aBuffer;
+            buf.clear();
+            pointers = new HashMap<>();
+        }
+
+        final void writeName(final String name) {
+            String sub = name;
+            while (true) {
+                int split = sub.indexOf('.');
+                if (split < 0) {
+                    split = sub.length();
+                }
+                if (split <= 0) {
+                    buf.put((byte) 0);
+                    return;
+                }
+                final Integer offset = pointers.get(sub);
+                if (offset != null) {
+                    final int val = offset.intValue();
+                    buf.put((byte) (val >> 8 | 0xC0));
+                    buf.put((byte) (val & 0xFF));
+                    return;
+                }
+                pointers.put(sub, Integer.valueOf(buf.position()));
+                final byte[] label = sub.substring(0, split).getBytes(StandardCharsets.UTF_8);
+                buf.put((byte) label.length);
+                buf.put(label);
+                sub = sub.substring(split);
+                if (sub.charAt(0) == '.') {
+                    sub = sub.substring(1);
+                }
+            }
+        }
+
+    }
+
+    /** buffer. */
+    private ByteBuffer buf;
+
+    /** names to write. */
+    private List<String> names;
+
+    /** stream, reused for every message. */
+    private MessageOutputStream output;
+
+    /** number of services described by the response. */
+    @Param({ "10", "50", "100" })
+    private int services;
+
+    @Setup
+    public final void setup() {
+        buf = ByteBuffer.allocateDirect(MulticastDnsSd.MAX_DNS_MESSAGE_SIZE);
+        names = new ArrayList<>();
+        final String registrationPointerName = "_http._tcp.local.";
+        for (int i = 0; i < services; i++) {
+            final String serviceName = "Living Room Printer " + i + "." + registrationPointerName;
+            final String hostname = "printer-" + i + ".local.";
+            /* PTR. */
+            names.add(registrationPointerName);
+            names.add(serviceName);
+            /* SRV. */
+            names.add(serviceName);
+            names.add(hostname);
+            /* A. */
+            names.add(hostname);
+        }
+        output = new MessageOutputStream(buf);
+    }
+
+    @Benchmark
+    public final ByteBuffer stringMap() {
+        final StringMapWriter writer = new StringMapWriter(buf);
+        for (final String name : names) {
+            writer.writeName(name);
+        }
+        return buf;
+    }
+
+    @Benchmark
+    public final ByteBuffer suffixTable() {
+        output.clear();
+        for (final String name : names) {
+            output.writeName(name);
+        }
+        return buf;
+    }
+
+}
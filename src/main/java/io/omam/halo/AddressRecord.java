@@ -94,6 +94,21 @@ final class AddressRecord extends DnsRecord {
         return address;
     }
 
+    @Override
+    protected final int estimatedDataSize() {
+        return address instanceof Inet4Address ? 48 : 64;
+    }
+
+    @Override
+    protected final boolean hasSameData(final DnsRecord other) {
+        return address.equals(((AddressRecord) other).address);
+    }
+
+    @Override
+    protected final int maxDataSize() {
+        return address instanceof Inet4Address ? 4 : 16;
+    }
+
     @Override
     protected void write(final MessageOutputStream mos) {
         mos.writeAllBytes(address.getAddress());
@@ -40,7 +40,6 @@ import static io.omam.halo.MulticastDnsSd.CLASS_IN;
 import static io.omam.halo.MulticastDnsSd.FLAGS_AA;
 import static io.omam.halo.MulticastDnsSd.TYPE_ANY;
 import static io.omam.halo.MulticastDnsSd.TYPE_SRV;
-import static io.omam.halo.MulticastDnsSd.uniqueClass;
 
 import java.io.IOException;
 import java.time.Duration;
@@ -58,6 +57,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
 import io.omam.halo.SequentialBatchExecutor.FutureBatch;
 
 /**
@@ -70,8 +70,11 @@ final class Announcer implements AutoCloseable {
      */
     private static final class AnnounceTask implements Callable<Void> {
 
-        /** the service to announce. */
-        private final Service service;
+        /** the records of the service to announce. */
+        private final ServiceRecords records;
+
+        /** link to announce the service through, or empty for all links. */
+        private final Optional<Link> link;
 
         /** service time to live; */
         private final Duration ttl;
@@ -82,41 +85,25 @@ final class Announcer implements AutoCloseable {
         /**
          * Constructor.
          *
-         * @param aService service to announce
+         * @param someRecords records of the service to announce
+         * @param aLink link to announce the service through, or empty for all links
          * @param aTtl service time to live
          * @param haloHelper halo helper
          */
-        AnnounceTask(final Service aService, final Duration aTtl, final HaloHelper haloHelper) {
-            service = aService;
+        AnnounceTask(final ServiceRecords someRecords, final Optional<Link> aLink, final Duration aTtl,
+                final HaloHelper haloHelper) {
+            records = someRecords;
+            link = aLink;
             ttl = aTtl;
             halo = haloHelper;
         }
 
         @Override
         public final Void call() throws Exception {
-            final Instant now = halo.now();
-            final String hostname = service.hostname();
-            final Attributes attributes = service.attributes();
-            final String serviceName = service.name();
-            final short unique = uniqueClass(CLASS_IN);
-            /* no stamp when announcing, TTL will be the one given. */
-            final Optional<Instant> stamp = Optional.empty();
-            final Builder builder = DnsMessage
-                .response(FLAGS_AA)
-                .addAnswer(new PtrRecord(service.registrationPointerName(), CLASS_IN, ttl, now, serviceName),
-                        stamp)
-                .addAnswer(new SrvRecord(serviceName, unique, ttl, now, service.port(), hostname), stamp)
-                .addAnswer(new TxtRecord(serviceName, unique, ttl, now, attributes), stamp);
-
-            service
-                .ipv4Address()
-                .ifPresent(a -> builder.addAnswer(new AddressRecord(hostname, unique, ttl, now, a), stamp));
-
-            service
-                .ipv6Address()
-                .ifPresent(a -> builder.addAnswer(new AddressRecord(hostname, unique, ttl, now, a), stamp));
-
-            halo.sendMessage(builder.get());
+            final Builder builder = DnsMessage.response(FLAGS_AA);
+            records.addAnswers(builder, ttl);
+            link.ifPresent(builder::to);
+            halo.sendMessage(builder.get(), Priority.REGISTRATION);
             return null;
         }
     }
@@ -135,6 +122,9 @@ final class Announcer implements AutoCloseable {
         /** whether a response matching the probe query was received. */
         private final AtomicBoolean match;
 
+        /** name of the service being probed. */
+        private final DnsName name;
+
         /** the service being probed. */
         private final RegisterableService service;
 
@@ -151,10 +141,12 @@ final class Announcer implements AutoCloseable {
             match = new AtomicBoolean(false);
             lock = new ReentrantLock();
             cdt = lock.newCondition();
+            name = DnsName.of(service.name());
+            final DnsName hostname = DnsName.of(service.hostname());
             conflicting = other -> {
-                if (other.type() == TYPE_SRV && other.name().equalsIgnoreCase(service.name())) {
+                if (other.type() == TYPE_SRV && other.dnsName().equals(name)) {
                     final SrvRecord srvRecord = (SrvRecord) other;
-                    return !srvRecord.server().equalsIgnoreCase(service.hostname());
+                    return !srvRecord.serverName().equals(hostname);
                 }
                 return false;
             };
@@ -167,7 +159,7 @@ final class Announcer implements AutoCloseable {
             LOGGER.fine(() -> "Handling " + response);
             try {
                 if (response
-                    .answers()
+                    .answers(name)
                     .stream()
                     // and its not us...
                     .anyMatch(conflicting)) {
@@ -254,7 +246,7 @@ final class Announcer implements AutoCloseable {
                 .ipv6Address()
                 .ifPresent(a -> builder.addAuthority(new AddressRecord(hostname, CLASS_IN, TTL, now, a)));
 
-            halo.sendMessage(builder.get());
+            halo.sendMessage(builder.get(), Priority.REGISTRATION);
             return null;
         }
     }
@@ -311,7 +303,8 @@ final class Announcer implements AutoCloseable {
             if (conflictFree) {
                 /* announce */
                 LOGGER.fine(() -> "Announcing " + service);
-                final AnnounceTask announce = new AnnounceTask(service, ttl, halo);
+                final ServiceRecords records = new ServiceRecords(service, halo.now());
+                final AnnounceTask announce = new AnnounceTask(records, Optional.empty(), ttl, halo);
                 executor.scheduleBatch(name, announce, ANNOUNCEMENT_NUM, ANNOUNCEMENT_INTERVAL).awaitFirst();
                 LOGGER.info(() -> "Announced " + service);
             }
@@ -334,10 +327,36 @@ final class Announcer implements AutoCloseable {
      * @param ttl the TTL
      * @throws IOException in case of I/O error
      */
-    final void reannounce(final RegisteredService service, final Duration ttl) throws IOException {
+    final void reannounce(final RegisteredServiceImpl service, final Duration ttl) throws IOException {
+        reannounce(service, Optional.empty(), ttl);
+    }
+
+    /**
+     * Re-announces the given registered service through the given link only, after the link has been added.
+     *
+     * @param service the service
+     * @param link the link
+     * @param ttl the TTL
+     * @throws IOException in case of I/O error
+     */
+    final void reannounce(final RegisteredServiceImpl service, final Link link, final Duration ttl)
+            throws IOException {
+        reannounce(service, Optional.of(link), ttl);
+    }
+
+    /**
+     * Re-announces the given registered service through the given link, or through all links if empty.
+     *
+     * @param service the service
+     * @param link the link, or empty for all links
+     * @param ttl the TTL
+     * @throws IOException in case of I/O error
+     */
+    private void reannounce(final RegisteredServiceImpl service, final Optional<Link> link, final Duration ttl)
+            throws IOException {
         try {
-            LOGGER.fine(() -> "Re-announcing " + service);
-            final AnnounceTask announce = new AnnounceTask(service, ttl, halo);
+            LOGGER.fine(() -> "Re-announcing " + service + link.map(l -> " on " + l).orElse(""));
+            final AnnounceTask announce = new AnnounceTask(service.records(), link, ttl, halo);
             executor.scheduleBatch(service.name(), announce, ANNOUNCEMENT_NUM, ANNOUNCEMENT_INTERVAL).awaitFirst();
             LOGGER.info(() -> "Re-announced " + service);
         } catch (final ExecutionException e) {
@@ -51,37 +51,54 @@ final class AttributesCodec {
 
     /**
      * Obtains an instance of {@code Attributes} by reading the given number of bytes from the given stream.
+     * <p>
+     * The bytes are only copied: key/value pairs are decoded when first accessed.
      *
      * @param input stream of bytes
      * @param length number of bytes to read
      * @return attributes, not null
      */
     static Attributes decode(final MessageInputStream input, final int length) {
+        return new EncodedAttributes(input.readBytes(length));
+    }
+
+    /**
+     * Decodes the key/value pairs of the given bytes.
+     * <p>
+     * Values are read-only views of the given bytes, which therefore must not be modified.
+     *
+     * @param bytes bytes to decode
+     * @return key/value pairs
+     */
+    static Map<String, Optional<ByteBuffer>> decode(final byte[] bytes) {
         final Map<String, Optional<ByteBuffer>> map = new HashMap<>();
-        int readBytes = 0;
-        while (readBytes < length) {
-            final int pairLength = input.readByte();
-            final byte[] bytes = input.readBytes(pairLength);
-            final int sep = separator(bytes);
+        int index = 0;
+        while (index < bytes.length) {
+            final int pairLength = Math.min(bytes[index] & 0xFF, bytes.length - index - 1);
+            final int from = index + 1;
+            final int to = from + pairLength;
+            final int sep = separator(bytes, from, to);
             final String key;
             final Optional<ByteBuffer> value;
             if (sep == -1) {
-                key = new String(bytes, StandardCharsets.UTF_8);
+                key = new String(bytes, from, pairLength, StandardCharsets.UTF_8);
                 value = Optional.empty();
             } else {
-                key = new String(subarray(bytes, 0, sep), StandardCharsets.UTF_8);
-                value = Optional.of(value(bytes, sep));
+                key = new String(bytes, from, sep - from, StandardCharsets.UTF_8);
+                value = Optional.of(ByteBuffer.wrap(bytes, sep + 1, to - sep - 1).slice().asReadOnlyBuffer());
             }
             if (!key.isEmpty() && !map.containsKey(key)) {
                 map.put(key, value);
             }
-            readBytes = readBytes + pairLength + 1;
+            index = to;
         }
-        return new AttributesImpl(map);
+        return map;
     }
 
     /**
      * Writes the given {@code Attributes} to the given stream.
+     * <p>
+     * Each key/value pair is written in place, its length being written once the pair has been written.
      *
      * @param attributes attributes
      * @param output stream of bytes
@@ -89,18 +106,15 @@ final class AttributesCodec {
     static void encode(final Attributes attributes, final MessageOutputStream output) {
         final Set<String> keys = attributes.keys();
         for (final String key : keys) {
-            try (final MessageOutputStream attos = new MessageOutputStream()) {
-                attos.writeString(key);
-                final Optional<ByteBuffer> value = attributes.value(key);
-                if (value.isPresent()) {
-                    attos.writeString("=");
-                    final byte[] bytes = new byte[value.get().remaining()];
-                    value.get().get(bytes);
-                    attos.writeAllBytes(bytes);
-                }
-                output.writeByte(attos.size());
-                output.writeAllBytes(attos.toByteArray());
+            final int sizePos = output.position();
+            output.skip(1);
+            output.writeString(key);
+            final Optional<ByteBuffer> value = attributes.value(key);
+            if (value.isPresent()) {
+                output.writeByte('=');
+                output.writeAllBytes(value.get());
             }
+            output.writeByte(sizePos, output.position() - sizePos - 1);
         }
     }
 
@@ -108,10 +122,12 @@ final class AttributesCodec {
      * Returns the index of the key/value separator ('=').
      *
      * @param bytes array of bytes
+     * @param from index of the first byte of the key/value pair, inclusive
+     * @param to index of the last byte of the key/value pair, exclusive
      * @return index of the key/value separator ('=') or {@code -1} if no separator was found
      */
-    private static int separator(final byte[] bytes) {
-        for (int index = 0; index < bytes.length; index++) {
+    private static int separator(final byte[] bytes, final int from, final int to) {
+        for (int index = from; index < to; index++) {
             if (bytes[index] == '=') {
                 return index;
             }
@@ -119,34 +135,4 @@ final class AttributesCodec {
         return -1;
     }
 
-    /**
-     * Sub array of given array from begin inclusive to end exclusive.
-     *
-     * @param bytes array of bytes
-     * @param beginIndex the beginning index, inclusive.
-     * @param endIndex the ending index, exclusive.
-     * @return sub array
-     */
-    private static byte[] subarray(final byte[] bytes, final int beginIndex, final int endIndex) {
-        final int length = endIndex - beginIndex;
-        final byte[] arr = new byte[length];
-        System.arraycopy(bytes, beginIndex, arr, 0, length);
-        return arr;
-    }
-
-    /**
-     * Reads the value: everything after the given index.
-     *
-     * @param bytes array of bytes
-     * @param sep index of the key/value separator
-     * @return value
-     */
-    private static ByteBuffer value(final byte[] bytes, final int sep) {
-        final int length = bytes.length - sep;
-        if (length == 1) {
-            return ByteBuffer.allocate(0);
-        }
-        return ByteBuffer.wrap(subarray(bytes, sep + 1, bytes.length));
-    }
-
 }
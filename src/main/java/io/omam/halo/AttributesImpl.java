@@ -63,6 +63,9 @@ final class AttributesImpl implements Attributes {
         if (this == obj) {
             return true;
         }
+        if (obj instanceof EncodedAttributes) {
+            return obj.equals(this);
+        }
         if (!(obj instanceof AttributesImpl)) {
             return false;
         }
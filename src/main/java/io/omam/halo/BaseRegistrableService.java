@@ -42,10 +42,10 @@ abstract class BaseRegistrableService extends BaseService {
     private final String hostname;
 
     /** service IPv4 address. */
-    private final Optional<InetAddress> ipv4Address;
+    private volatile Optional<InetAddress> ipv4Address;
 
     /** service IPv6 address. */
-    private final Optional<InetAddress> ipv6Address;
+    private volatile Optional<InetAddress> ipv6Address;
 
     /** service port. */
     private final short port;
@@ -91,4 +91,24 @@ abstract class BaseRegistrableService extends BaseService {
         return port;
     }
 
+    /**
+     * Replaces the IPv4 or IPv6 address of this service, if it is the given previous address.
+     *
+     * @param previous previous address
+     * @param current new address, of the same family
+     * @return {@code true} if the address has been replaced
+     */
+    protected boolean changeAddress(final InetAddress previous, final InetAddress current) {
+        final Optional<InetAddress> p = Optional.of(previous);
+        if (ipv4Address.equals(p)) {
+            ipv4Address = Optional.of(current);
+            return true;
+        }
+        if (ipv6Address.equals(p)) {
+            ipv6Address = Optional.of(current);
+            return true;
+        }
+        return false;
+    }
+
 }
@@ -0,0 +1,107 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of {@link ByteBuffer}s of identical capacity.
+ * <p>
+ * Buffers are allocated lazily, so that memory usage grows with the number of buffers in use at the same time
+ * rather than with the capacity of this pool. This class is thread-safe.
+ */
+final class BufferPool {
+
+    /** capacity of each buffer in bytes. */
+    private final int bufferSize;
+
+    /** whether buffers are direct (off-heap). */
+    private final boolean direct;
+
+    /** maximum number of buffers allocated by this pool. */
+    private final int capacity;
+
+    /** number of buffers allocated so far. */
+    private final AtomicInteger allocated;
+
+    /** released buffers, ready to be acquired again. */
+    private final Queue<ByteBuffer> free;
+
+    /**
+     * Constructor.
+     *
+     * @param aBufferSize capacity of each buffer in bytes
+     * @param isDirect whether buffers are direct (off-heap)
+     * @param aCapacity maximum number of buffers allocated by this pool
+     */
+    BufferPool(final int aBufferSize, final boolean isDirect, final int aCapacity) {
+        bufferSize = aBufferSize;
+        direct = isDirect;
+        capacity = aCapacity;
+        allocated = new AtomicInteger(0);
+        free = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Acquires a cleared buffer from this pool.
+     *
+     * @return a cleared buffer or {@code null} if all the buffers of this pool are in use
+     */
+    final ByteBuffer acquire() {
+        final ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            buffer.clear();
+            return buffer;
+        }
+        if (allocated.incrementAndGet() > capacity) {
+            allocated.decrementAndGet();
+            return null;
+        }
+        final ByteBuffer allocation =
+                direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        allocation.order(ByteOrder.BIG_ENDIAN);
+        return allocation;
+    }
+
+    /**
+     * Releases the given buffer, which must have been acquired from this pool.
+     *
+     * @param buffer buffer to release
+     */
+    final void release(final ByteBuffer buffer) {
+        free.add(buffer);
+    }
+
+}
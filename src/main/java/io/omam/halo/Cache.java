@@ -1,5 +1,5 @@
 /*
-Copyright 2018 - 2020 Cedric Liegeois
+Copyright 2020 Cedric Liegeois
 
 Redistribution and use in source and binary forms, with or without
 modification, are permitted provided that the following conditions are met:
@@ -33,49 +33,240 @@ package io.omam.halo;
 import static io.omam.halo.HaloProperties.EXPIRY_TTL;
 import static io.omam.halo.MulticastDnsSd.CLASS_ANY;
 import static io.omam.halo.MulticastDnsSd.TYPE_ANY;
-import static io.omam.halo.MulticastDnsSd.toLowerCase;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * A cache of DNS records.
+ * <p>
+ * The cache holds the DNS records of each name (ignoring case), type and class as a small set, in which a record
+ * only replaces the {@link DnsRecord#isSameRecord(DnsRecord) same record}: e.g. all the PTR records of a
+ * registration type, or all the addresses of a host, are cached together. A record whose class is unique flushes
+ * the other records with the same name, type and class which have been received more than one second before it
+ * (RFC 6762 section 10.2). Records are indexed by name and by type so that all records of a given name or of a
+ * given type are found without scanning the cache. All changes to a given name, type and class are atomic,
+ * including the update of the indexes.
+ * <p>
+ * Expiration times are kept in a min-heap, in which each name, type and class has a deadline that is never later
+ * than the expiration time of its records: removing expired records only touches the records which are due.
+ * <p>
+ * The estimated size of the cached records is bounded by a capacity. When the capacity is exceeded, records are
+ * evicted until the cache is back to 90% of its capacity: first the records whose name is of no interest, then the
+ * others, least recently used first. A name is of interest if it is being browsed, or if it is the name or the
+ * server of a service resolved for a browsed registration type or being resolved. The keys of the cached records
+ * are kept in two access-ordered lists, one for the keys known to be of interest and one for the others, so that
+ * evicting only walks the least recently used keys: keys met in the wrong list are moved to the right one.
+ * <p>
+ * A listener is notified of every record which is no longer cached, i.e. replaced, removed or evicted, once the
+ * change has been made.
  */
 final class Cache {
 
+    /**
+     * Time at which the record of a given key shall be checked for expiration.
+     */
+    private static final class Deadline {
+
+        /** key. */
+        private final Key key;
+
+        /** time in milliseconds since the epoch. */
+        private final long time;
+
+        /**
+         * Constructor.
+         *
+         * @param aKey key
+         * @param aTime time in milliseconds since the epoch
+         */
+        Deadline(final Key aKey, final long aTime) {
+            key = aKey;
+            time = aTime;
+        }
+
+    }
+
+    /**
+     * The cached DNS records of a given key, replaced as a whole whenever they change.
+     */
+    private static final class Entry {
+
+        /** DNS records, oldest first. */
+        private final List<DnsRecord> records;
+
+        /** estimated size of the DNS records in bytes. */
+        private final int size;
+
+        /**
+         * Constructor.
+         *
+         * @param someRecords DNS records, oldest first, not empty
+         */
+        Entry(final List<DnsRecord> someRecords) {
+            records = someRecords;
+            size = someRecords.stream().mapToInt(DnsRecord::estimatedSize).sum();
+        }
+
+        /**
+         * @return the time at which the first of the DNS records expires in milliseconds since the epoch.
+         */
+        final long expiry() {
+            long result = Long.MAX_VALUE;
+            for (final DnsRecord record : records) {
+                result = Math.min(result, record.expiry());
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Key of cached DNS records: their name, type and class.
+     */
+    static final class Key {
+
+        /** record class. */
+        private final short clazz;
+
+        /** record name. */
+        private final DnsName name;
+
+        /** record type. */
+        private final short type;
+
+        /**
+         * Constructor.
+         *
+         * @param aName record name
+         * @param aType record type
+         * @param aClass record class
+         */
+        Key(final DnsName aName, final short aType, final short aClass) {
+            clazz = aClass;
+            name = aName;
+            type = aType;
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param record DNS record
+         */
+        Key(final DnsRecord record) {
+            this(record.dnsName(), record.type(), record.clazz());
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return type == other.type && clazz == other.clazz && name.equals(other.name);
+        }
+
+        @Override
+        public final int hashCode() {
+            return (name.hashCode() * 31 + type) * 31 + clazz;
+        }
+
+    }
+
     /** logger. */
     private static final Logger LOGGER = Logger.getLogger(Cache.class.getName());
 
-    /** maps a DNS record key to all cached DNS entries. */
-    private final Map<String, Collection<DnsRecord>> map;
+    /** records received within this delay of a record whose class is unique are not flushed, in milliseconds. */
+    private static final long FLUSH_DELAY = 1000;
+
+    /** keys of all cached DNS records indexed by record name. */
+    private final Map<DnsName, Set<Key>> byName;
+
+    /** keys of all cached DNS records indexed by record type. */
+    private final Map<Short, Set<Key>> byType;
+
+    /** maximum estimated size of the cached records in bytes. */
+    private final long capacity;
+
+    /** deadlines ordered by time, guarded by itself; may contain deadlines superseded by an earlier one. */
+    private final Queue<Deadline> deadlines;
+
+    /** number of evicted records. */
+    private final AtomicLong evictions;
+
+    /** number of look-ups which found a record. */
+    private final AtomicLong hits;
+
+    /** keys known to be of interest, least recently used first, guarded by {@link #otherKeys}. */
+    private final Map<Key, Key> interestingKeys;
+
+    /** supplies the names whose records are of interest. */
+    private final Supplier<Set<DnsName>> interests;
+
+    /** notified of every record which is no longer cached. */
+    private final Consumer<DnsRecord> listener;
+
+    /** number of look-ups which found no record. */
+    private final AtomicLong misses;
 
     /**
-     * Constructor.
+     * keys not known to be of interest, least recently used first, guarded by itself; like
+     * {@link #interestingKeys}, may contain keys which are no longer cached.
      */
-    Cache() {
-        map = new ConcurrentHashMap<>();
-    }
+    private final Map<Key, Key> otherKeys;
+
+    /** all cached DNS records by key. */
+    private final Map<Key, Entry> records;
+
+    /** current deadline of each key, guarded by {@link #deadlines}. */
+    private final Map<Key, Deadline> scheduled;
+
+    /** estimated size of the cached records in bytes. */
+    private final AtomicLong size;
 
     /**
-     * Returns true if both DNS records have the same service class (or one has a service class of
-     * {@link #CLASS_ANY}).
+     * Constructor.
      *
-     * @param record1 DNS record
-     * @param record2 DNS record
-     * @return as described above
+     * @param aCapacity maximum estimated size of the cached records in bytes
+     * @param someInterests supplies the names whose records are of interest
+     * @param aListener notified of every record which is no longer cached
      */
-    private static boolean isSameClass(final DnsRecord record1, final DnsRecord record2) {
-        return isSameClass(record1, record2.clazz());
+    Cache(final long aCapacity, final Supplier<Set<DnsName>> someInterests, final Consumer<DnsRecord> aListener) {
+        byName = new ConcurrentHashMap<>();
+        byType = new ConcurrentHashMap<>();
+        capacity = aCapacity;
+        deadlines = new PriorityQueue<>(Comparator.comparingLong(d -> d.time));
+        evictions = new AtomicLong();
+        hits = new AtomicLong();
+        interestingKeys = new LinkedHashMap<>(16, 0.75f, true);
+        interests = someInterests;
+        listener = aListener;
+        misses = new AtomicLong();
+        otherKeys = new LinkedHashMap<>(16, 0.75f, true);
+        records = new ConcurrentHashMap<>();
+        scheduled = new HashMap<>();
+        size = new AtomicLong();
     }
 
     /**
@@ -89,18 +280,6 @@ final class Cache {
         return record.clazz() == CLASS_ANY || clazz == CLASS_ANY || record.clazz() == clazz;
     }
 
-    /**
-     * Returns true if both DNS records have the same service type (or one has a service type of
-     * {@link #TYPE_ANY}).
-     *
-     * @param record1 DNS record
-     * @param record2 DNS record
-     * @return as described above
-     */
-    private static boolean isSameType(final DnsRecord record1, final DnsRecord record2) {
-        return isSameType(record1, record2.type());
-    }
-
     /**
      * Returns true if given DNS record has given service type (or record/given type is {@link #TYPE_ANY}).
      *
@@ -112,16 +291,6 @@ final class Cache {
         return record.type() == TYPE_ANY || type == TYPE_ANY || record.type() == type;
     }
 
-    /**
-     * Returns the association key for the given record.
-     *
-     * @param record record
-     * @return key
-     */
-    private static String key(final DnsRecord record) {
-        return toLowerCase(record.name());
-    }
-
     /**
      * Logs search result.
      *
@@ -135,51 +304,99 @@ final class Cache {
         }
     }
 
-    /**
-     * Determines whether both given DNS records have the same type and class.
-     *
-     * @param record1 first DNS record
-     * @param record2 second DNS record
-     * @return {@code true} if both DNS records have the same type and class, {@code false} otherwise
-     */
-    private static boolean matches(final DnsRecord record1, final DnsRecord record2) {
-        return isSameType(record1, record2) && isSameClass(record1, record2);
-    }
-
     /**
      * Adds the given DNS record to this cache.
      * <p>
-     * If a DNS record matching the given record name (ignoring case), type and class already exists, it is
-     * replaced with the given one.
+     * If the {@link DnsRecord#isSameRecord(DnsRecord) same record} is already cached, it is atomically replaced
+     * with the given one; other records with the same name (ignoring case), type and class are kept, unless the
+     * class of the given record is unique and they have been received more than one second before it. Records are
+     * evicted if the capacity of this cache is exceeded.
      *
      * @param record DNS record to add
      */
     final void add(final DnsRecord record) {
         Objects.requireNonNull(record);
-        final boolean existed = entries(record.name()).removeIf(other -> matches(other, record));
-        final String key = key(record);
-        if (existed) {
-            LOGGER.fine(() -> "Replacing cached record " + key + " with " + record);
-        } else {
-            LOGGER.fine(() -> "Adding " + record + " to cache");
+        final Key key = new Key(record);
+        final List<DnsRecord> removed = new ArrayList<>(1);
+        records.compute(key, (k, existing) -> {
+            if (existing == null) {
+                LOGGER.fine(() -> "Adding " + record + " to cache");
+                final Entry entry = new Entry(Collections.singletonList(record));
+                index(k);
+                touch(k);
+                size.addAndGet(entry.size);
+                return entry;
+            }
+            final List<DnsRecord> all = new ArrayList<>(existing.records.size() + 1);
+            final long flushed = record.isUnique() ? record.created() - FLUSH_DELAY : Long.MIN_VALUE;
+            boolean replaced = false;
+            for (final DnsRecord other : existing.records) {
+                if (other.isSameRecord(record)) {
+                    LOGGER.fine(() -> "Replacing cached " + other + " with " + record);
+                    replaced = true;
+                    if (other != record) {
+                        removed.add(other);
+                    }
+                } else if (other.created() < flushed) {
+                    LOGGER.fine(() -> "Flushing cached " + other + " on receipt of " + record);
+                    removed.add(other);
+                } else {
+                    all.add(other);
+                }
+            }
+            if (!replaced) {
+                LOGGER.fine(() -> "Adding " + record + " to cache");
+            }
+            all.add(record);
+            final Entry entry = new Entry(Collections.unmodifiableList(all));
+            size.addAndGet(entry.size - existing.size);
+            return entry;
+        });
+        notify(removed);
+        schedule(key, record.expiry());
+        if (size.get() > capacity) {
+            evict();
         }
-        map.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(record);
     }
 
     /**
      * Removes all expired DNS records.
+     * <p>
+     * Only the records whose deadline is due are checked: records which are not expired, because their deadline
+     * was set before they were replaced, are scheduled again at their expiration time.
      *
      * @param now current instant
      */
     final void clean(final Instant now) {
-        final Set<String> services = new HashSet<>();
-        for (final Entry<String, Collection<DnsRecord>> e : map.entrySet()) {
-            e.getValue().removeIf(r -> r.isExpired(now));
-            if (e.getValue().isEmpty()) {
-                services.add(e.getKey());
+        final long millis = now.toEpochMilli();
+        for (final Key key : due(millis)) {
+            final List<DnsRecord> removed = new ArrayList<>(1);
+            final Entry remaining = records.computeIfPresent(key, (k, e) -> {
+                final List<DnsRecord> kept = new ArrayList<>(e.records.size());
+                for (final DnsRecord record : e.records) {
+                    if (record.isExpired(millis)) {
+                        LOGGER.fine(() -> "Removing expired " + record + " from cache");
+                        removed.add(record);
+                    } else {
+                        kept.add(record);
+                    }
+                }
+                if (removed.isEmpty()) {
+                    return e;
+                }
+                if (kept.isEmpty()) {
+                    unindex(k, e);
+                    return null;
+                }
+                final Entry entry = new Entry(Collections.unmodifiableList(kept));
+                size.addAndGet(entry.size - e.size);
+                return entry;
+            });
+            notify(removed);
+            if (remaining != null) {
+                schedule(key, remaining.expiry());
             }
         }
-        services.forEach(map::remove);
     }
 
     /**
@@ -187,7 +404,29 @@ final class Cache {
      */
     final void clear() {
         LOGGER.fine("Clearing cache");
-        map.clear();
+        records.keySet().forEach(this::remove);
+    }
+
+    /**
+     * Determines whether the given record is cached, i.e. has not been replaced or removed. Unlike
+     * {@link #get(DnsName, short, short)}, this is not counted as a look-up and does not change the last access of
+     * the record.
+     *
+     * @param record DNS record
+     * @return {@code true} iff the given record is cached
+     */
+    final boolean contains(final DnsRecord record) {
+        final Entry entry = records.get(new Key(record));
+        return entry != null && entry.records.stream().anyMatch(r -> r == record);
+    }
+
+    /**
+     * @return all cached DNS records.
+     */
+    final Collection<DnsRecord> entries() {
+        final List<DnsRecord> result = new ArrayList<>(records.size());
+        records.values().forEach(e -> result.addAll(e.records));
+        return result;
     }
 
     /**
@@ -196,33 +435,61 @@ final class Cache {
      * @param name record name
      * @return all DNS records matching the given name
      */
-    final Collection<DnsRecord> entries(final String name) {
-        return map.getOrDefault(toLowerCase(name), Collections.emptyList());
+    final Collection<DnsRecord> entries(final DnsName name) {
+        return lookup(byName.get(name));
+    }
+
+    /**
+     * Returns all DNS records of the given type.
+     *
+     * @param type record type
+     * @return all DNS records of the given type
+     */
+    final Collection<DnsRecord> entries(final short type) {
+        return lookup(byType.get(type));
+    }
+
+    /**
+     * @return the number of records which have been evicted because the capacity of this cache was exceeded.
+     */
+    final long evictions() {
+        return evictions.get();
     }
 
     /**
-     * Sets the TTL of the given cached record to {@link HaloProperties#EXPIRY_TTL} in order for the reaper to
-     * remove it later.
+     * Sets the TTL of the cached {@link DnsRecord#isSameRecord(DnsRecord) same record} as the given one to
+     * {@link HaloProperties#EXPIRY_TTL} in order for the reaper to remove it later.
      *
      * @param record DNS record to remove
      */
     final void expire(final DnsRecord record) {
         Objects.requireNonNull(record);
-        entries(record.name()).stream().filter(other -> matches(record, other)).forEach(r -> {
-            LOGGER.fine(() -> "Setting TTL of " + record + " to " + EXPIRY_TTL);
-            r.setTtl(EXPIRY_TTL);
+        final Key key = new Key(record);
+        final Entry expired = records.computeIfPresent(key, (k, e) -> {
+            for (final DnsRecord other : e.records) {
+                if (other.isSameRecord(record)) {
+                    LOGGER.fine(() -> "Setting TTL of " + other + " to " + EXPIRY_TTL);
+                    other.setTtl(EXPIRY_TTL);
+                }
+            }
+            return e;
         });
+        if (expired != null) {
+            schedule(key, expired.expiry());
+        }
     }
 
     /**
-     * Returns the DNS record matching the given name, type and class if it exists.
+     * Returns the DNS record matching the given name, type and class if it exists: the most recently created if
+     * several match, {@link MulticastDnsSd#TYPE_ANY} or {@link MulticastDnsSd#CLASS_ANY} matching any type or
+     * class. The key of the returned record becomes the most recently used.
      *
      * @param name record name
      * @param type record type
      * @param clazz record class
      * @return an Optional describing the matching DNS record or empty
      */
-    final Optional<DnsRecord> get(final String name, final short type, final short clazz) {
+    final Optional<DnsRecord> get(final DnsName name, final short type, final short clazz) {
         LOGGER
             .fine(() -> "Searching cache for DNS record matching [Name="
                 + name
@@ -231,21 +498,267 @@ final class Cache {
                 + "; class="
                 + clazz
                 + "]");
-        final Optional<DnsRecord> result =
-                entries(name).stream().filter(r -> isSameType(r, type) && isSameClass(r, clazz)).findFirst();
+        final Optional<DnsRecord> result;
+        if (type == TYPE_ANY || clazz == CLASS_ANY) {
+            result = entries(name)
+                .stream()
+                .filter(r -> isSameType(r, type) && isSameClass(r, clazz))
+                .max(Comparator.comparingLong(DnsRecord::created));
+            result.ifPresent(r -> touch(new Key(r)));
+        } else {
+            final Key key = new Key(name, type, clazz);
+            final Entry entry = records.get(key);
+            if (entry == null) {
+                result = Optional.empty();
+            } else {
+                touch(key);
+                result = Optional.of(entry.records.get(entry.records.size() - 1));
+            }
+        }
+        if (result.isPresent()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
         logResult(result);
         return result;
     }
 
+    /**
+     * @return the number of look-ups which found a record.
+     */
+    final long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of look-ups which found no record.
+     */
+    final long misses() {
+        return misses.get();
+    }
+
     /**
      * Removes all DNS records associated with the given name.
      *
      * @param name service name
      */
-    final void removeAll(final String name) {
+    final void removeAll(final DnsName name) {
         Objects.requireNonNull(name);
         LOGGER.fine(() -> "Removing all DNS records associated with " + name + " from cache");
-        map.remove(toLowerCase(name));
+        final Set<Key> keys = byName.get(name);
+        if (keys != null) {
+            keys.forEach(this::remove);
+        }
+    }
+
+    /**
+     * @return the estimated size of the cached records in bytes.
+     */
+    final long size() {
+        return size.get();
+    }
+
+    /**
+     * Removes and returns the keys whose deadline is due at the given time.
+     *
+     * @param now current time in milliseconds since the epoch
+     * @return keys whose deadline is due
+     */
+    private List<Key> due(final long now) {
+        final List<Key> result = new ArrayList<>();
+        synchronized (deadlines) {
+            Deadline deadline = deadlines.peek();
+            while (deadline != null && deadline.time <= now) {
+                deadlines.remove();
+                if (scheduled.get(deadline.key) == deadline) {
+                    scheduled.remove(deadline.key);
+                    result.add(deadline.key);
+                }
+                deadline = deadlines.peek();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evicts records until the estimated size of the cached records is at most 90% of the capacity of this cache:
+     * records whose name is of no interest first, then least recently used first.
+     * <p>
+     * The keys to evict are chosen while holding the lock of {@link #otherKeys}, and their records are removed
+     * once it has been released.
+     */
+    private synchronized void evict() {
+        if (size.get() <= capacity) {
+            return;
+        }
+        final Set<DnsName> names = interests.get();
+        final List<Key> victims = new ArrayList<>();
+        synchronized (otherKeys) {
+            long excess = size.get() - (capacity - capacity / 10);
+            final Iterator<Key> others = otherKeys.keySet().iterator();
+            while (excess > 0 && others.hasNext()) {
+                final Key key = others.next();
+                others.remove();
+                if (names.contains(key.name)) {
+                    interestingKeys.put(key, key);
+                } else {
+                    excess -= victim(key, victims);
+                }
+            }
+            for (int pass = 0; pass < 2 && excess > 0; pass++) {
+                /* the first pass only evicts the keys which are no longer of interest. */
+                final Iterator<Key> interesting = interestingKeys.keySet().iterator();
+                while (excess > 0 && interesting.hasNext()) {
+                    final Key key = interesting.next();
+                    if (pass == 1 || !names.contains(key.name)) {
+                        interesting.remove();
+                        excess -= victim(key, victims);
+                    }
+                }
+            }
+        }
+        final List<DnsRecord> removed = new ArrayList<>();
+        for (final Key victim : victims) {
+            records.computeIfPresent(victim, (k, e) -> {
+                LOGGER.fine(() -> "Evicting " + e.records + " from cache");
+                evictions.addAndGet(e.records.size());
+                removed.addAll(e.records);
+                unindex(k, e);
+                return null;
+            });
+        }
+        notify(removed);
+    }
+
+    /**
+     * Adds the given key to the indexes. This method is called while the mapping of the key is being computed.
+     *
+     * @param key key
+     */
+    private void index(final Key key) {
+        byName.compute(key.name, (k, keys) -> {
+            final Set<Key> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            result.add(key);
+            return result;
+        });
+        byType.computeIfAbsent(key.type, k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    /**
+     * Returns the DNS records of the given keys.
+     *
+     * @param keys keys, possibly null
+     * @return the DNS records of the given keys which are still cached
+     */
+    private Collection<DnsRecord> lookup(final Set<Key> keys) {
+        if (keys == null) {
+            return Collections.emptyList();
+        }
+        final List<DnsRecord> result = new ArrayList<>(keys.size());
+        for (final Key key : keys) {
+            final Entry entry = records.get(key);
+            if (entry != null) {
+                result.addAll(entry.records);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Notifies the listener of the given DNS records, which are no longer cached. This method is never called
+     * while the mapping of a key is being computed.
+     *
+     * @param removed DNS records
+     */
+    private void notify(final List<DnsRecord> removed) {
+        removed.forEach(listener);
+    }
+
+    /**
+     * Removes the DNS records of the given key, if any.
+     *
+     * @param key key
+     */
+    private void remove(final Key key) {
+        final List<DnsRecord> removed = new ArrayList<>();
+        records.computeIfPresent(key, (k, e) -> {
+            removed.addAll(e.records);
+            unindex(k, e);
+            return null;
+        });
+        notify(removed);
+    }
+
+    /**
+     * Schedules a check of the records of the given key at the given time, unless a check is already scheduled at
+     * or before that time.
+     *
+     * @param key key
+     * @param time time in milliseconds since the epoch
+     */
+    private void schedule(final Key key, final long time) {
+        synchronized (deadlines) {
+            final Deadline current = scheduled.get(key);
+            if (current == null || current.time > time) {
+                final Deadline deadline = new Deadline(key, time);
+                scheduled.put(key, deadline);
+                deadlines.add(deadline);
+            }
+        }
+    }
+
+    /**
+     * Marks the given key as the most recently used in the list it belongs to, adding it to the list of keys not
+     * known to be of interest if it is in none.
+     *
+     * @param key key
+     */
+    private void touch(final Key key) {
+        synchronized (otherKeys) {
+            if (interestingKeys.get(key) == null) {
+                otherKeys.put(key, key);
+            }
+        }
+    }
+
+    /**
+     * Removes the given key from the indexes and from the least recently used keys, and the size of its entry from
+     * the size of this cache. This method is called while the mapping of the key is being computed.
+     *
+     * @param key key
+     * @param entry removed entry
+     */
+    private void unindex(final Key key, final Entry entry) {
+        size.addAndGet(-entry.size);
+        byName.computeIfPresent(key.name, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+        final Set<Key> keys = byType.get(key.type);
+        if (keys != null) {
+            keys.remove(key);
+        }
+        synchronized (otherKeys) {
+            interestingKeys.remove(key);
+            otherKeys.remove(key);
+        }
+    }
+
+    /**
+     * Adds the given key to the given keys to evict if it is still cached.
+     *
+     * @param key key
+     * @param victims keys to evict
+     * @return the estimated size of the records of the given key in bytes, 0 if no longer cached
+     */
+    private long victim(final Key key, final List<Key> victims) {
+        final Entry entry = records.get(key);
+        if (entry == null) {
+            return 0;
+        }
+        victims.add(key);
+        return entry.size;
     }
 
 }
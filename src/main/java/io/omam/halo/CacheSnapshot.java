@@ -0,0 +1,223 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.CACHE_SNAPSHOT_INTERVAL;
+import static io.omam.halo.MulticastDnsSd.MAX_DNS_MESSAGE_SIZE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.omam.halo.DnsMessage.Builder;
+
+/**
+ * Periodically saves the cached DNS records to a file, and reloads them on startup so that browsing and resolution
+ * can be answered before the network has been queried.
+ * <p>
+ * The file starts with a magic number and the instant at which it has been saved, followed by the cached records
+ * encoded as a sequence of DNS responses, each prefixed with its length. The TTL of each record is relative to the
+ * instant of the save, which gives the absolute expiry of the record: on reload, records which have expired since
+ * are ignored. The file is small, a few bytes per record: it is read at once rather than memory-mapped, so that no
+ * mapping prevents it from being replaced, which it is atomically when saved.
+ */
+final class CacheSnapshot implements AutoCloseable {
+
+    /** magic number at the start of a snapshot file: "HALO". */
+    private static final int MAGIC = 0x48414C4F;
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(CacheSnapshot.class.getName());
+
+    /** cache. */
+    private final Cache cache;
+
+    /** clock. */
+    private final Clock clock;
+
+    /** snapshot file. */
+    private final Path file;
+
+    /** scheduled executor service. */
+    private final ScheduledExecutorService ses;
+
+    /** future to cancel the background saving task. */
+    private Future<?> future;
+
+    /**
+     * Constructor.
+     *
+     * @param aCache cache
+     * @param aFile snapshot file
+     * @param aClock clock
+     */
+    CacheSnapshot(final Cache aCache, final Path aFile, final Clock aClock) {
+        cache = aCache;
+        clock = aClock;
+        file = aFile;
+        ses = Executors.newSingleThreadScheduledExecutor(new HaloThreadFactory("snapshot"));
+    }
+
+    /**
+     * Writes all the remaining bytes of the given buffer to the given channel.
+     *
+     * @param channel channel
+     * @param buffer buffer
+     * @throws IOException in case of I/O error
+     */
+    private static void write(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Cancel the background task that saves the cache, shuts down the associated executor and saves the cache one
+     * last time.
+     */
+    @Override
+    public final void close() {
+        if (future != null) {
+            future.cancel(true);
+            future = null;
+        }
+        ses.shutdownNow();
+        save();
+    }
+
+    /**
+     * Adds the records of the snapshot file which have not expired yet to the cache.
+     * <p>
+     * The whole file is decoded before any record is added: a missing file is silently ignored; an unreadable or
+     * malformed file is ignored with a warning, and no record is added.
+     *
+     * @return the added records
+     */
+    final List<DnsRecord> load() {
+        final Instant now = clock.instant();
+        final List<DnsRecord> loaded = new ArrayList<>();
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a cache snapshot");
+            }
+            final long elapsed = now.toEpochMilli() - buffer.getLong();
+            while (buffer.hasRemaining()) {
+                final int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Truncated cache snapshot");
+                }
+                final ByteBuffer packet = buffer.slice();
+                packet.limit(length);
+                buffer.position(buffer.position() + length);
+                /* records are decoded lazily, possibly throwing an unchecked exception. */
+                for (final DnsRecord record : DnsMessage.decode(packet, now, null, null).answers()) {
+                    final long remaining = record.ttlMillis() - elapsed;
+                    if (remaining > 0) {
+                        record.setTtl(Duration.ofMillis(remaining));
+                        loaded.add(record);
+                    }
+                }
+            }
+        } catch (final NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not load cache snapshot " + file);
+            return Collections.emptyList();
+        }
+        loaded.forEach(cache::add);
+        LOGGER.info(() -> "Loaded " + loaded.size() + " cached record(s) from " + file);
+        return loaded;
+    }
+
+    /**
+     * Saves the records of the cache which have not expired yet to the snapshot file.
+     */
+    final synchronized void save() {
+        final Instant now = clock.instant();
+        final Builder builder = DnsMessage.response();
+        final Optional<Instant> stamp = Optional.of(now);
+        cache.entries().forEach(r -> builder.addAnswer(r, stamp));
+        final List<byte[]> packets = builder.get().encode(MAX_DNS_MESSAGE_SIZE);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel
+            .open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(MAGIC).putLong(now.toEpochMilli()).flip();
+            write(channel, header);
+            for (final byte[] packet : packets) {
+                final ByteBuffer length = ByteBuffer.allocate(4);
+                length.putInt(packet.length).flip();
+                write(channel, length);
+                write(channel, ByteBuffer.wrap(packet));
+            }
+            channel.force(false);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not save cache snapshot " + file);
+            return;
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.fine(() -> "Saved cache snapshot " + file);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Could not replace cache snapshot " + file);
+        }
+    }
+
+    /**
+     * Starts a background task to save the cache.
+     */
+    final void start() {
+        future = ses
+            .scheduleAtFixedRate(this::save, CACHE_SNAPSHOT_INTERVAL.toMillis(),
+                    CACHE_SNAPSHOT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+}
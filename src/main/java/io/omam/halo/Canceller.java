@@ -32,20 +32,17 @@ package io.omam.halo;
 
 import static io.omam.halo.HaloProperties.CANCELLING_INTERVAL;
 import static io.omam.halo.HaloProperties.CANCEL_NUM;
-import static io.omam.halo.MulticastDnsSd.CLASS_IN;
 import static io.omam.halo.MulticastDnsSd.FLAGS_AA;
-import static io.omam.halo.MulticastDnsSd.uniqueClass;
 import static java.time.Duration.ZERO;
 
 import java.io.IOException;
-import java.time.Instant;
-import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
 
 /**
  * Cancels {@link Service}s on the network by sending goodbyes packet (i.e. packet with a TTL of 0).
@@ -57,8 +54,8 @@ final class Canceller implements AutoCloseable {
      */
     private static final class CancelTask implements Callable<Void> {
 
-        /** the service to cancel. */
-        private final Service service;
+        /** the records of the service to cancel. */
+        private final ServiceRecords records;
 
         /** halo helper. */
         private final HaloHelper halo;
@@ -66,40 +63,19 @@ final class Canceller implements AutoCloseable {
         /**
          * Constructor.
          *
-         * @param aService service to cancel
+         * @param someRecords records of the service to cancel
          * @param haloHelper halo helper
          */
-        CancelTask(final Service aService, final HaloHelper haloHelper) {
-            service = aService;
+        CancelTask(final ServiceRecords someRecords, final HaloHelper haloHelper) {
+            records = someRecords;
             halo = haloHelper;
         }
 
         @Override
         public final Void call() throws Exception {
-            final Instant now = halo.now();
-            final String hostname = service.hostname();
-            final Attributes attributes = service.attributes();
-            final String serviceName = service.name();
-            final short unique = uniqueClass(CLASS_IN);
-            final Builder builder = DnsMessage
-                .response(FLAGS_AA)
-                .addAnswer(new PtrRecord(service.registrationPointerName(), CLASS_IN, ZERO, now, serviceName),
-                        Optional.empty())
-                .addAnswer(new SrvRecord(serviceName, unique, ZERO, now, service.port(), hostname),
-                        Optional.empty())
-                .addAnswer(new TxtRecord(serviceName, unique, ZERO, now, attributes), Optional.empty());
-
-            service
-                .ipv4Address()
-                .ifPresent(a -> builder
-                    .addAnswer(new AddressRecord(hostname, unique, ZERO, now, a), Optional.empty()));
-
-            service
-                .ipv6Address()
-                .ifPresent(a -> builder
-                    .addAnswer(new AddressRecord(hostname, unique, ZERO, now, a), Optional.empty()));
-
-            halo.sendMessage(builder.get());
+            final Builder builder = DnsMessage.response(FLAGS_AA);
+            records.addAnswers(builder, ZERO);
+            halo.sendMessage(builder.get(), Priority.REGISTRATION);
             return null;
         }
     }
@@ -138,10 +114,10 @@ final class Canceller implements AutoCloseable {
      * @param service service
      * @throws IOException if an exception occurs while probing
      */
-    final void cancel(final Service service) throws IOException {
+    final void cancel(final RegisteredServiceImpl service) throws IOException {
         LOGGER.fine(() -> "Cancelling " + service);
         try {
-            final CancelTask task = new CancelTask(service, halo);
+            final CancelTask task = new CancelTask(service.records(), halo);
             executor.scheduleBatch(service.name(), task, CANCEL_NUM, CANCELLING_INTERVAL).awaitFirst();
             LOGGER.info(() -> "Cancelled " + service);
         } catch (final ExecutionException e) {
@@ -32,15 +32,13 @@ package io.omam.halo;
 
 import static io.omam.halo.MulticastDnsSd.decodeClass;
 
-import java.util.Objects;
-
 /**
  * DNS entry base class.
  */
 abstract class DnsEntry {
 
     /** entry name. */
-    private final String name;
+    private final DnsName name;
 
     /** entry type */
     private final short type;
@@ -59,8 +57,7 @@ abstract class DnsEntry {
      * @param aClass entry class
      */
     protected DnsEntry(final String aName, final short aType, final short aClass) {
-        Objects.requireNonNull(aName);
-        name = aName;
+        name = DnsName.of(aName);
         type = aType;
         final short[] arr = decodeClass(aClass);
         clazz = arr[0];
@@ -74,6 +71,13 @@ abstract class DnsEntry {
         return clazz;
     }
 
+    /**
+     * @return entry name, to be compared ignoring case.
+     */
+    final DnsName dnsName() {
+        return name;
+    }
+
     /**
      * @return {@code true} iff the class of this entry is unique.
      */
@@ -85,7 +89,7 @@ abstract class DnsEntry {
      * @return entry name.
      */
     final String name() {
-        return name;
+        return name.toString();
     }
 
     /**
@@ -30,9 +30,14 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
+import static io.omam.halo.HaloProperties.MDNS_PORT;
+import static io.omam.halo.MulticastDnsSd.DNS_HEADER_SIZE;
 import static io.omam.halo.MulticastDnsSd.FLAGS_QR_MASK;
 import static io.omam.halo.MulticastDnsSd.FLAGS_QR_QUERY;
 import static io.omam.halo.MulticastDnsSd.FLAGS_QR_RESPONSE;
+import static io.omam.halo.MulticastDnsSd.FLAGS_TC;
+import static io.omam.halo.MulticastDnsSd.LEGACY_TTL;
+import static io.omam.halo.MulticastDnsSd.MAX_DNS_MESSAGE_SIZE;
 import static io.omam.halo.MulticastDnsSd.TYPE_A;
 import static io.omam.halo.MulticastDnsSd.TYPE_AAAA;
 import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
@@ -41,13 +46,20 @@ import static io.omam.halo.MulticastDnsSd.TYPE_TXT;
 import static io.omam.halo.MulticastDnsSd.encodeClass;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -78,6 +90,15 @@ final class DnsMessage {
         /** list of additional records. */
         private final List<DnsRecord> additional;
 
+        /** link through which the message shall be sent, null for all links. */
+        private Link link;
+
+        /** address to which the message shall be sent, null for the multicast group. */
+        private InetSocketAddress peer;
+
+        /** DNS message ID. */
+        private short id;
+
         /**
          * Constructor.
          *
@@ -94,11 +115,14 @@ final class DnsMessage {
             answers = new ArrayList<>();
             authorities = new ArrayList<>();
             additional = new ArrayList<>();
+            link = null;
+            peer = null;
+            id = 0;
         }
 
         @Override
         public final DnsMessage get() {
-            return new DnsMessage(flags, questions, answers, authorities, additional);
+            return new DnsMessage(id, flags, questions, answers, authorities, additional, link, peer);
         }
 
         /**
@@ -149,6 +173,20 @@ final class DnsMessage {
             return this;
         }
 
+        /**
+         * Adds the given answer, written with the given TTL in place of its own.
+         * <p>
+         * This allows the same record to be sent with different TTLs, e.g. in announcements and goodbyes.
+         *
+         * @param answer answer
+         * @param ttl TTL written in the message
+         * @return this
+         */
+        final Builder addAnswer(final DnsRecord answer, final Duration ttl) {
+            answers.add(new DnsAnswer(answer, Optional.empty(), Optional.of(ttl)));
+            return this;
+        }
+
         /**
          * Adds the given authority.
          *
@@ -172,6 +210,40 @@ final class DnsMessage {
             return this;
         }
 
+        /**
+         * Sets the message ID, which is irrelevant for mDNS except in a response to a legacy unicast query.
+         *
+         * @param anId message ID
+         * @return this
+         */
+        final Builder id(final short anId) {
+            id = anId;
+            return this;
+        }
+
+        /**
+         * Sets the link through which the message shall be sent: by default a message is sent through all links.
+         *
+         * @param aLink link
+         * @return this
+         */
+        final Builder to(final Link aLink) {
+            link = aLink;
+            return this;
+        }
+
+        /**
+         * Sets the address to which the message shall be sent: by default a message is sent to the multicast
+         * group.
+         *
+         * @param aPeer address
+         * @return this
+         */
+        final Builder unicast(final InetSocketAddress aPeer) {
+            peer = aPeer;
+            return this;
+        }
+
     }
 
     /**
@@ -185,15 +257,20 @@ final class DnsMessage {
         /** answer stamp, if any. */
         private final Optional<Instant> stamp;
 
+        /** TTL written in place of the record TTL, if any. */
+        private final Optional<Duration> ttl;
+
         /**
          * Constructor.
          *
          * @param aRecord DNS record holding the answer
          * @param aStamp answer stamp, if any
+         * @param aTtl TTL written in place of the record TTL, if any
          */
-        private DnsAnswer(final DnsRecord aRecord, final Optional<Instant> aStamp) {
+        private DnsAnswer(final DnsRecord aRecord, final Optional<Instant> aStamp, final Optional<Duration> aTtl) {
             stamp = aStamp;
             record = aRecord;
+            ttl = aTtl;
         }
 
         /**
@@ -204,7 +281,7 @@ final class DnsMessage {
          * @return a stamped answer
          */
         static DnsAnswer stamped(final DnsRecord record, final Instant stamp) {
-            return new DnsAnswer(record, Optional.of(stamp));
+            return new DnsAnswer(record, Optional.of(stamp), Optional.empty());
         }
 
         /**
@@ -214,7 +291,7 @@ final class DnsMessage {
          * @return an unstamped answer
          */
         static DnsAnswer unstamped(final DnsRecord record) {
-            return new DnsAnswer(record, Optional.empty());
+            return new DnsAnswer(record, Optional.empty(), Optional.empty());
         }
 
         @Override
@@ -230,28 +307,166 @@ final class DnsMessage {
         }
 
         /**
-         * @return answer stamp, if any.
+         * Returns the TTL of this answer: the given TTL if any, otherwise the remaining TTL of the record at the
+         * stamp if any, otherwise the TTL of the record.
+         *
+         * @return the TTL of this answer
+         */
+        final Duration ttl() {
+            if (ttl.isPresent()) {
+                return ttl.get();
+            }
+            return stamp.map(record::remainingTtl).orElseGet(record::ttl);
+        }
+
+    }
+
+    /**
+     * The records of a received DNS message, which are decoded only when first accessed.
+     * <p>
+     * Their bytes are read from the buffer the message has been received into, which is neither copied nor walked
+     * before the records are accessed: the buffer must therefore not be reused until the message is
+     * {@link DnsMessage#release() released}, after which the records can no longer be decoded.
+     */
+    private static final class EncodedRecords {
+
+        /** stream positioned after the questions, null once released. */
+        private MessageInputStream input;
+
+        /** instant at which the message has been received. */
+        private final Instant now;
+
+        /** index of the first record in the stream. */
+        private final int start;
+
+        /**
+         * Constructor.
+         *
+         * @param anInput stream positioned at the first record
+         * @param aNow instant at which the message has been received
+         */
+        EncodedRecords(final MessageInputStream anInput, final Instant aNow) {
+            input = anInput;
+            now = aNow;
+            start = anInput.position();
+        }
+
+        /**
+         * Decodes the given number of records, from the first one, adding each record of supported type to the
+         * given list of answers and returning the number of records of supported types in each section.
+         *
+         * @param sizes number of records in each section, including records of unsupported types
+         * @param answers list to add the decoded records to, as unstamped answers
+         * @return the number of records of supported types in each section
+         * @throws IllegalStateException if the message has been released
+         * @throws UncheckedIOException if a record is malformed
+         */
+        final int[] decode(final int[] sizes, final List<DnsAnswer> answers) {
+            if (input == null) {
+                throw new IllegalStateException("Records of released DNS message cannot be decoded");
+            }
+            input.seek(start);
+            final int[] supported = new int[sizes.length];
+            try {
+                for (int section = 0; section < sizes.length; section++) {
+                    for (int i = 0; i < sizes[section]; i++) {
+                        final Optional<DnsRecord> record = readRecord(input, now);
+                        if (record.isPresent()) {
+                            answers.add(DnsAnswer.unstamped(record.get()));
+                            supported[section]++;
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (final BufferUnderflowException e) {
+                throw new UncheckedIOException(new IOException(e));
+            }
+            return supported;
+        }
+
+        /**
+         * Forgets the buffer holding the records.
+         */
+        final void release() {
+            input = null;
+        }
+
+    }
+
+    /**
+     * Immutable indexes of the records of a DNS message.
+     */
+    private static final class Records {
+
+        /** all records. */
+        private final List<DnsRecord> all;
+
+        /** records indexed by name. */
+        private final Map<DnsName, List<DnsRecord>> byName;
+
+        /** records indexed by type. */
+        private final Map<Short, List<DnsRecord>> byType;
+
+        /**
+         * Constructor.
+         *
+         * @param answers all answers, authorities and additional records
          */
-        final Optional<Instant> stamp() {
-            return stamp;
+        Records(final List<DnsAnswer> answers) {
+            final List<DnsRecord> records = new ArrayList<>(answers.size());
+            final Map<DnsName, List<DnsRecord>> names = new HashMap<>();
+            final Map<Short, List<DnsRecord>> types = new HashMap<>();
+            for (final DnsAnswer answer : answers) {
+                final DnsRecord record = answer.record();
+                records.add(record);
+                names.computeIfAbsent(record.dnsName(), k -> new ArrayList<>(1)).add(record);
+                types.computeIfAbsent(record.type(), k -> new ArrayList<>()).add(record);
+            }
+            names.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            types.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            all = Collections.unmodifiableList(records);
+            byName = names;
+            byType = types;
         }
 
     }
 
-    /** list of all answers, authorities and additional records. */
-    private final List<DnsAnswer> answers;
+    /** list of all answers, authorities and additional records, null until {@link #encoded} are decoded. */
+    private List<DnsAnswer> answers;
+
+    /** records of this received message not decoded yet, null if decoded or if this message was built. */
+    private EncodedRecords encoded;
+
+    /** indexes of all answers, authorities and additional records, null until first accessed. */
+    private Records records;
 
     /** DNS message flags. */
     private final short flags;
 
-    /** number of answers. */
-    private final int nbAnswers;
+    /** DNS message ID. */
+    private final short id;
+
+    /**
+     * link through which this message has been received, or through which this message shall be sent; null if this
+     * message has not been received and shall be sent through all links.
+     */
+    private final Link link;
+
+    /**
+     * address from which this message has been received, or to which this message shall be sent; null if this
+     * message has not been received and shall be sent to the multicast group.
+     */
+    private final InetSocketAddress peer;
 
-    /** number of authorities. */
-    private final int nbAuthorities;
+    /** number of answers, of any type until {@link #encoded} are decoded. */
+    private int nbAnswers;
 
-    /** number of additional records. */
-    private final int nbAdditional;
+    /** number of authorities, of any type until {@link #encoded} are decoded. */
+    private int nbAuthorities;
+
+    /** number of additional records, of any type until {@link #encoded} are decoded. */
+    private int nbAdditional;
 
     /** list of questions. */
     private final List<DnsQuestion> questions;
@@ -259,26 +474,63 @@ final class DnsMessage {
     /**
      * Constructor.
      *
+     * @param anId DNS message ID
      * @param someFlags DNS message flags
      * @param someQuestions list of questions
      * @param someAnswers list of answers
      * @param someAuthorities list of authorities
      * @param someAdditional list of additional records
+     * @param aLink link through which the message has been received or shall be sent, null if none
+     * @param aPeer address from which the message has been received or to which it shall be sent, null if none
      */
-    private DnsMessage(final short someFlags, final List<DnsQuestion> someQuestions,
+    private DnsMessage(final short anId, final short someFlags, final List<DnsQuestion> someQuestions,
             final List<DnsAnswer> someAnswers, final List<DnsRecord> someAuthorities,
-            final List<DnsRecord> someAdditional) {
+            final List<DnsRecord> someAdditional, final Link aLink, final InetSocketAddress aPeer) {
         answers = new ArrayList<>();
         answers.addAll(someAnswers);
         someAuthorities.forEach(a -> answers.add(DnsAnswer.unstamped(a)));
         someAdditional.forEach(a -> answers.add(DnsAnswer.unstamped(a)));
+        encoded = null;
+        records = null;
         flags = someFlags;
+        id = anId;
+        link = aLink;
+        peer = aPeer;
         nbAnswers = someAnswers.size();
         nbAuthorities = someAuthorities.size();
         nbAdditional = someAdditional.size();
         questions = someQuestions;
     }
 
+    /**
+     * Constructor of a received message, whose records are decoded when first accessed.
+     *
+     * @param anId DNS message ID
+     * @param someFlags DNS message flags
+     * @param someQuestions list of questions
+     * @param someRecords records not decoded yet
+     * @param numAnswers number of answers
+     * @param numAuthorities number of authorities
+     * @param numAdditional number of additional records
+     * @param aLink link through which the message has been received, null if unknown
+     * @param aPeer address from which the message has been received, null if unknown
+     */
+    private DnsMessage(final short anId, final short someFlags, final List<DnsQuestion> someQuestions,
+            final EncodedRecords someRecords, final int numAnswers, final int numAuthorities,
+            final int numAdditional, final Link aLink, final InetSocketAddress aPeer) {
+        answers = null;
+        encoded = someRecords;
+        records = null;
+        flags = someFlags;
+        id = anId;
+        link = aLink;
+        peer = aPeer;
+        nbAnswers = numAnswers;
+        nbAuthorities = numAuthorities;
+        nbAdditional = numAdditional;
+        questions = someQuestions;
+    }
+
     /**
      * Decodes the given bytes into a {@code DnsMessage}.
      *
@@ -288,12 +540,35 @@ final class DnsMessage {
      * @throws IOException in case of I/O error during decoding
      */
     static DnsMessage decode(final byte[] bytes, final Instant now) throws IOException {
-        try (final MessageInputStream input = new MessageInputStream(bytes)) {
+        return decode(ByteBuffer.wrap(bytes), now, null, null);
+    }
+
+    /**
+     * Decodes the remaining bytes of the given buffer into a {@code DnsMessage}.
+     * <p>
+     * Only the header and the questions are decoded: records are decoded straight from the buffer when first
+     * {@link #answers() accessed}, so that a message which is dropped costs close to nothing. A malformed record
+     * is therefore only reported then, by an {@link UncheckedIOException}.
+     * <p>
+     * The buffer is not modified, but the returned message reads its records from it: the buffer must not be
+     * reused until the message has been {@link #release() released}.
+     *
+     * @param buffer buffer containing the bytes to decode, heap or direct
+     * @param now current instant
+     * @param link link through which the bytes have been received, null if unknown
+     * @param sender address from which the bytes have been received, null if unknown
+     * @return the decoded {@code DnsMessage}
+     * @throws IOException in case of I/O error during decoding
+     */
+    static DnsMessage decode(final ByteBuffer buffer, final Instant now, final Link link,
+            final InetSocketAddress sender) throws IOException {
+        try {
+            final MessageInputStream input = new MessageInputStream(buffer);
             /*
              * header is 6 shorts for the ID, flags, number of questions, number of answers, number of authorities
-             * and number of additional. ID is irrelevant for mDNS.
+             * and number of additional. ID is irrelevant for mDNS, except for legacy unicast queries.
              */
-            input.readShort();
+            final short id = (short) input.readShort();
             final short flags = (short) input.readShort();
             final short numQuestions = (short) input.readShort();
             final short numAnswers = (short) input.readShort();
@@ -308,13 +583,15 @@ final class DnsMessage {
                 final DnsQuestion question = new DnsQuestion(name, type, clazz);
                 questions.add(question);
             }
-            final List<DnsAnswer> answers = readRecords(input, numAnswers, now)
-                .stream()
-                .map(DnsAnswer::unstamped)
-                .collect(Collectors.toList());
-            final List<DnsRecord> authorities = readRecords(input, numAuthorities, now);
-            final List<DnsRecord> additional = readRecords(input, numAdditional, now);
-            return new DnsMessage(flags, questions, answers, authorities, additional);
+            final int answerCount = Math.max(0, numAnswers);
+            final int authorityCount = Math.max(0, numAuthorities);
+            final int additionalCount = Math.max(0, numAdditional);
+            if (answerCount + authorityCount + additionalCount == 0) {
+                return new DnsMessage(id, flags, questions, Collections.emptyList(), Collections.emptyList(),
+                                      Collections.emptyList(), link, sender);
+            }
+            return new DnsMessage(id, flags, questions, new EncodedRecords(input, now), answerCount,
+                                  authorityCount, additionalCount, link, sender);
         } catch (final BufferUnderflowException e) {
             throw new IOException(e);
         }
@@ -397,21 +674,17 @@ final class DnsMessage {
     }
 
     /**
-     * Reads all {@link DnsRecord}(s) from the given stream.
+     * Returns whether both given questions ask for the same records.
      *
-     * @param input stream
-     * @param size number of record(s) to read
-     * @param now current instant
-     * @return all read DNS record(s)
-     * @throws IOException in case of I/O error
+     * @param q1 first question
+     * @param q2 second question
+     * @return true if both questions ask for the same records
      */
-    private static List<DnsRecord> readRecords(final MessageInputStream input, final int size, final Instant now)
-            throws IOException {
-        final List<DnsRecord> records = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            readRecord(input, now).ifPresent(records::add);
-        }
-        return records;
+    private static boolean isSameQuestion(final DnsQuestion q1, final DnsQuestion q2) {
+        return q1.type() == q2.type()
+            && q1.clazz() == q2.clazz()
+            && q1.isUnique() == q2.isUnique()
+            && q1.dnsName().equals(q2.dnsName());
     }
 
     /**
@@ -428,20 +701,24 @@ final class DnsMessage {
 
     /**
      * Writes the given record to the given stream.
+     * <p>
+     * In a response to a legacy unicast query, the cache-flush bit is never set and the TTL is capped to
+     * {@link MulticastDnsSd#LEGACY_TTL} (RFC 6762 section 6.7).
      *
      * @param record record
-     * @param stamp record stamp if any
+     * @param ttl record TTL
+     * @param legacy whether the record is written in a response to a legacy unicast query
      * @param mos stream
      */
-    private static void write(final DnsRecord record, final Optional<Instant> stamp,
+    private static void write(final DnsRecord record, final Duration ttl, final boolean legacy,
             final MessageOutputStream mos) {
         mos.writeName(record.name());
         mos.writeShort(record.type());
-        mos.writeShort(encodeClass(record.clazz(), record.isUnique()));
-        if (stamp.isPresent()) {
-            mos.writeInt((int) record.remainingTtl(stamp.get()).getSeconds());
+        mos.writeShort(encodeClass(record.clazz(), record.isUnique() && !legacy));
+        if (legacy && ttl.compareTo(LEGACY_TTL) > 0) {
+            mos.writeInt((int) LEGACY_TTL.getSeconds());
         } else {
-            mos.writeInt((int) record.ttl().getSeconds());
+            mos.writeInt((int) ttl.getSeconds());
         }
 
         /*
@@ -467,20 +744,97 @@ final class DnsMessage {
         } else {
             builder
                 .append("response with ")
-                .append(answers.size())
+                .append(decodedAnswers().size())
                 .append(" answer(s): ")
-                .append(answers.toString());
+                .append(decodedAnswers().toString());
         }
         return builder.toString();
     }
 
+    /**
+     * @return a new list containing the additional record(s) of this message.
+     */
+    private List<DnsRecord> additional() {
+        final List<DnsAnswer> all = decodedAnswers();
+        return all
+            .subList(nbAnswers + nbAuthorities, all.size())
+            .stream()
+            .map(DnsAnswer::record)
+            .collect(Collectors.toList());
+    }
+
     /**
      * Returns all answer(s), including authority(s) and additional(s), of this message.
+     * <p>
+     * The records of a received message are decoded, and indexed, by the first call to any {@code answers} method.
      *
      * @return all answer(s) of this message.
      */
     final List<DnsRecord> answers() {
-        return Collections.unmodifiableList(answers.stream().map(DnsAnswer::record).collect(Collectors.toList()));
+        return records().all;
+    }
+
+    /**
+     * Returns all answer(s), including authority(s) and additional(s), of this message with the given name.
+     *
+     * @param name record name
+     * @return all answer(s) of this message with the given name
+     */
+    final List<DnsRecord> answers(final DnsName name) {
+        return records().byName.getOrDefault(name, Collections.emptyList());
+    }
+
+    /**
+     * Returns all answer(s), including authority(s) and additional(s), of this message of the given type.
+     *
+     * @param type record type
+     * @return all answer(s) of this message of the given type
+     */
+    final List<DnsRecord> answers(final short type) {
+        return records().byType.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * @return a new list containing the authority(s) of this message.
+     */
+    private List<DnsRecord> authorities() {
+        return decodedAnswers()
+            .subList(nbAnswers, nbAnswers + nbAuthorities)
+            .stream()
+            .map(DnsAnswer::record)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all answer(s), including authority(s) and additional(s), of this message, decoding them if this is
+     * the first access to the records of this received message.
+     *
+     * @return all answer(s) of this message
+     */
+    private synchronized List<DnsAnswer> decodedAnswers() {
+        if (encoded != null) {
+            final List<DnsAnswer> all = new ArrayList<>();
+            final int[] supported = encoded.decode(new int[] { nbAnswers, nbAuthorities, nbAdditional }, all);
+            answers = all;
+            encoded = null;
+            nbAnswers = supported[0];
+            nbAuthorities = supported[1];
+            nbAdditional = supported[2];
+        }
+        return answers;
+    }
+
+    /**
+     * Returns the indexes of all answer(s), including authority(s) and additional(s), of this message, building
+     * them if this is the first access.
+     *
+     * @return the indexes of all answer(s) of this message
+     */
+    private synchronized Records records() {
+        if (records == null) {
+            records = new Records(decodedAnswers());
+        }
+        return records;
     }
 
     /**
@@ -489,20 +843,93 @@ final class DnsMessage {
      * @return bytes
      */
     final byte[] encode() {
-        try (final MessageOutputStream output = new MessageOutputStream()) {
-            output.writeShort((short) 0);
-
-            output.writeShort(flags);
-            output.writeShort((short) questions.size());
-            output.writeShort((short) nbAnswers);
-            output.writeShort((short) nbAuthorities);
-            output.writeShort((short) nbAdditional);
+        return encode(Integer.MAX_VALUE).get(0);
+    }
 
-            questions.forEach(q -> write(q, output));
-            answers.forEach(a -> write(a.record(), a.stamp(), output));
+    /**
+     * Encodes this {@code DnsMessage} in binary format, splitting it into as many packets as needed so that each
+     * packet does not exceed the given size.
+     *
+     * @see #encode(MessageOutputStream, int, int)
+     * @param maxSize maximum size of each packet in bytes
+     * @return packets, at least one
+     */
+    final List<byte[]> encode(final int maxSize) {
+        final ByteBuffer buf = ByteBuffer.allocate(MAX_DNS_MESSAGE_SIZE);
+        final MessageOutputStream output = new MessageOutputStream(buf);
+        final List<byte[]> packets = new ArrayList<>();
+        int from = 0;
+        do {
+            from = encode(output, from, maxSize);
+            final byte[] packet = new byte[buf.remaining()];
+            buf.get(packet);
+            packets.add(packet);
+        } while (from != -1);
+        return packets;
+    }
 
-            return output.toByteArray();
+    /**
+     * Encodes with the given stream the packet of this {@code DnsMessage} starting with the question or record at
+     * the given index, the packet not exceeding the given size.
+     * <p>
+     * Questions and records are written in order, and each packet contains as many of them as fit. When a query is
+     * split and known answers remain to be sent, the packet has the truncated flag set and the remaining known
+     * answers follow in the next packet(s) (RFC 6762 section 7.2). A response is split into several complete
+     * responses. A single question or record which does not fit on its own is sent in an oversized packet.
+     * <p>
+     * The packet is written straight into the buffer, header counts being written once the packet is full.
+     *
+     * @param output stream, cleared first then its buffer is flipped once the packet has been written: ready to be
+     *            read
+     * @param from index of the first question or record of the packet, 0 for the first packet
+     * @param maxSize maximum size of the packet in bytes
+     * @return the index of the first question or record of the next packet, or -1 if the packet is the last one
+     * @throws IllegalArgumentException if a single question or record does not fit in the buffer
+     */
+    final int encode(final MessageOutputStream output, final int from, final int maxSize) {
+        final int nbQuestions = questions.size();
+        final List<DnsAnswer> all = decodedAnswers();
+        final int total = nbQuestions + all.size();
+        final boolean legacy = isLegacyUnicast();
+        output.clear();
+        /* flags and counts are written once the packet is full. */
+        output.writeShort(id);
+        output.skip(DNS_HEADER_SIZE - 2);
+        final int[] counts = new int[4];
+        int next = from;
+        while (next < total) {
+            final int mark = output.position();
+            final int index = next - nbQuestions;
+            final int section =
+                    index < 0 ? 0 : index < nbAnswers ? 1 : index < nbAnswers + nbAuthorities ? 2 : 3;
+            boolean fits;
+            try {
+                if (section == 0) {
+                    write(questions.get(next), output);
+                } else {
+                    write(all.get(index).record(), all.get(index).ttl(), legacy, output);
+                }
+                fits = output.position() <= maxSize;
+            } catch (final BufferOverflowException e) {
+                if (next == from) {
+                    throw new IllegalArgumentException("DNS message item " + next + " exceeds buffer size", e);
+                }
+                fits = false;
+            }
+            if (!fits && next > from) {
+                output.truncate(mark);
+                break;
+            }
+            counts[section]++;
+            next++;
+        }
+        final boolean moreKnownAnswers = isQuery() && next < nbQuestions + nbAnswers;
+        output.writeShort(2, moreKnownAnswers ? (short) (flags | FLAGS_TC) : flags);
+        for (int i = 0; i < counts.length; i++) {
+            output.writeShort(4 + 2 * i, (short) counts[i]);
         }
+        output.flip();
+        return next < total ? next : -1;
     }
 
     /**
@@ -512,6 +939,57 @@ final class DnsMessage {
         return flags;
     }
 
+    /**
+     * Returns whether the given message can be sent in the same packet as this message, i.e. whether both
+     * messages are queries or responses with the same ID and flags to be sent through the same link(s) to the same
+     * address.
+     *
+     * @param other other message
+     * @return true if both messages can be {@link #merge(DnsMessage) merged}
+     */
+    final boolean isMergeableWith(final DnsMessage other) {
+        return id == other.id
+            && flags == other.flags
+            && Objects.equals(link, other.link)
+            && Objects.equals(peer, other.peer);
+    }
+
+    /**
+     * Returns whether this message may be held back to be aggregated with other messages: a multicast query which
+     * is not a probe, i.e. has no authority, or a multicast response to a query whose answers are all shared
+     * (RFC 6762 section 6). Probes, announcements and goodbyes, which are not sent in response to a query, and
+     * unicast messages are sent as soon as possible.
+     *
+     * @return true if this message may be delayed by the aggregation window
+     */
+    final boolean isAggregatable() {
+        if (peer != null) {
+            return false;
+        }
+        if (isQuery()) {
+            return nbAuthorities == 0;
+        }
+        return link != null
+            && decodedAnswers().subList(0, nbAnswers).stream().noneMatch(a -> a.record().isUnique());
+    }
+
+    /**
+     * @return the ID of this DNS message.
+     */
+    final short id() {
+        return id;
+    }
+
+    /**
+     * Returns whether this message is a response to a legacy unicast query, i.e. a query which has not been sent
+     * from the mDNS port (RFC 6762 section 6.7).
+     *
+     * @return true if this is a response to be sent to a port other than the mDNS port
+     */
+    final boolean isLegacyUnicast() {
+        return isResponse() && peer != null && peer.getPort() != MDNS_PORT;
+    }
+
     /**
      * @return true if this is a query.
      */
@@ -526,6 +1004,76 @@ final class DnsMessage {
         return (flags & FLAGS_QR_MASK) == FLAGS_QR_RESPONSE;
     }
 
+    /**
+     * @return the link through which this message has been received, or through which this message shall be sent;
+     *         empty if this message has not been received and shall be sent through all links.
+     */
+    final Optional<Link> link() {
+        return Optional.ofNullable(link);
+    }
+
+    /**
+     * Returns the maximum size of this message once encoded in a single packet, i.e. its size without name
+     * compression.
+     *
+     * @return the maximum size of this message in bytes
+     */
+    final int maxSize() {
+        int size = DNS_HEADER_SIZE;
+        for (final DnsQuestion question : questions) {
+            /* type and class. */
+            size += question.dnsName().maxEncodedSize() + 4;
+        }
+        for (final DnsAnswer answer : decodedAnswers()) {
+            size += answer.record().maxSize();
+        }
+        return size;
+    }
+
+    /**
+     * Returns a new message containing the questions and records of this message followed by those of the given
+     * message. A question of the given message that is also asked by this message is not repeated, and an answer
+     * of the given message that is the {@link DnsRecord#isSameRecord(DnsRecord) same record} as an answer of this
+     * message replaces it (RFC 6762 section 6).
+     *
+     * @param other message to merge with this message, which must be {@link #isMergeableWith(DnsMessage)
+     *            mergeable}
+     * @return the merged message
+     */
+    final DnsMessage merge(final DnsMessage other) {
+        final List<DnsQuestion> someQuestions = new ArrayList<>(questions);
+        other.questions
+            .stream()
+            .filter(q -> questions.stream().noneMatch(mq -> isSameQuestion(mq, q)))
+            .forEach(someQuestions::add);
+        final List<DnsAnswer> someAnswers = new ArrayList<>(decodedAnswers().subList(0, nbAnswers));
+        for (final DnsAnswer answer : other.decodedAnswers().subList(0, other.nbAnswers)) {
+            int index = 0;
+            while (index < nbAnswers && !someAnswers.get(index).record().isSameRecord(answer.record())) {
+                index++;
+            }
+            if (index < nbAnswers) {
+                someAnswers.set(index, answer);
+            } else {
+                someAnswers.add(answer);
+            }
+        }
+        final List<DnsRecord> someAuthorities = authorities();
+        someAuthorities.addAll(other.authorities());
+        final List<DnsRecord> someAdditional = additional();
+        someAdditional.addAll(other.additional());
+        return new DnsMessage(id, flags, someQuestions, someAnswers, someAuthorities, someAdditional, link,
+                              peer);
+    }
+
+    /**
+     * @return the address from which this message has been received, or to which this message shall be sent;
+     *         empty if this message has not been received and shall be sent to the multicast group.
+     */
+    final Optional<InetSocketAddress> peer() {
+        return Optional.ofNullable(peer);
+    }
+
     /**
      * @return all question(s) of this message.
      */
@@ -533,4 +1081,16 @@ final class DnsMessage {
         return Collections.unmodifiableList(questions);
     }
 
+    /**
+     * Releases the buffer this received message has been decoded from, which can then be reused.
+     * <p>
+     * Records already accessed remain available, but records which have not been accessed yet can no longer be
+     * decoded: accessing them throws an {@link IllegalStateException} rather than reading a reused buffer.
+     */
+    final synchronized void release() {
+        if (encoded != null) {
+            encoded.release();
+        }
+    }
+
 }
@@ -0,0 +1,206 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.MulticastDnsSd.toLowerCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable DNS name, such as {@code Living Room Speaker._music._tcp.local.}.
+ * <p>
+ * DNS names are compared ignoring case: the lower-case form of the name and its hash are computed once, as are its
+ * labels. Instances are obtained through {@link #of(String)}, which interns names in a bounded table so that the
+ * same name decoded from several packets is usually represented by the same instance.
+ */
+final class DnsName {
+
+    /** number of slots of the table of interned names, a power of two. */
+    private static final int INTERNED_CAPACITY = 1024;
+
+    /** interned names: a name replaces any other name sharing its slot. */
+    private static final AtomicReferenceArray<DnsName> INTERNED = new AtomicReferenceArray<>(INTERNED_CAPACITY);
+
+    /** name in lower case, as used for comparison. */
+    private final String canonical;
+
+    /** hash of {@link #canonical}. */
+    private final int hash;
+
+    /** labels of the name, excluding the empty root label. */
+    private final List<String> labels;
+
+    /** name, as given. */
+    private final String name;
+
+    /**
+     * Constructor.
+     *
+     * @param aName name
+     */
+    private DnsName(final String aName) {
+        canonical = toLowerCase(aName);
+        hash = canonical.hashCode();
+        labels = split(aName);
+        name = aName;
+    }
+
+    /**
+     * Returns the DNS name of the given string, interning it.
+     *
+     * @param name name
+     * @return DNS name
+     */
+    static DnsName of(final String name) {
+        Objects.requireNonNull(name);
+        final int h = name.hashCode() * 0x9E3779B9;
+        final int slot = (h ^ h >>> 16) & INTERNED_CAPACITY - 1;
+        final DnsName interned = INTERNED.get(slot);
+        if (interned != null && interned.name.equals(name)) {
+            return interned;
+        }
+        final DnsName result = new DnsName(name);
+        INTERNED.set(slot, result);
+        return result;
+    }
+
+    /**
+     * Splits the given name into labels, ignoring the empty root label.
+     *
+     * @param name name
+     * @return labels
+     */
+    private static List<String> split(final String name) {
+        final List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int end = name.indexOf('.'); end != -1; end = name.indexOf('.', start)) {
+            result.add(name.substring(start, end));
+            start = end + 1;
+        }
+        if (start < name.length()) {
+            result.add(name.substring(start));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DnsName)) {
+            return false;
+        }
+        final DnsName other = (DnsName) obj;
+        return hash == other.hash && canonical.equals(other.canonical);
+    }
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public final String toString() {
+        return name;
+    }
+
+    /**
+     * @return this name in lower case.
+     */
+    final String canonical() {
+        return canonical;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes held by this name: the name as given, in lower case and split
+     * into labels, two bytes per character.
+     *
+     * @return estimated size of this name in bytes
+     */
+    final int estimatedSize() {
+        return 64 + 16 * labels.size() + 6 * name.length();
+    }
+
+    /**
+     * Returns the number of bytes of this name once encoded without compression, or one more if the name has no
+     * trailing dot: each dot is encoded as the length of the following label, plus the length of the first label
+     * and the terminating zero.
+     *
+     * @return the maximum number of bytes of this name once encoded
+     */
+    final int maxEncodedSize() {
+        return MessageOutputStream.utf8Length(name) + 2;
+    }
+
+    /**
+     * Returns the index of the last label of this name equal to the given label ignoring case.
+     *
+     * @param label label
+     * @return index of the label or -1 if this name has no such label
+     */
+    final int lastIndexOf(final String label) {
+        for (int i = labels.size() - 1; i >= 0; i--) {
+            if (labels.get(i).equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the labels of this name, excluding the empty root label.
+     */
+    final List<String> labels() {
+        return labels;
+    }
+
+    /**
+     * Returns the part of this name made of the labels from the given index to the given index, each label being
+     * followed by a dot.
+     *
+     * @param from index of the first label, inclusive
+     * @param to index of the last label, exclusive
+     * @return the part of this name
+     */
+    final String subName(final int from, final int to) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            builder.append(labels.get(i)).append('.');
+        }
+        return builder.toString();
+    }
+
+}
@@ -36,14 +36,28 @@ import java.util.Objects;
 
 /**
  * A DNS record.
+ * <p>
+ * Times are held as milliseconds since the epoch of the {@link java.time.Clock clock} used by Halo, so that
+ * checking whether a record has expired is a single comparison. The expiration time and the TTL are written
+ * together while holding the lock of the record, which is also held to read both: all other times, such as the
+ * refresh times, are derived from them.
  */
 abstract class DnsRecord extends DnsEntry {
 
-    /** time-to-live */
-    private Duration ttl;
+    /** estimated size in bytes of a record without its name and data. */
+    private static final int RECORD_SIZE = 64;
 
-    /** creation instant. */
-    private final Instant ioc;
+    /** percentages of the TTL at which records are refreshed, as described in RFC 6762 section 5.2. */
+    private static final int[] REFRESH_PERCENTS = { 80, 85, 90, 95 };
+
+    /** number of refreshes of a record before it expires. */
+    static final int REFRESH_STEPS = REFRESH_PERCENTS.length;
+
+    /** expiration time in milliseconds since the epoch, guarded by this for writing. */
+    private volatile long expiry;
+
+    /** time-to-live in milliseconds, guarded by this for writing. */
+    private volatile long ttl;
 
     /**
      * Constructor.
@@ -59,10 +73,28 @@ abstract class DnsRecord extends DnsEntry {
         super(aName, aType, aClass);
         Objects.requireNonNull(aTtl);
         Objects.requireNonNull(now);
-        ttl = aTtl;
-        ioc = now;
+        ttl = aTtl.toMillis();
+        expiry = now.toEpochMilli() + ttl;
     }
 
+    /**
+     * @return an estimate of the number of bytes held by the data of this record, excluding its name.
+     */
+    protected abstract int estimatedDataSize();
+
+    /**
+     * Determines whether the given record, which has the same type as this record, holds the same data.
+     *
+     * @param other DNS record of the same type
+     * @return {@code true} iff the given record holds the same data
+     */
+    protected abstract boolean hasSameData(final DnsRecord other);
+
+    /**
+     * @return the maximum number of bytes of the data of this record once encoded.
+     */
+    protected abstract int maxDataSize();
+
     /**
      * Writes this record to the given stream.
      *
@@ -70,6 +102,22 @@ abstract class DnsRecord extends DnsEntry {
      */
     protected abstract void write(final MessageOutputStream mos);
 
+    /**
+     * @return the time at which this record has been created in milliseconds since the epoch.
+     */
+    final long created() {
+        return time(0);
+    }
+
+    /**
+     * Returns an estimate of the number of bytes held by this record, including its name and data.
+     *
+     * @return estimated size of this record in bytes
+     */
+    final int estimatedSize() {
+        return RECORD_SIZE + dnsName().estimatedSize() + estimatedDataSize();
+    }
+
     /**
      * Returns the time at which this record will have expired by the given percentage.
      *
@@ -77,19 +125,56 @@ abstract class DnsRecord extends DnsEntry {
      * @return time at which this record will have expired by the given percentage
      */
     final Instant expirationTime(final int percent) {
-        final long ttlPercent = (long) (ttl.toNanos() * (percent / 100.0));
-        return ioc.plus(Duration.ofNanos(ttlPercent));
+        return Instant.ofEpochMilli(time(percent));
     }
 
     /**
-     * Determines whether this record has expired: now +
+     * @return the time at which this record expires in milliseconds since the epoch.
+     */
+    final long expiry() {
+        return expiry;
+    }
+
+    /**
+     * Determines whether this record has expired.
      *
      * @param now current time
-     * @return {@code true} iff this record has expired Returns true if this record has expired.
+     * @return {@code true} iff this record has expired
      */
     final boolean isExpired(final Instant now) {
-        final Instant instant = expirationTime(100);
-        return instant.equals(now) || instant.isBefore(now);
+        return isExpired(now.toEpochMilli());
+    }
+
+    /**
+     * Determines whether this record has expired.
+     *
+     * @param now current time in milliseconds since the epoch
+     * @return {@code true} iff this record has expired
+     */
+    final boolean isExpired(final long now) {
+        return expiry <= now;
+    }
+
+    /**
+     * Determines whether the given record has same name, type and class and holds the same data as this record,
+     * regardless of their TTL.
+     *
+     * @param other other DNS record
+     * @return {@code true} iff the given record is the same as this record
+     */
+    final boolean isSameRecord(final DnsRecord other) {
+        return type() == other.type()
+            && clazz() == other.clazz()
+            && dnsName().equals(other.dnsName())
+            && hasSameData(other);
+    }
+
+    /**
+     * @return the maximum number of bytes of this record once encoded, i.e. without name compression.
+     */
+    final int maxSize() {
+        /* type, class, TTL and data length. */
+        return dnsName().maxEncodedSize() + 10 + maxDataSize();
     }
 
     /**
@@ -99,11 +184,17 @@ abstract class DnsRecord extends DnsEntry {
      * @return the remaining TTL duration
      */
     final Duration remainingTtl(final Instant now) {
-        final Duration dur = Duration.between(now, expirationTime(100));
-        if (dur.isNegative()) {
-            return Duration.ZERO;
-        }
-        return dur;
+        return Duration.ofMillis(Math.max(0, expiry - now.toEpochMilli()));
+    }
+
+    /**
+     * Returns the time of the given refresh of this record: 80%, 85%, 90% or 95% of its TTL.
+     *
+     * @param step index of the refresh in the range [0 .. {@link #REFRESH_STEPS})
+     * @return time of the refresh in milliseconds since the epoch
+     */
+    final long refreshTime(final int step) {
+        return time(REFRESH_PERCENTS[step]);
     }
 
     /**
@@ -111,8 +202,10 @@ abstract class DnsRecord extends DnsEntry {
      *
      * @param aTtl new TTL
      */
-    final void setTtl(final Duration aTtl) {
-        ttl = aTtl;
+    final synchronized void setTtl(final Duration aTtl) {
+        final long newTtl = aTtl.toMillis();
+        expiry = expiry - ttl + newTtl;
+        ttl = newTtl;
     }
 
     /**
@@ -123,7 +216,7 @@ abstract class DnsRecord extends DnsEntry {
      * @return {@code true} iff the given message suppresses this record
      */
     final boolean suppressedBy(final DnsMessage msg) {
-        return msg.answers().stream().anyMatch(this::suppressedBy);
+        return msg.answers(dnsName()).stream().anyMatch(this::suppressedBy);
     }
 
     /**
@@ -134,17 +227,34 @@ abstract class DnsRecord extends DnsEntry {
      * @return {@code true} iff the given record suppresses this record
      */
     final boolean suppressedBy(final DnsRecord other) {
-        return name().equals(other.name())
+        return dnsName().equals(other.dnsName())
             && type() == other.type()
             && clazz() == other.clazz()
-            && other.ttl.compareTo(ttl.dividedBy(2)) >= 0;
+            && other.ttl >= ttl / 2;
     }
 
     /**
      * @return the time-to-live (TTL).
      */
     final Duration ttl() {
+        return Duration.ofMillis(ttl);
+    }
+
+    /**
+     * @return the time-to-live (TTL) in milliseconds.
+     */
+    final long ttlMillis() {
         return ttl;
     }
 
+    /**
+     * Returns the time at which this record will have expired by the given percentage.
+     *
+     * @param percent TTL percentage in the range [0 .. 100]
+     * @return time in milliseconds since the epoch
+     */
+    private synchronized long time(final int percent) {
+        return expiry - ttl + ttl * percent / 100;
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * {@link Attributes} received in a TXT record, kept as encoded in the record until first accessed.
+ * <p>
+ * Attributes received again unchanged are equal to the previously received attributes without being decoded.
+ */
+final class EncodedAttributes implements Attributes {
+
+    /** encoded key/value pairs. */
+    private final byte[] bytes;
+
+    /** decoded key/value pairs, null until first accessed. */
+    private volatile AttributesImpl decoded;
+
+    /**
+     * Constructor.
+     *
+     * @param someBytes encoded key/value pairs, not copied
+     */
+    EncodedAttributes(final byte[] someBytes) {
+        bytes = someBytes;
+        decoded = null;
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof EncodedAttributes) {
+            final EncodedAttributes other = (EncodedAttributes) obj;
+            return Arrays.equals(bytes, other.bytes) || decoded().equals(other.decoded());
+        }
+        return obj instanceof AttributesImpl && decoded().equals(obj);
+    }
+
+    @Override
+    public final int hashCode() {
+        return decoded().hashCode();
+    }
+
+    @Override
+    public final Set<String> keys() {
+        return decoded().keys();
+    }
+
+    @Override
+    public final String toString() {
+        return decoded().toString();
+    }
+
+    @Override
+    public final Optional<ByteBuffer> value(final String key) {
+        return decoded().value(key);
+    }
+
+    @Override
+    public final Optional<String> value(final String key, final Charset charset) {
+        return decoded().value(key, charset);
+    }
+
+    /**
+     * @return the encoded key/value pairs, which must not be modified.
+     */
+    final byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the decoded key/value pairs.
+     */
+    private AttributesImpl decoded() {
+        AttributesImpl result = decoded;
+        if (result == null) {
+            result = new AttributesImpl(AttributesCodec.decode(bytes));
+            decoded = result;
+        }
+        return result;
+    }
+
+}
@@ -409,4 +409,15 @@ public interface Halo extends AutoCloseable {
     Optional<ResolvedService> resolve(final String instanceName, final String registrationType,
             final Duration timeout);
 
+    /**
+     * Returns the statistics of this {@code Halo}, e.g. the number of received datagrams that have been dropped
+     * because they could not be decoded fast enough.
+     * <p>
+     * The returned statistics are live: they reflect the activity of this {@code Halo} at the time each counter is
+     * read.
+     *
+     * @return the statistics of this {@code Halo}
+     */
+    Statistics statistics();
+
 }
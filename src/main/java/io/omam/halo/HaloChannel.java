@@ -30,127 +30,489 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
-import static io.omam.halo.HaloProperties.IPV4_ADDR;
+import static io.omam.halo.HaloProperties.CHANNEL_DIRECT;
+import static io.omam.halo.HaloProperties.CHANNEL_MTU;
 import static io.omam.halo.HaloProperties.IPV4_SOA;
-import static io.omam.halo.HaloProperties.IPV6_ADDR;
 import static io.omam.halo.HaloProperties.IPV6_SOA;
-import static io.omam.halo.HaloProperties.MDNS_PORT;
+import static io.omam.halo.HaloProperties.RECEIVING_CAPACITY;
+import static io.omam.halo.HaloProperties.RECEIVING_WINDOW;
+import static io.omam.halo.HaloProperties.RECEIVING_WORKERS;
+import static io.omam.halo.HaloProperties.SENDING_CAPACITY;
+import static io.omam.halo.HaloProperties.SENDING_OVERFLOW;
+import static io.omam.halo.HaloProperties.SENDING_TIMEOUT;
+import static io.omam.halo.HaloProperties.SENDING_WINDOW;
+import static io.omam.halo.MulticastDnsSd.DNS_HEADER_SIZE;
+import static io.omam.halo.MulticastDnsSd.IPV4_HEADERS_SIZE;
+import static io.omam.halo.MulticastDnsSd.IPV6_HEADERS_SIZE;
 import static io.omam.halo.MulticastDnsSd.MAX_DNS_MESSAGE_SIZE;
+import static io.omam.halo.MulticastDnsSd.MAX_MDNS_PACKET_SIZE;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.Inet4Address;
-import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.NetworkInterface;
-import java.net.ProtocolFamily;
 import java.net.StandardProtocolFamily;
-import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.ClosedChannelException;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.MulticastChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.time.Clock;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import io.omam.halo.SendQueue.Priority;
 
 /**
- * {@link DatagramChannel}(s) to send and receive {@link DnsMessage DNS message}s.
+ * Sends and receives {@link DnsMessage DNS message}s through a {@link Transport}.
  */
 final class HaloChannel implements AutoCloseable {
 
     /**
-     * DNS message receiver.
+     * A received datagram, waiting to be decoded.
+     */
+    private static final class Datagram {
+
+        /** buffer containing the datagram, ready to be read. */
+        private final ByteBuffer buffer;
+
+        /** address of the sender of the datagram. */
+        private final InetSocketAddress sender;
+
+        /** link through which the datagram has been received. */
+        private final Link link;
+
+        /**
+         * Constructor.
+         *
+         * @param aBuffer buffer containing the datagram, ready to be read
+         * @param aSender address of the sender of the datagram
+         * @param aLink link through which the datagram has been received
+         */
+        Datagram(final ByteBuffer aBuffer, final InetSocketAddress aSender, final Link aLink) {
+            buffer = aBuffer;
+            sender = aSender;
+            link = aLink;
+        }
+
+    }
+
+    /**
+     * Decodes received datagrams into DNS messages and dispatches them.
      * <p>
-     * {@link Consumer} given at construction is invoked whenever a message is received.
+     * {@link Consumer} given at construction is invoked whenever a message is decoded.
      */
-    private final class Receiver implements Runnable {
+    private final class Decoder implements Runnable {
+
+        /** bounded queue of datagrams waiting to be decoded. */
+        private final BlockingQueue<Datagram> pending;
 
         /**
          * Constructor.
          */
-        Receiver() {
-            // empty.
+        Decoder() {
+            pending = new ArrayBlockingQueue<>(RECEIVING_CAPACITY);
         }
 
-        @SuppressWarnings("synthetic-access")
         @Override
         public final void run() {
-            final ByteBuffer buf = ByteBuffer.allocate(MAX_DNS_MESSAGE_SIZE);
-            buf.order(ByteOrder.BIG_ENDIAN);
+            DISPATCHING.set(Boolean.TRUE);
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    selector.select();
-                    LOGGER.fine("Channels ready for I/O operations");
-                    final Set<SelectionKey> selected = selector.selectedKeys();
-                    for (final SelectionKey key : selected) {
-                        final DatagramChannel channel = (DatagramChannel) key.channel();
-                        buf.clear();
-                        final InetSocketAddress address = (InetSocketAddress) channel.receive(buf);
-                        if (address != null && buf.position() != 0) {
-                            buf.flip();
-                            final byte[] bytes = new byte[buf.remaining()];
-                            buf.get(bytes);
-                            final DnsMessage msg = DnsMessage.decode(bytes, clock.instant());
-                            LOGGER.fine(() -> "Received " + msg + " on " + address);
-                            listener.accept(msg);
-                        }
-                    }
-                } catch (final ClosedChannelException e) {
-                    LOGGER.log(Level.FINE, "Channel closed while waiting to receive DNS message", e);
+                    handle(pending.take());
+                } catch (final InterruptedException e) {
+                    LOGGER.log(Level.FINE, "Interrupted while waiting to decode DNS message", e);
                     Thread.currentThread().interrupt();
-                } catch (final IOException e) {
-                    LOGGER.log(Level.WARNING, "I/O error while receiving DNS message", e);
                 }
             }
         }
 
+        /**
+         * Adds the given datagram to the queue of datagrams to decode if this queue is not full.
+         *
+         * @param datagram datagram
+         * @return {@code true} if the datagram was added, {@code false} if the queue is full
+         */
+        final boolean offer(final Datagram datagram) {
+            return pending.offer(datagram);
+        }
+
+        /**
+         * @return the number of datagrams waiting to be decoded.
+         */
+        final int size() {
+            return pending.size();
+        }
+
+        /**
+         * Decodes the given datagram, dispatches the decoded message and releases the datagram buffer.
+         *
+         * @param datagram datagram
+         */
+        @SuppressWarnings("synthetic-access")
+        private void handle(final Datagram datagram) {
+            final InetSocketAddress sender = datagram.sender;
+            DnsMessage msg = null;
+            try {
+                msg = DnsMessage.decode(datagram.buffer, clock.instant(), datagram.link, sender);
+                final DnsMessage received = msg;
+                LOGGER.fine(() -> "Received " + received + " from " + sender + " on " + datagram.link);
+                listener.accept(msg);
+            } catch (final IOException | UncheckedIOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Could not decode DNS message from " + sender);
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Error while handling DNS message from " + sender);
+            } finally {
+                /* the message reads its records from the buffer: release it before the buffer is reused. */
+                if (msg != null) {
+                    msg.release();
+                }
+                pool.release(datagram.buffer);
+            }
+        }
+
+    }
+
+    /**
+     * A link of the transport and the maximum size of a DNS message sent through it.
+     */
+    private static final class Endpoint {
+
+        /** link. */
+        private final Link link;
+
+        /** maximum size of a DNS message sent through the link in bytes. */
+        private final int maxSize;
+
+        /**
+         * Constructor.
+         *
+         * @param aLink link
+         * @param aMaxSize maximum size of a DNS message sent through the link in bytes
+         */
+        Endpoint(final Link aLink, final int aMaxSize) {
+            link = aLink;
+            maxSize = aMaxSize;
+        }
+
+    }
+
+    /**
+     * A received datagram, remembered to ignore its copies received through other links.
+     * <p>
+     * The content of the datagram is not kept: two fingerprints are equal if the datagrams have the same length,
+     * the same 64-bit hash of their content and have been sent by the same host. The hash is computed in place,
+     * with FNV-1a, so that distinct datagrams are not mistaken for copies in practice.
+     */
+    private static final class Fingerprint {
+
+        /** FNV-1a 64-bit offset basis. */
+        private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+        /** FNV-1a 64-bit prime. */
+        private static final long FNV_PRIME = 0x100000001b3L;
+
+        /** hash of the content of the datagram. */
+        private final long hash;
+
+        /** length of the datagram. */
+        private final int length;
+
+        /** address of the sender of the datagram. */
+        private final InetSocketAddress sender;
+
+        /** instant at which the datagram has been received, in nanoseconds. */
+        private final long received;
+
+        /** links reported by the transport through which the datagram has been received. */
+        private final Set<Link> links;
+
+        /**
+         * Constructor.
+         *
+         * @param buf buffer containing the datagram, ready to be read, which is left untouched
+         * @param aSender address of the sender of the datagram
+         * @param aReceived instant at which the datagram has been received, in nanoseconds
+         * @param aLink link reported by the transport through which the datagram has been received
+         */
+        Fingerprint(final ByteBuffer buf, final InetSocketAddress aSender, final long aReceived,
+                final Link aLink) {
+            long h = FNV_OFFSET;
+            for (int i = buf.position(); i < buf.limit(); i++) {
+                h = (h ^ (buf.get(i) & 0xff)) * FNV_PRIME;
+            }
+            hash = h;
+            length = buf.remaining();
+            sender = aSender;
+            received = aReceived;
+            links = new HashSet<>();
+            links.add(aLink);
+        }
+
+        @Override
+        public final boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint other = (Fingerprint) obj;
+            return hash == other.hash && length == other.length && sender.equals(other.sender);
+        }
+
+        @Override
+        public final int hashCode() {
+            return 31 * Long.hashCode(hash) + sender.hashCode();
+        }
+
+    }
+
+    /**
+     * DNS datagram receiver.
+     * <p>
+     * Hands over the datagrams received by the transport to the {@link Decoder}s: datagrams are never decoded nor
+     * dispatched by the threads of the transport so that a slow listener cannot prevent sockets from being
+     * drained. Datagrams are assigned to a decoder based on the address of their sender so that messages from the
+     * same host are handled in order.
+     * <p>
+     * A multicast datagram may be received through several links of the same address family, whereas a unicast
+     * datagram is received through only one of them. The first copy of a datagram is therefore accepted and the
+     * copies received through other links within {@link HaloProperties#RECEIVING_WINDOW} are ignored: a datagram
+     * received again through the same link is a retransmission and is accepted. The link the datagram has been
+     * received through is determined from the address of its sender, defaulting to the link reported by the
+     * transport.
+     * <p>
+     * Changes to the links of the transport are applied to the endpoints then forwarded to the link listener.
+     */
+    private final class Receiver implements Transport.Listener {
+
+        /** recently accepted datagrams, oldest first. */
+        private final Queue<Fingerprint> recent;
+
+        /** recently accepted datagrams, for lookup. */
+        private final ConcurrentMap<Fingerprint, Fingerprint> fingerprints;
+
+        /** lock held by the thread forgetting the datagrams accepted before the receiving window. */
+        private final Lock expiring;
+
+        /**
+         * Constructor.
+         */
+        Receiver() {
+            recent = new ConcurrentLinkedQueue<>();
+            fingerprints = new ConcurrentHashMap<>();
+            expiring = new ReentrantLock();
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final ByteBuffer acquire() {
+            return pool.acquire();
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void dropped(final InetSocketAddress sender) {
+            final long count = dropped.incrementAndGet();
+            LOGGER.fine(() -> "Dropped datagram from " + sender + ", " + count + " dropped so far");
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void linkAdded(final Link link) {
+            endpoints.add(endpoint(link));
+            linkListener.linkAdded(link);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void linkRemoved(final Link link) {
+            endpoints.removeIf(e -> e.link.equals(link));
+            linkListener.linkRemoved(link);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void linkUpdated(final Link previous, final Link current) {
+            endpoints.removeIf(e -> e.link.equals(previous));
+            endpoints.add(endpoint(current));
+            linkListener.linkUpdated(previous, current);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void received(final ByteBuffer buffer, final InetSocketAddress sender, final Link link) {
+            if (!buffer.hasRemaining()) {
+                pool.release(buffer);
+                return;
+            }
+            if (buffer.remaining() > MAX_MDNS_PACKET_SIZE) {
+                pool.release(buffer);
+                final long count = oversized.incrementAndGet();
+                LOGGER.fine(() -> "Dropped oversized datagram from " + sender + ", " + count + " oversized so far");
+                return;
+            }
+            if (!filter.accepts(buffer)) {
+                pool.release(buffer);
+                filtered.incrementAndGet();
+                return;
+            }
+            final Link ingress = ingress(link, buffer, sender);
+            if (ingress == null) {
+                pool.release(buffer);
+                ignored.incrementAndGet();
+            } else {
+                final int index = Math.floorMod(sender.getAddress().hashCode(), decoders.size());
+                final Decoder decoder = decoders.get(index);
+                if (!decoder.offer(new Datagram(buffer, sender, ingress))) {
+                    pool.release(buffer);
+                    dropped(sender);
+                }
+            }
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void release(final ByteBuffer buffer) {
+            pool.release(buffer);
+        }
+
+        /**
+         * Returns the link through which the given datagram, reported as received through the given link, has been
+         * received, unless the datagram is a copy of a recently accepted datagram.
+         * <p>
+         * This method is called concurrently by the threads of the transport: fingerprints of the same datagram
+         * are compared and updated atomically, and the datagrams accepted before the receiving window are forgotten
+         * by whichever thread is not already doing so.
+         *
+         * @param link link reported by the transport
+         * @param buf buffer containing the datagram, ready to be read
+         * @param address address of the sender of the datagram
+         * @return the link through which the datagram has been received, or {@code null} if it shall be ignored
+         */
+        @SuppressWarnings("synthetic-access")
+        private Link ingress(final Link link, final ByteBuffer buf, final InetSocketAddress address) {
+            final long now = System.nanoTime();
+            final long window = RECEIVING_WINDOW.toNanos();
+            expire(now, window);
+            final Fingerprint fingerprint = new Fingerprint(buf, address, now, link);
+            final Fingerprint accepted = fingerprints.compute(fingerprint, (k, previous) -> {
+                if (previous != null && now - previous.received <= window && previous.links.add(link)) {
+                    return previous;
+                }
+                /* first copy, or a retransmission through the same link which supersedes the previous one. */
+                return fingerprint;
+            });
+            if (accepted != fingerprint) {
+                return null;
+            }
+            recent.add(fingerprint);
+            final InetAddress origin = address.getAddress();
+            for (final Endpoint endpoint : endpoints) {
+                if (endpoint.link.isOrigin(origin)) {
+                    return endpoint.link;
+                }
+            }
+            return link;
+        }
+
+        /**
+         * Forgets the datagrams accepted before the receiving window, unless another thread is already doing so.
+         *
+         * @param now current instant in nanoseconds
+         * @param window receiving window in nanoseconds
+         */
+        private void expire(final long now, final long window) {
+            if (!expiring.tryLock()) {
+                return;
+            }
+            try {
+                Fingerprint oldest = recent.peek();
+                while (oldest != null && now - oldest.received > window) {
+                    recent.remove();
+                    final Fingerprint expired = oldest;
+                    /* unless superseded by a retransmission of the same datagram. */
+                    fingerprints.computeIfPresent(expired, (k, v) -> v == expired ? null : v);
+                    oldest = recent.peek();
+                }
+            } finally {
+                expiring.unlock();
+            }
+        }
+
     }
 
     /**
      * DNS message sender.
      * <p>
-     * Messages are taken from the sending queue.
+     * Messages are taken from the sending queue and sent through their {@link DnsMessage#link() link}, or through
+     * all links if they have none, to their {@link DnsMessage#peer() peer}, or to the multicast group if they have
+     * none. {@link DnsMessage#isAggregatable() Aggregatable} messages queued within
+     * {@link HaloProperties#SENDING_WINDOW} of each other are aggregated into a single packet as long as they are
+     * {@link DnsMessage#isMergeableWith(DnsMessage) mergeable} and the packet fits in
+     * {@link HaloProperties#CHANNEL_MTU}; other messages are sent immediately.
      */
     @SuppressWarnings("synthetic-access")
     private final class Sender implements Runnable {
 
+        /** buffer into which each packet is encoded before being sent. */
+        private final ByteBuffer buf;
+
+        /** maximum size of an aggregated DNS message in bytes. */
+        private final int maxSize;
+
+        /** message taken from the queue which could not be aggregated to the previous packet. */
+        private DnsMessage next;
+
+        /** stream writing into {@link #buf}, reused for every packet. */
+        private final MessageOutputStream output;
+
         /**
          * Constructor.
          */
         Sender() {
-            // empty.
+            buf = CHANNEL_DIRECT
+                    ? ByteBuffer.allocateDirect(MAX_DNS_MESSAGE_SIZE)
+                    : ByteBuffer.allocate(MAX_DNS_MESSAGE_SIZE);
+            buf.order(ByteOrder.BIG_ENDIAN);
+            maxSize = CHANNEL_MTU - IPV6_HEADERS_SIZE;
+            next = null;
+            output = new MessageOutputStream(buf);
         }
 
         @Override
         public final void run() {
-            final ByteBuffer buf = ByteBuffer.allocate(MAX_DNS_MESSAGE_SIZE);
-            buf.order(ByteOrder.BIG_ENDIAN);
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    final DnsMessage msg = sent.take();
+                    final DnsMessage msg = aggregate(next == null ? sent.take() : next);
                     LOGGER.fine(() -> "Sending " + msg);
-                    final byte[] packet = msg.encode();
-                    buf.clear();
-                    buf.put(packet);
-                    buf.flip();
-                    ipv4.forEach(ni -> send(ni, buf, IPV4_SOA));
-                    ipv6.forEach(ni -> send(ni, buf, IPV6_SOA));
+                    /* message is encoded once for each distinct maximum packet size. */
+                    endpoints
+                        .stream()
+                        .filter(endpoint -> isTarget(msg, endpoint.link))
+                        .collect(Collectors.groupingBy(endpoint -> Integer.valueOf(endpoint.maxSize)))
+                        .forEach((size, targets) -> send(msg, size.intValue(), targets));
+                } catch (final IllegalArgumentException e) {
+                    LOGGER.log(Level.WARNING, "Could not encode DNS message", e);
                 } catch (final InterruptedException e) {
                     LOGGER.log(Level.FINE, "Interrupted while waiting to send DNS message", e);
                     Thread.currentThread().interrupt();
@@ -159,22 +521,90 @@ final class HaloChannel implements AutoCloseable {
         }
 
         /**
-         * Sends given datagram to given channel an address
+         * Aggregates the given message with the messages queued within the aggregation window.
+         * <p>
+         * Only {@link DnsMessage#isAggregatable() aggregatable} messages are held back: any other message is sent
+         * as soon as it is taken from the queue, and ends the aggregation window of the current packet.
+         * <p>
+         * The size of the aggregated message is bounded by the sum of the {@link DnsMessage#maxSize() maximum
+         * size} of each message, since name compression can only shrink it: messages are therefore only encoded
+         * once, when sent.
          *
-         * @param key channel
-         * @param src the buffer containing the datagram to be sent
-         * @param target the address to which the datagram is to be sent
+         * @param first first message of the packet
+         * @return the aggregated message
+         * @throws InterruptedException if interrupted while waiting
          */
-        private void send(final SelectionKey key, final ByteBuffer src, final InetSocketAddress target) {
-            final int position = src.position();
-            try {
-                ((DatagramChannel) key.channel()).send(src, target);
-                LOGGER.fine(() -> "Sent DNS message to " + target);
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, e, () -> "I/O error while sending DNS message to " + target);
-            } finally {
-                src.position(position);
+        private DnsMessage aggregate(final DnsMessage first) throws InterruptedException {
+            next = null;
+            if (!first.isAggregatable()) {
+                return first;
+            }
+            DnsMessage msg = first;
+            int size = first.maxSize();
+            final long deadline = System.nanoTime() + SENDING_WINDOW.toNanos();
+            while (size < maxSize) {
+                final DnsMessage other = sent.poll(deadline - System.nanoTime());
+                if (other == null) {
+                    break;
+                }
+                final int otherSize = other.maxSize() - DNS_HEADER_SIZE;
+                if (!other.isAggregatable() || !msg.isMergeableWith(other) || size + otherSize > maxSize) {
+                    next = other;
+                    break;
+                }
+                msg = msg.merge(other);
+                size += otherSize;
             }
+            return msg;
+        }
+
+        /**
+         * Returns whether the given message shall be sent through the given link.
+         *
+         * @param msg message
+         * @param link link
+         * @return true if the message shall be sent through the link
+         */
+        private boolean isTarget(final DnsMessage msg, final Link link) {
+            if (msg.link().isPresent()) {
+                return msg.link().get().equals(link);
+            }
+            return msg
+                .peer()
+                .map(p -> p.getAddress() instanceof Inet4Address == (link.family() == StandardProtocolFamily.INET))
+                .orElse(Boolean.TRUE)
+                .booleanValue();
+        }
+
+        /**
+         * Encodes the given message in packets of at most the given size and sends each packet through the link of
+         * each given endpoint to the peer of the message, or to the multicast group if none.
+         *
+         * @param msg message
+         * @param packetSize maximum size of each packet in bytes
+         * @param targets endpoints through which the message is sent
+         */
+        private void send(final DnsMessage msg, final int packetSize, final List<Endpoint> targets) {
+            final Optional<InetSocketAddress> peer = msg.peer();
+            int packets = 0;
+            int from = 0;
+            do {
+                from = msg.encode(output, from, packetSize);
+                packets++;
+                for (final Endpoint endpoint : targets) {
+                    final Link link = endpoint.link;
+                    final InetSocketAddress target =
+                            peer.orElse(link.family() == StandardProtocolFamily.INET ? IPV4_SOA : IPV6_SOA);
+                    buf.rewind();
+                    try {
+                        transport.send(link, buf, target);
+                    } catch (final IOException e) {
+                        LOGGER.log(Level.WARNING, e, () -> "I/O error while sending DNS message to " + target);
+                    }
+                }
+            } while (from != -1);
+            final int count = packets;
+            LOGGER.fine(() -> "Sent DNS message in " + count + " packet(s) to " + targets.size() + " link(s)");
         }
 
     }
@@ -182,111 +612,139 @@ final class HaloChannel implements AutoCloseable {
     /** logger. */
     private static final Logger LOGGER = Logger.getLogger(HaloChannel.class.getName());
 
+    /** whether the current thread is a decoder thread dispatching received messages. */
+    private static final ThreadLocal<Boolean> DISPATCHING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
     /** clock. */
     private final Clock clock;
 
-    /** executor service to send/receive messages. */
-    private final ExecutorService executor;
+    /** datagram decoders. */
+    private final List<Decoder> decoders;
+
+    /** number of received datagrams that have been dropped. */
+    private final AtomicLong dropped;
 
-    /** IPV4 channel(s). */
-    private final List<SelectionKey> ipv4;
+    /** links of the transport and the maximum size of a DNS message sent through each. */
+    private final List<Endpoint> endpoints;
 
-    /** IPV6 channel(s). */
-    private final List<SelectionKey> ipv6;
+    /** pre-filter of received queries. */
+    private final QueryFilter filter;
+
+    /** number of received queries that have been dropped since not asking for any name of this responder. */
+    private final AtomicLong filtered;
+
+    /** number of received datagrams that have been ignored since received through another link. */
+    private final AtomicLong ignored;
+
+    /** executor service to send messages and decode datagrams. */
+    private final ExecutorService executor;
 
     /** listener to be invoked whenever a new message is received. */
     private final Consumer<DnsMessage> listener;
 
-    /** future to cancel receiving messages. */
-    private Future<?> receiver;
+    /** listener to be notified of changes to the links of the transport. */
+    private final LinkListener linkListener;
 
-    /** multiplexor. */
-    private final Selector selector;
+    /** number of received datagrams that have been dropped since larger than the receiving buffer. */
+    private final AtomicLong oversized;
+
+    /** pool of buffers to receive datagrams. */
+    private final BufferPool pool;
 
     /** future to cancel sending messages. */
     private Future<?> sender;
 
-    /** queue of sent DNS messages. */
-    private final BlockingQueue<DnsMessage> sent;
+    /** queue of DNS messages to send. */
+    private final SendQueue sent;
+
+    /** transport. */
+    private final Transport transport;
+
+    /** futures to cancel decoding messages. */
+    private final List<Future<?>> workers;
 
     /**
      * Constructor.
      *
      * @param aListener listener to be invoked whenever a new message is received
+     * @param aLinkListener listener to be notified of changes to the links of the transport
+     * @param aFilter pre-filter of received queries
      * @param aClock clock
-     * @param nis network interfaces
-     * @throws IOException if an I/O error occurs
+     * @param aTransport transport
      */
-    private HaloChannel(final Consumer<DnsMessage> aListener, final Clock aClock,
-            final Collection<NetworkInterface> nis) throws IOException {
-        clock = aClock;
-        executor = Executors.newFixedThreadPool(2, new HaloThreadFactory("channel"));
-        listener = aListener;
-        selector = Selector.open();
-        sent = new LinkedBlockingQueue<>();
-
-        ipv4 = new ArrayList<>();
-        ipv6 = new ArrayList<>();
-
-        for (final NetworkInterface ni : nis) {
-            openChannel(ni, StandardProtocolFamily.INET, false).map(this::register).ifPresent(ipv4::add);
-            openChannel(ni, StandardProtocolFamily.INET6, false).map(this::register).ifPresent(ipv6::add);
-        }
-
-        if (ipv4.isEmpty() && ipv6.isEmpty()) {
-            for (final NetworkInterface ni : nis) {
-                LOGGER.info(() -> "No Network Interface found, adding Loopback interface");
-                openChannel(ni, StandardProtocolFamily.INET, true).map(this::register).ifPresent(ipv4::add);
-                openChannel(ni, StandardProtocolFamily.INET6, true).map(this::register).ifPresent(ipv6::add);
-            }
-        }
-
-        if (ipv4.isEmpty() && ipv6.isEmpty()) {
-            throw new IOException("No network interface suitable for multicast");
-        }
-
+    HaloChannel(final Consumer<DnsMessage> aListener, final LinkListener aLinkListener, final QueryFilter aFilter,
+            final Clock aClock, final Transport aTransport) {
+        this(aListener, aLinkListener, aFilter, aClock, aTransport,
+             new SendQueue(SENDING_CAPACITY, SENDING_OVERFLOW, SENDING_TIMEOUT));
     }
 
     /**
-     * Creates a new channel sending/receiving on all interfaces on this machine.
+     * Constructor.
      *
-     * @param listener listener to be invoked whenever a new message is received
-     * @param clock clock
-     * @return a new channel
-     * @throws IOException if an I/O error occurs
+     * @param aListener listener to be invoked whenever a new message is received
+     * @param aLinkListener listener to be notified of changes to the links of the transport
+     * @param aFilter pre-filter of received queries
+     * @param aClock clock
+     * @param aTransport transport
+     * @param aSendQueue queue of DNS messages to send
      */
-    static HaloChannel allNetworkInterfaces(final Consumer<DnsMessage> listener, final Clock clock)
-            throws IOException {
-        final Enumeration<NetworkInterface> nics = NetworkInterface.getNetworkInterfaces();
-        final Collection<NetworkInterface> allNics = new ArrayList<>();
-        while (nics.hasMoreElements()) {
-            allNics.add(nics.nextElement());
+    HaloChannel(final Consumer<DnsMessage> aListener, final LinkListener aLinkListener, final QueryFilter aFilter,
+            final Clock aClock, final Transport aTransport, final SendQueue aSendQueue) {
+        clock = aClock;
+        decoders = new ArrayList<>();
+        for (int i = 0; i < RECEIVING_WORKERS; i++) {
+            decoders.add(new Decoder());
         }
-        return networkInterfaces(listener, clock, allNics);
+        dropped = new AtomicLong(0);
+        endpoints = aTransport
+            .links()
+            .stream()
+            .map(HaloChannel::endpoint)
+            .collect(Collectors.toCollection(CopyOnWriteArrayList::new));
+        filter = aFilter;
+        filtered = new AtomicLong(0);
+        ignored = new AtomicLong(0);
+        executor = Executors.newFixedThreadPool(1 + RECEIVING_WORKERS, new HaloThreadFactory("channel"));
+        listener = aListener;
+        linkListener = aLinkListener;
+        oversized = new AtomicLong(0);
+        /*
+         * every queued datagram holds a buffer, and so does the transport while receiving. Buffers have one more byte
+         * than the largest datagram, so that a datagram truncated by the transport fills its buffer.
+         */
+        pool = new BufferPool(MAX_MDNS_PACKET_SIZE + 1, CHANNEL_DIRECT,
+                              RECEIVING_WORKERS * RECEIVING_CAPACITY + 1);
+        sent = aSendQueue;
+        transport = aTransport;
+        workers = new ArrayList<>();
     }
 
     /**
-     * Creates a new channel sending/receiving on the given interfaces.
+     * Returns the endpoint of the given link.
+     * <p>
+     * The maximum size of a DNS message sent through the link is the smallest of the interface MTU,
+     * {@link HaloProperties#CHANNEL_MTU} and {@link MulticastDnsSd#MAX_MDNS_PACKET_SIZE}, minus the size of the IP
+     * and UDP headers.
      *
-     * @param listener listener to be invoked whenever a new message is received
-     * @param clock clock
-     * @param nics network interfaces
-     * @return a new channel
-     * @throws IOException if an I/O error occurs
+     * @param link link
+     * @return endpoint
      */
-    static HaloChannel networkInterfaces(final Consumer<DnsMessage> listener, final Clock clock,
-            final Collection<NetworkInterface> nics) throws IOException {
-        return new HaloChannel(listener, clock, nics);
+    private static Endpoint endpoint(final Link link) {
+        final int mtu = link.mtu();
+        final int headersSize =
+                link.family() == StandardProtocolFamily.INET ? IPV4_HEADERS_SIZE : IPV6_HEADERS_SIZE;
+        final int maxSize = Math.min(mtu > 0 ? Math.min(mtu, CHANNEL_MTU) : CHANNEL_MTU, MAX_MDNS_PACKET_SIZE)
+            - headersSize;
+        LOGGER.fine(() -> "Sending DNS messages of at most " + maxSize + " bytes on " + link);
+        return new Endpoint(link, maxSize);
     }
 
     @Override
     public final synchronized void close() {
         LOGGER.fine("Closing channel");
-        selector.wakeup();
         disable();
         executor.shutdownNow();
-        close(ipv4);
-        close(ipv6);
+        transport.close();
     }
 
     /**
@@ -296,139 +754,94 @@ final class HaloChannel implements AutoCloseable {
         if (sender == null) {
             sender = executor.submit(new Sender());
         }
-        if (receiver == null) {
-            receiver = executor.submit(new Receiver());
+        if (workers.isEmpty()) {
+            decoders.forEach(d -> workers.add(executor.submit(d)));
         }
+        transport.start(new Receiver());
     }
 
     /**
-     * Adds the given message to the queue of messages to send.
-     *
-     * @param message message to send
+     * @return the number of received datagrams that have been dropped because they could not be decoded fast
+     *         enough.
      */
-    final void send(final DnsMessage message) {
-        sent.add(message);
+    final long droppedDatagrams() {
+        return dropped.get();
     }
 
     /**
-     * Closes the given {@link SelectionKey}(s).
-     *
-     * @param keys selection keys
+     * @return the number of messages to send that have been dropped because the sending queue was full.
      */
-    private void close(final List<SelectionKey> keys) {
-        for (final SelectionKey key : keys) {
-            try {
-                key.channel().close();
-            } catch (final IOException e) {
-                LOGGER.log(Level.WARNING, "I/O error when closing channel", e);
-            }
-        }
+    final long droppedMessages() {
+        return sent.dropped();
     }
 
     /**
-     * Disables receiving/sending DNS messages.
+     * @return the number of messages to send that had to wait for room in the sending queue.
      */
-    private synchronized void disable() {
-        if (sender != null) {
-            sender.cancel(true);
-        }
-        if (receiver != null) {
-            receiver.cancel(true);
-        }
+    final long deferredMessages() {
+        return sent.deferred();
     }
 
     /**
-     * Determines whether the given network interface has an address of the given class.
-     *
-     * @param iface network interface
-     * @param inetClass {@link InetAddress} class
-     * @return {@code true} if given network interface has an address of the given class
+     * @return the number of received queries that have been dropped because they did not ask for any name this
+     *         responder is authoritative for.
      */
-    private boolean hasIpv(final NetworkInterface iface, final Class<? extends InetAddress> inetClass) {
-        for (final Enumeration<InetAddress> e = iface.getInetAddresses(); e.hasMoreElements();) {
-            if (e.nextElement().getClass().isAssignableFrom(inetClass)) {
-                return true;
-            }
-        }
-        return false;
+    final long filteredQueries() {
+        return filtered.get();
     }
 
     /**
-     * Opens a new {@link MulticastChannel multicast channel} for the the given network interface.
-     * <p>
-     * A new channel is opened iff the given network interface {@link NetworkInterface#supportsMulticast() supports
-     * multicast}, is {@link NetworkInterface#isUp() up} and has at least one address matching the given protocol
-     * family
-     *
-     * @param iface all network interface
-     * @param family IPV4 or IPV5
-     * @param loopback {@code true} if given interface must be the loopback, {@code false} if it must not
-     * @return a new multicast channel or empty if the given network interface is not valid
+     * @return the number of received datagrams that have been ignored because they were copies of datagrams
+     *         received through another link.
      */
-    private Optional<DatagramChannel> openChannel(final NetworkInterface iface, final ProtocolFamily family,
-            final boolean loopback) {
-        final boolean ipv4Protocol = family == StandardProtocolFamily.INET;
-        final InetAddress addr = ipv4Protocol ? IPV4_ADDR : IPV6_ADDR;
-        try {
-            final Class<? extends InetAddress> ipvClass = ipv4Protocol ? Inet4Address.class : Inet6Address.class;
-            if (iface.supportsMulticast()
-                && iface.isUp()
-                && iface.isLoopback() == loopback
-                && hasIpv(iface, ipvClass)) {
-                final Optional<DatagramChannel> channel = openChannel(family);
-                if (channel.isPresent()) {
-                    channel.get().setOption(StandardSocketOptions.IP_MULTICAST_IF, iface);
-                    channel.get().join(addr, iface);
-                    LOGGER.info(() -> "Joined multicast address " + addr + " on " + iface);
-                    return channel;
-                }
-            }
-            LOGGER.fine(() -> "Ignored " + iface + " for " + addr);
-            return Optional.empty();
-        } catch (final IOException e) {
-            LOGGER.log(Level.WARNING, e, () -> "Ignored " + iface + " for " + addr);
-            return Optional.empty();
-        }
+    final long ignoredDatagrams() {
+        return ignored.get();
     }
 
     /**
-     * Opens a new {@link DatagramChannel}.
-     *
-     * @param family the protocol family
-     * @return a new datagram channel
+     * @return the number of received datagrams that have been dropped because they were larger than
+     *         {@link MulticastDnsSd#MAX_MDNS_PACKET_SIZE}, and therefore truncated by the transport.
      */
-    private Optional<DatagramChannel> openChannel(final ProtocolFamily family) {
-        try {
-            final DatagramChannel channel = DatagramChannel.open(family);
-            channel.configureBlocking(false);
-            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
-            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 255);
-            channel.bind(new InetSocketAddress(family == StandardProtocolFamily.INET ? InetAddress.getByName("0.0.0.0") : null, MDNS_PORT));
-            return Optional.of(channel);
-        } catch (final UnsupportedOperationException e) {
-            LOGGER
-                .log(Level.FINE, e,
-                        () -> "Protocol Family [" + family.name() + "] not supported on this machine.");
-            return Optional.empty();
-        } catch (final IOException e) {
-            LOGGER.log(Level.WARNING, "Fail to create channel", e);
-            return Optional.empty();
-        }
+    final long oversizedDatagrams() {
+        return oversized.get();
+    }
+
+    /**
+     * @return the number of received datagrams waiting to be decoded.
+     */
+    final int pendingDatagrams() {
+        return decoders.stream().mapToInt(Decoder::size).sum();
     }
 
     /**
-     * Registers the given channel with the {@link #selector} for read operation, returning a selection key.
+     * @return the number of messages waiting to be sent.
+     */
+    final int pendingMessages() {
+        return sent.size();
+    }
+
+    /**
+     * Adds the given message to the queue of messages to send.
+     * <p>
+     * If the queue is full, the message or a queued message of lower or equal priority is dropped according to
+     * {@link HaloProperties#SENDING_OVERFLOW}. A thread dispatching received messages never waits for room in the
+     * queue, so that a full queue does not stall reception.
      *
-     * @param channel channel
-     * @return selection key
+     * @param message message to send
+     * @param priority message priority
      */
-    private SelectionKey register(final DatagramChannel channel) {
-        try {
-            return channel.register(selector, SelectionKey.OP_READ);
-        } catch (final ClosedChannelException e) {
-            LOGGER.severe(() -> "Could not register channel with selector");
-            throw new IllegalStateException(e);
+    final void send(final DnsMessage message, final Priority priority) {
+        sent.offer(message, priority, !DISPATCHING.get().booleanValue());
+    }
+
+    /**
+     * Disables receiving/sending DNS messages.
+     */
+    private synchronized void disable() {
+        if (sender != null) {
+            sender.cancel(true);
         }
+        workers.forEach(w -> w.cancel(true));
     }
 
 }
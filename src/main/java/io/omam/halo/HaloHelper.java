@@ -33,8 +33,11 @@ package io.omam.halo;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Optional;
 
+import io.omam.halo.SendQueue.Priority;
+
 /**
  * Internal helper methods. This is an abstract class in order to reduce the visibility of the methods.
  */
@@ -62,7 +65,15 @@ abstract class HaloHelper {
      * @param clazz record class
      * @return an Optional describing the matching cached DNS record or empty
      */
-    abstract Optional<DnsRecord> cachedRecord(final String name, final short type, final short clazz);
+    abstract Optional<DnsRecord> cachedRecord(final DnsName name, final short type, final short clazz);
+
+    /**
+     * Returns all cached DNS records matching the given name.
+     *
+     * @param name record name
+     * @return all cached DNS records matching the given name
+     */
+    abstract Collection<DnsRecord> cachedRecords(final DnsName name);
 
     /**
      * @return the current instant.
@@ -76,7 +87,7 @@ abstract class HaloHelper {
      * @param ttl the TTL
      * @throws IOException in case of I/O error
      */
-    abstract void reannounce(final RegisteredService service, final Duration ttl) throws IOException;
+    abstract void reannounce(final RegisteredServiceImpl service, final Duration ttl) throws IOException;
 
     /**
      * Removes the given listener so that it no longer receives DNS responses.
@@ -89,6 +100,7 @@ abstract class HaloHelper {
      * Sends the given DNS message.
      *
      * @param msg DNS message
+     * @param priority message priority
      */
-    abstract void sendMessage(final DnsMessage msg);
+    abstract void sendMessage(final DnsMessage msg, final Priority priority);
 }
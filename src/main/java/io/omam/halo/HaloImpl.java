@@ -30,27 +30,33 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
+import static io.omam.halo.HaloProperties.CACHE_CAPACITY;
+import static io.omam.halo.HaloProperties.CACHE_SNAPSHOT;
+import static io.omam.halo.HaloProperties.MDNS_PORT;
 import static io.omam.halo.HaloProperties.TTL;
 import static io.omam.halo.MulticastDnsSd.CLASS_IN;
 import static io.omam.halo.MulticastDnsSd.FLAGS_AA;
 import static io.omam.halo.MulticastDnsSd.RT_DISCOVERY;
+import static io.omam.halo.MulticastDnsSd.RT_DISCOVERY_NAME;
 import static io.omam.halo.MulticastDnsSd.TYPE_A;
 import static io.omam.halo.MulticastDnsSd.TYPE_AAAA;
 import static io.omam.halo.MulticastDnsSd.TYPE_ANY;
 import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
 import static io.omam.halo.MulticastDnsSd.TYPE_SRV;
 import static io.omam.halo.MulticastDnsSd.TYPE_TXT;
-import static io.omam.halo.MulticastDnsSd.toLowerCase;
 import static io.omam.halo.MulticastDnsSd.uniqueClass;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -58,6 +64,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -67,11 +75,12 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
 
 /**
  * Halo implementation.
  */
-final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
+final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage>, LinkListener {
 
     /** logger. */
     private static final Logger LOGGER = Logger.getLogger(HaloImpl.class.getName());
@@ -97,23 +106,38 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
     /** clock. */
     private final Clock clock;
 
+    /** pre-filter of received queries, holding the names of announcing and registered services. */
+    private final QueryFilter filter;
+
+    /** executor service handling changes to the links, so that the transport is never blocked. */
+    private final ExecutorService linkHandler;
+
     /** cache record reaper. */
     private final Reaper reaper;
 
+    /** cache record refresher. */
+    private final Refresher refresher;
+
     /** {@link ResponseListener listener}s. */
     private final Collection<ResponseListener> rls;
 
+    /** cache snapshot, if enabled. */
+    private final Optional<CacheSnapshot> snapshot;
+
+    /** statistics. */
+    private final Statistics statistics;
+
     /** Registration Types browser. */
     private final HaloRegistrationTypeBrowser rBrowser;
 
     /** Service browser. */
     private final HaloServiceBrowser sBrowser;
 
-    /** map of all services being registered indexed by {@link Service#instanceName()}. */
-    private final Map<String, RegisterableService> announcing;
+    /** map of all services being registered indexed by {@link Service#name()}. */
+    private final Map<DnsName, RegisterableService> announcing;
 
-    /** map of all registered services indexed by {@link Service#instanceName()}. */
-    private final Map<String, RegisteredService> registered;
+    /** map of all registered services indexed by {@link Service#name()}. */
+    private final Map<DnsName, RegisteredServiceImpl> registered;
 
     /** set of all registration pointer names. */
     private final Set<String> registrationPointerNames;
@@ -126,21 +150,33 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      * @throws IOException in case of I/O error
      */
     HaloImpl(final Clock aClock, final Collection<NetworkInterface> nics) throws IOException {
+        this(aClock, nics.isEmpty() ? NioTransport.allNetworkInterfaces() : NioTransport.networkInterfaces(nics));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param aClock clock
+     * @param transport transport to send and receive datagrams
+     */
+    HaloImpl(final Clock aClock, final Transport transport) {
         final SequentialBatchExecutor executor = new SequentialBatchExecutor("registration");
         announcer = new Announcer(this, executor);
-        cache = new Cache();
+        cache = new Cache(CACHE_CAPACITY, this::interests, this::uncached);
         canceller = new Canceller(this, executor);
-        if (nics.isEmpty()) {
-            channel = HaloChannel.allNetworkInterfaces(this, aClock);
-        } else {
-            channel = HaloChannel.networkInterfaces(this, aClock, nics);
-        }
+        filter = new QueryFilter();
+        channel = new HaloChannel(this, this, filter, aClock, transport);
         clock = aClock;
+        linkHandler = Executors.newSingleThreadExecutor(new HaloThreadFactory("link"));
         reaper = new Reaper(cache, clock);
         rls = new ConcurrentLinkedQueue<>();
 
         rBrowser = new HaloRegistrationTypeBrowser(this);
         sBrowser = new HaloServiceBrowser(this);
+        refresher = new Refresher(this, this::interests, clock);
+        snapshot = CACHE_SNAPSHOT.map(file -> new CacheSnapshot(cache, file, clock));
+        snapshot.ifPresent(s -> refresher.schedule(s.load()));
+        statistics = new HaloStatistics(channel);
 
         announcing = new ConcurrentHashMap<>();
         registered = new ConcurrentHashMap<>();
@@ -148,6 +184,8 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
 
         channel.enable();
         reaper.start();
+        refresher.start();
+        snapshot.ifPresent(CacheSnapshot::start);
     }
 
     /**
@@ -174,6 +212,40 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         return result;
     }
 
+    /**
+     * Returns whether the given query requests a unicast response: all of its questions have the unicast-response
+     * (QU) bit set.
+     * <p>
+     * Responders running on the same host share the mDNS port and a unicast datagram is received by only one of
+     * them: a query sent from this host is therefore always answered by multicast.
+     *
+     * @param query query
+     * @param querier address of the querier
+     * @return true if the response shall be sent by unicast to the querier
+     */
+    private static boolean isUnicastRequested(final DnsMessage query, final InetSocketAddress querier) {
+        final List<DnsQuestion> questions = query.questions();
+        return !questions.isEmpty()
+            && questions.stream().allMatch(DnsQuestion::isUnique)
+            && !query.link().map(l -> l.isLocal(querier.getAddress())).orElse(Boolean.TRUE).booleanValue();
+    }
+
+    /**
+     * Returns the address of the given link replacing the given address which is no longer an address of the link:
+     * an address of the same family, not link-local if possible.
+     *
+     * @param address address which is no longer an address of the link
+     * @param link link
+     * @return the replacement address if any
+     */
+    private static Optional<InetAddress> replacement(final InetAddress address, final Link link) {
+        return link
+            .addresses()
+            .stream()
+            .filter(a -> a.getClass() == address.getClass())
+            .min(Comparator.comparing(InetAddress::isLinkLocalAddress));
+    }
+
     @Override
     public final void accept(final DnsMessage message) {
         if (message.isQuery()) {
@@ -207,8 +279,9 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         sBrowser.close();
         rBrowser.close();
 
-        /* close cache reaper. */
+        /* close cache reaper and refresher. */
         reaper.close();
+        refresher.close();
 
         try {
             /* de-register all services. */
@@ -219,7 +292,10 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
             /* close service background threads. */
             announcer.close();
             canceller.close();
+            linkHandler.shutdownNow();
             channel.close();
+            /* save the cache before clearing it. */
+            snapshot.ifPresent(CacheSnapshot::close);
             cache.clear();
             rls.clear();
         }
@@ -227,12 +303,14 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
 
     @Override
     public final void deregister(final RegisteredService service) throws IOException {
-        final String serviceKey = toLowerCase(service.name());
-        if (registered.containsKey(serviceKey)) {
-            canceller.cancel(service);
+        final DnsName serviceKey = DnsName.of(service.name());
+        final RegisteredServiceImpl rservice = registered.get(serviceKey);
+        if (rservice != null) {
+            canceller.cancel(rservice);
             registrationPointerNames.remove(service.registrationPointerName());
             registered.remove(serviceKey);
-            cache.removeAll(service.name());
+            updateFilter();
+            cache.removeAll(serviceKey);
         } else {
             LOGGER.info(() -> service + " is not registered");
         }
@@ -253,6 +331,41 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         }
     }
 
+    @Override
+    public final void linkAdded(final Link link) {
+        LOGGER.info(() -> "Re-announcing registered services on " + link);
+        linkHandler.execute(() -> registered.values().forEach(s -> reannounce(s, Optional.of(link))));
+    }
+
+    @Override
+    public final void linkRemoved(final Link link) {
+        LOGGER.info(() -> "No longer sending nor receiving DNS messages through " + link);
+    }
+
+    @Override
+    public final void linkUpdated(final Link previous, final Link current) {
+        final Set<InetAddress> gone = new HashSet<>(previous.addresses());
+        gone.removeAll(current.addresses());
+        if (gone.isEmpty()) {
+            return;
+        }
+        linkHandler.execute(() -> {
+            for (final RegisteredServiceImpl service : registered.values()) {
+                boolean changed = false;
+                for (final InetAddress address : gone) {
+                    final Optional<InetAddress> replacement = replacement(address, current);
+                    if (replacement.isPresent() && service.changeAddress(address, replacement.get())) {
+                        LOGGER.info(() -> "Changed address of " + service + " to " + replacement.get());
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reannounce(service, Optional.empty());
+                }
+            }
+        });
+    }
+
     @Override
     public final RegisteredService register(final RegisterableService registerable, final Duration ttl,
             final boolean allowNameChange) throws IOException {
@@ -260,22 +373,25 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         LOGGER.fine(() -> "Registering " + registerable + ON_DOMAIN);
         final RegisterableService service = makeUnique(registerable, allowNameChange);
 
-        final String serviceKey = toLowerCase(service.name());
+        final DnsName serviceKey = DnsName.of(service.name());
         announcing.put(serviceKey, service);
         final String rpn = service.registrationPointerName();
         registrationPointerNames.add(rpn);
+        updateFilter();
 
         final boolean announced = announcer.announce(service, ttl);
         announcing.remove(serviceKey);
         if (!announced) {
             registrationPointerNames.remove(service.registrationPointerName());
+            updateFilter();
             final String msg = "Found conflicts while announcing " + service + " on network";
             LOGGER.warning(msg);
             throw new IOException(msg);
         }
         LOGGER.info(() -> "Registered " + service + ON_DOMAIN);
-        final RegisteredService rservice = new RegisteredServiceImpl(service, this);
+        final RegisteredServiceImpl rservice = new RegisteredServiceImpl(service, this);
         registered.put(serviceKey, rservice);
+        updateFilter();
         return rservice;
     }
 
@@ -288,7 +404,6 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
     @Override
     public final Optional<ResolvedService> resolve(final String instanceName, final String registrationType,
             final Duration timeout) {
-        cache.clean(now());
         final ResolvableService service = new ResolvableService(instanceName, registrationType);
         LOGGER.fine(() -> "Resolving " + service.toString() + ON_DOMAIN);
         try {
@@ -305,6 +420,11 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         return Optional.empty();
     }
 
+    @Override
+    public final Statistics statistics() {
+        return statistics;
+    }
+
     @Override
     final void addResponseListener(final ResponseListener listener) {
         Objects.requireNonNull(listener);
@@ -313,17 +433,22 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
     }
 
     @Override
-    final Optional<DnsRecord> cachedRecord(final String name, final short type, final short clazz) {
+    final Optional<DnsRecord> cachedRecord(final DnsName name, final short type, final short clazz) {
         return cache.get(name, type, clazz);
     }
 
+    @Override
+    final Collection<DnsRecord> cachedRecords(final DnsName name) {
+        return cache.entries(name);
+    }
+
     @Override
     final Instant now() {
         return clock.instant();
     }
 
     @Override
-    final void reannounce(final RegisteredService service, final Duration ttl) throws IOException {
+    final void reannounce(final RegisteredServiceImpl service, final Duration ttl) throws IOException {
         announcer.reannounce(service, ttl);
     }
 
@@ -335,8 +460,8 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
     }
 
     @Override
-    final void sendMessage(final DnsMessage msg) {
-        channel.send(msg);
+    final void sendMessage(final DnsMessage msg, final Priority priority) {
+        channel.send(msg, priority);
     }
 
     /**
@@ -349,14 +474,12 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      */
     private void addIpv4Address(final DnsMessage query, final DnsQuestion question, final Builder builder,
             final Instant now) {
-        announcingOrRegistered()
-            .filter(s -> s.hostname().equalsIgnoreCase(question.name()))
-            .filter(h -> h.ipv4Address().isPresent())
-            .forEach(s -> {
-                final InetAddress addr = s.ipv4Address().get();
-                builder
-                    .addAnswer(query, new AddressRecord(question.name(), uniqueClass(CLASS_IN), TTL, now, addr));
-            });
+        announcingOrRegistered(now)
+            .map(ServiceRecords::ipv4)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .filter(r -> r.dnsName().equals(question.dnsName()))
+            .forEach(r -> builder.addAnswer(query, r));
     }
 
     /**
@@ -369,14 +492,12 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      */
     private void addIpv6Address(final DnsMessage query, final DnsQuestion question, final Builder builder,
             final Instant now) {
-        announcingOrRegistered()
-            .filter(s -> s.hostname().equalsIgnoreCase(question.name()))
-            .filter(h -> h.ipv6Address().isPresent())
-            .forEach(s -> {
-                final InetAddress addr = s.ipv6Address().get();
-                builder
-                    .addAnswer(query, new AddressRecord(question.name(), uniqueClass(CLASS_IN), TTL, now, addr));
-            });
+        announcingOrRegistered(now)
+            .map(ServiceRecords::ipv6)
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .filter(r -> r.dnsName().equals(question.dnsName()))
+            .forEach(r -> builder.addAnswer(query, r));
     }
 
     /**
@@ -389,18 +510,15 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      */
     private void addPtrAnswer(final DnsMessage query, final DnsQuestion question, final Builder builder,
             final Instant now) {
-        if (question.name().equals(RT_DISCOVERY)) {
+        if (question.dnsName().equals(RT_DISCOVERY_NAME)) {
             for (final String rpn : registrationPointerNames) {
                 builder.addAnswer(query, new PtrRecord(RT_DISCOVERY, CLASS_IN, TTL, now, rpn));
             }
         } else {
-            announcingOrRegistered().forEach(service -> {
-                if (question.name().equalsIgnoreCase(service.registrationPointerName())) {
-                    builder
-                        .addAnswer(query, new PtrRecord(service.registrationPointerName(), CLASS_IN, TTL, now,
-                                                        service.name()));
-                }
-            });
+            announcingOrRegistered(now)
+                .map(ServiceRecords::ptr)
+                .filter(r -> r.dnsName().equals(question.dnsName()))
+                .forEach(r -> builder.addAnswer(query, r));
         }
     }
 
@@ -409,37 +527,36 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      *
      * @param query query being answered
      * @param question service resolution question (from the query)
-     * @param service service matching the query
+     * @param records records of the service matching the query
      * @param builder builder
-     * @param now current instant
      */
-    private void addServiceAnswer(final DnsMessage query, final DnsQuestion question, final Service service,
-            final Builder builder, final Instant now) {
-        final short unique = uniqueClass(CLASS_IN);
-        final String hostname = service.hostname();
+    private void addServiceAnswer(final DnsMessage query, final DnsQuestion question, final ServiceRecords records,
+            final Builder builder) {
         if (question.type() == TYPE_SRV || question.type() == TYPE_ANY) {
-            builder.addAnswer(query, new SrvRecord(question.name(), unique, TTL, now, service.port(), hostname));
+            builder.addAnswer(query, records.srv());
         }
 
         if (question.type() == TYPE_TXT || question.type() == TYPE_ANY) {
-            builder.addAnswer(query, new TxtRecord(question.name(), unique, TTL, now, service.attributes()));
+            builder.addAnswer(query, records.txt());
         }
 
         if (question.type() == TYPE_SRV) {
-            service
-                .ipv4Address()
-                .ifPresent(a -> builder.addAnswer(query, new AddressRecord(hostname, unique, TTL, now, a)));
-            service
-                .ipv6Address()
-                .ifPresent(a -> builder.addAnswer(query, new AddressRecord(hostname, unique, TTL, now, a)));
+            records.ipv4().ifPresent(r -> builder.addAnswer(query, r));
+            records.ipv6().ifPresent(r -> builder.addAnswer(query, r));
         }
     }
 
     /**
-     * @return stream of announcing or registered services.
+     * Returns the records of announcing or registered services: registered services records are built once,
+     * whereas announcing services records are built on demand.
+     *
+     * @param now current instant
+     * @return stream of the records of announcing or registered services.
      */
-    private Stream<Service> announcingOrRegistered() {
-        return Stream.concat(announcing.values().stream(), registered.values().stream());
+    private Stream<ServiceRecords> announcingOrRegistered(final Instant now) {
+        return Stream
+            .concat(announcing.values().stream().map(s -> new ServiceRecords(s, now)),
+                    registered.values().stream().map(RegisteredServiceImpl::records));
     }
 
     /**
@@ -448,13 +565,12 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      * @param name name of the sevice
      * @return announcing or registered service or null if not found.
      */
-    private Service announcingOrRegistered(final String name) {
-        final String lcName = toLowerCase(name);
-        final RegisterableService aService = announcing.get(lcName);
+    private Service announcingOrRegistered(final DnsName name) {
+        final RegisterableService aService = announcing.get(name);
         if (aService != null) {
             return aService;
         }
-        final RegisteredService rService = registered.get(lcName);
+        final RegisteredService rService = registered.get(name);
         if (rService != null) {
             return rService;
         }
@@ -463,6 +579,22 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
 
     }
 
+    /**
+     * Returns the records of the announcing or registered service for the given name.
+     *
+     * @param name name of the sevice
+     * @param now current instant
+     * @return records of the announcing or registered service or null if not found.
+     */
+    private ServiceRecords announcingOrRegistered(final DnsName name, final Instant now) {
+        final RegisteredServiceImpl rService = registered.get(name);
+        if (rService != null) {
+            return rService.records();
+        }
+        final Service service = announcingOrRegistered(name);
+        return service == null ? null : new ServiceRecords(service, now);
+    }
+
     /**
      * Builds a response to the given query.
      *
@@ -471,6 +603,17 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      */
     private DnsMessage buildResponse(final DnsMessage query) {
         final Builder builder = DnsMessage.response(FLAGS_AA);
+        /* answer only on the link the query has been received through. */
+        query.link().ifPresent(builder::to);
+        query.peer().ifPresent(querier -> {
+            if (querier.getPort() != MDNS_PORT) {
+                /* legacy unicast query: answer the querier directly, echoing the query ID and questions. */
+                builder.id(query.id()).unicast(querier);
+                query.questions().forEach(builder::addQuestion);
+            } else if (isUnicastRequested(query, querier)) {
+                builder.unicast(querier);
+            }
+        });
         final Instant now = now();
         for (final DnsQuestion question : query.questions()) {
             if (question.type() == TYPE_PTR) {
@@ -483,9 +626,9 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
                     addIpv6Address(query, question, builder, now);
                 }
 
-                final Service service = announcingOrRegistered(question.name());
-                if (service != null) {
-                    addServiceAnswer(query, question, service, builder, now);
+                final ServiceRecords records = announcingOrRegistered(question.dnsName(), now);
+                if (records != null) {
+                    addServiceAnswer(query, question, records, builder);
                 }
             }
         }
@@ -504,7 +647,7 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
             LOGGER.fine(() -> "Ignoring query");
         } else {
             LOGGER.fine(() -> "Responding with " + response);
-            channel.send(response);
+            channel.send(response, Priority.ANSWER);
         }
     }
 
@@ -515,13 +658,16 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
      */
     private void handleResponse(final DnsMessage response) {
         LOGGER.fine(() -> "Handling response " + response);
+        final List<DnsRecord> added = new ArrayList<>();
         for (final DnsRecord record : response.answers()) {
-            if (record.ttl().isZero()) {
+            if (record.ttlMillis() == 0) {
                 cache.expire(record);
             } else {
                 cache.add(record);
+                added.add(record);
             }
         }
+        refresher.schedule(added);
         if (rls.isEmpty()) {
             LOGGER.fine(() -> "No listener registered for " + response);
         } else {
@@ -545,9 +691,10 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         RegisterableService result = service;
         do {
             collision = false;
-            final Instant now = now();
+            final long now = now().toEpochMilli();
             /* check own services. */
-            final Service own = announcingOrRegistered(result.name());
+            final DnsName name = DnsName.of(result.name());
+            final Service own = announcingOrRegistered(name);
             if (own != null) {
                 final String otherHostname = own.hostname();
                 collision = own.port() != port || !otherHostname.equals(hostname);
@@ -559,7 +706,7 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
             if (!collision) {
                 /* check cache. */
                 final Optional<SrvRecord> record = cache
-                    .entries(result.name())
+                    .entries(name)
                     .stream()
                     .filter(e -> e instanceof SrvRecord)
                     .filter(e -> !e.isExpired(now))
@@ -576,6 +723,36 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         return result;
     }
 
+    /**
+     * Returns the names whose records are of interest, i.e. being browsed, or the names and servers of the
+     * services resolved for a browsed registration type or being resolved.
+     *
+     * @return the names whose records are of interest
+     */
+    private Set<DnsName> interests() {
+        final Set<DnsName> names = new HashSet<>();
+        rls.forEach(l -> l.collectInterests(names));
+        return names;
+    }
+
+    /**
+     * Re-announces the given registered service through the given link, or through all links if empty.
+     *
+     * @param service service
+     * @param link link, or empty for all links
+     */
+    private void reannounce(final RegisteredServiceImpl service, final Optional<Link> link) {
+        try {
+            if (link.isPresent()) {
+                announcer.reannounce(service, link.get(), TTL);
+            } else {
+                announcer.reannounce(service, TTL);
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "I/O error while re-announcing " + service);
+        }
+    }
+
     /**
      * Tries to resolve a service instance name collision by changing its instance name if allowed.
      *
@@ -596,4 +773,31 @@ final class HaloImpl extends HaloHelper implements Halo, Consumer<DnsMessage> {
         return new RegisterableServiceImpl(instanceName, service);
     }
 
+    /**
+     * Cancels the pending refresh of the given DNS record, which is no longer cached.
+     *
+     * @param record DNS record
+     */
+    private void uncached(final DnsRecord record) {
+        refresher.cancel(record);
+    }
+
+    /**
+     * Updates the pre-filter of received queries with the names this responder is authoritative for: the name,
+     * hostname and registration pointer name of each announcing or registered service, and the registration types
+     * discovery name if there is any such service.
+     */
+    private synchronized void updateFilter() {
+        final Set<String> names = new HashSet<>();
+        Stream.<Service> concat(announcing.values().stream(), registered.values().stream()).forEach(s -> {
+            names.add(s.name());
+            names.add(s.hostname());
+            names.add(s.registrationPointerName());
+        });
+        if (!names.isEmpty()) {
+            names.add(RT_DISCOVERY);
+        }
+        filter.update(names);
+    }
+
 }
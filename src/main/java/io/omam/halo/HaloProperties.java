@@ -34,7 +34,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -64,6 +67,56 @@ import java.util.Properties;
  * <td>5353</td>
  * </tr>
  * <tr>
+ * <td>io.omam.halo.channel.direct</td>
+ * <td>whether datagrams are received and sent in direct (off-heap) buffers</td>
+ * <td>true</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.channel.mtu</td>
+ * <td>maximum transmission unit in bytes, unless the network interface MTU is lower</td>
+ * <td>1500</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.channel.monitoring</td>
+ * <td>interval between two checks of the network interfaces in milliseconds, 0 to disable</td>
+ * <td>5000</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.receiving.workers</td>
+ * <td>number of threads decoding and dispatching received messages</td>
+ * <td>2</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.receiving.capacity</td>
+ * <td>number of received datagrams each thread can queue before dropping new ones</td>
+ * <td>128</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.receiving.window</td>
+ * <td>time during which copies of a received datagram are ignored in milliseconds</td>
+ * <td>20</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.sending.capacity</td>
+ * <td>number of messages that can be queued for sending</td>
+ * <td>256</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.sending.overflow</td>
+ * <td>what to do when the sending queue is full: DROP_OLDEST, DROP_NEWEST or BLOCK</td>
+ * <td>DROP_OLDEST</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.sending.timeout</td>
+ * <td>maximum time to wait for room in the sending queue in milliseconds when overflow is BLOCK</td>
+ * <td>100</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.sending.window</td>
+ * <td>time during which queued messages are aggregated into a single packet in milliseconds</td>
+ * <td>20</td>
+ * </tr>
+ * <tr>
  * <td>io.omam.halo.resolution.timeout</td>
  * <td>resolution timeout in milliseconds</td>
  * <td>6000</td>
@@ -129,11 +182,31 @@ import java.util.Properties;
  * <td>3</td>
  * </tr>
  * <tr>
+ * <td>io.omam.halo.cache.capacity</td>
+ * <td>maximum estimated size of the cached records in bytes</td>
+ * <td>8388608</td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.cache.snapshot</td>
+ * <td>file to which the cache is saved and from which it is reloaded on startup, empty to disable</td>
+ * <td></td>
+ * </tr>
+ * <tr>
+ * <td>io.omam.halo.cache.snapshot.interval</td>
+ * <td>interval between two saves of the cache in milliseconds</td>
+ * <td>60000</td>
+ * </tr>
+ * <tr>
  * <td>io.omam.halo.reaper.interval</td>
  * <td>cache record reaper interval in milliseconds</td>
  * <td>10000</td>
  * </tr>
  * <tr>
+ * <td>io.omam.halo.refresher.interval</td>
+ * <td>interval between two checks for cache records to refresh in milliseconds</td>
+ * <td>1000</td>
+ * </tr>
+ * <tr>
  * <td>io.omam.halo.ttl.default</td>
  * <td>DNS record default time to live in milliseconds</td>
  * <td>3600000</td>
@@ -147,6 +220,24 @@ import java.util.Properties;
  */
 public final class HaloProperties {
 
+    /**
+     * What to do with a message to be sent when the sending queue is full.
+     * <p>
+     * Regardless of the policy, a message is never dropped in favour of a message of lower priority: probes,
+     * announcements and goodbyes go ahead of answers, which go ahead of browsing and resolution queries.
+     */
+    public enum OverflowPolicy {
+        /** drop the oldest queued message of lowest priority. */
+        DROP_OLDEST,
+        /** drop the newest message of lowest priority. */
+        DROP_NEWEST,
+        /**
+         * drop a queued message of lower priority if any, otherwise wait for room in the queue then drop the new
+         * message if the queue is still full; threads dispatching received messages never wait.
+         */
+        BLOCK;
+    }
+
     /** mDNS IPV4 address. */
     public static final InetAddress IPV4_ADDR;
 
@@ -162,6 +253,36 @@ public final class HaloProperties {
     /** IPV6 socket address. */
     public static final InetSocketAddress IPV6_SOA;
 
+    /** whether datagrams are received and sent in direct (off-heap) buffers. */
+    public static final boolean CHANNEL_DIRECT;
+
+    /** maximum transmission unit, unless the network interface MTU is lower. */
+    public static final int CHANNEL_MTU;
+
+    /** interval between two checks of the network interfaces, zero to disable. */
+    public static final Duration CHANNEL_MONITORING;
+
+    /** number of threads decoding and dispatching received messages. */
+    public static final int RECEIVING_WORKERS;
+
+    /** number of received datagrams each decoding thread can queue before dropping new ones. */
+    public static final int RECEIVING_CAPACITY;
+
+    /** time during which copies of a received datagram are ignored. */
+    public static final Duration RECEIVING_WINDOW;
+
+    /** number of messages that can be queued for sending. */
+    public static final int SENDING_CAPACITY;
+
+    /** what to do when the sending queue is full. */
+    public static final OverflowPolicy SENDING_OVERFLOW;
+
+    /** maximum time to wait for room in the sending queue when overflow is {@link OverflowPolicy#BLOCK}. */
+    public static final Duration SENDING_TIMEOUT;
+
+    /** time during which queued messages are aggregated into a single packet. */
+    public static final Duration SENDING_WINDOW;
+
     /** interval between probe messages. */
     public static final Duration PROBING_INTERVAL;
 
@@ -183,9 +304,21 @@ public final class HaloProperties {
     /** number of cancel message sent when de-registering a service. */
     public static final int CANCEL_NUM;
 
+    /** maximum estimated size of the cached records in bytes. */
+    public static final int CACHE_CAPACITY;
+
+    /** file to which the cache is saved and from which it is reloaded on startup, if any. */
+    public static final Optional<Path> CACHE_SNAPSHOT;
+
+    /** interval between two saves of the cache. */
+    public static final Duration CACHE_SNAPSHOT_INTERVAL;
+
     /** cache record reaper interval. */
     public static final Duration REAPING_INTERVAL;
 
+    /** interval between two checks for cache records to refresh. */
+    public static final Duration REFRESHING_INTERVAL;
+
     /** default resolution timeout. */
     public static final Duration RESOLUTION_TIMEOUT;
 
@@ -221,6 +354,19 @@ public final class HaloProperties {
             IPV4_SOA = new InetSocketAddress(IPV4_ADDR, MDNS_PORT);
             IPV6_SOA = new InetSocketAddress(IPV6_ADDR, MDNS_PORT);
 
+            CHANNEL_DIRECT = booleanProp("io.omam.halo.channel.direct", props);
+            CHANNEL_MTU = intProp("io.omam.halo.channel.mtu", props);
+            CHANNEL_MONITORING = durationProp("io.omam.halo.channel.monitoring", props);
+
+            RECEIVING_WORKERS = Math.max(1, intProp("io.omam.halo.receiving.workers", props));
+            RECEIVING_CAPACITY = Math.max(1, intProp("io.omam.halo.receiving.capacity", props));
+            RECEIVING_WINDOW = durationProp("io.omam.halo.receiving.window", props);
+
+            SENDING_CAPACITY = Math.max(1, intProp("io.omam.halo.sending.capacity", props));
+            SENDING_OVERFLOW = OverflowPolicy.valueOf(stringProp("io.omam.halo.sending.overflow", props));
+            SENDING_TIMEOUT = durationProp("io.omam.halo.sending.timeout", props);
+            SENDING_WINDOW = durationProp("io.omam.halo.sending.window", props);
+
             RESOLUTION_TIMEOUT = durationProp("io.omam.halo.resolution.timeout", props);
             RESOLUTION_INTERVAL = durationProp("io.omam.halo.resolution.interval", props);
 
@@ -239,7 +385,12 @@ public final class HaloProperties {
             CANCELLING_INTERVAL = durationProp("io.omam.halo.cancellation.interval", props);
             CANCEL_NUM = Math.max(1, intProp("io.omam.halo.cancellation.number", props));
 
+            CACHE_CAPACITY = Math.max(1, intProp("io.omam.halo.cache.capacity", props));
+            final String snapshot = stringProp("io.omam.halo.cache.snapshot", props).trim();
+            CACHE_SNAPSHOT = snapshot.isEmpty() ? Optional.empty() : Optional.of(Paths.get(snapshot));
+            CACHE_SNAPSHOT_INTERVAL = durationProp("io.omam.halo.cache.snapshot.interval", props);
             REAPING_INTERVAL = durationProp("io.omam.halo.reaper.interval", props);
+            REFRESHING_INTERVAL = durationProp("io.omam.halo.refresher.interval", props);
 
             TTL = durationProp("io.omam.halo.ttl.default", props);
             EXPIRY_TTL = durationProp("io.omam.halo.ttl.expiry", props);
@@ -256,6 +407,17 @@ public final class HaloProperties {
         // empty.
     }
 
+    /**
+     * Returns the {@code boolean} corresponding to the given key.
+     *
+     * @param key property key
+     * @param props properties default values
+     * @return value
+     */
+    private static boolean booleanProp(final String key, final Properties props) {
+        return Boolean.parseBoolean(stringProp(key, props));
+    }
+
     /**
      * Returns the {@code Duration} corresponding to the given key.
      *
@@ -33,15 +33,20 @@ package io.omam.halo;
 import static io.omam.halo.MulticastDnsSd.CLASS_IN;
 import static io.omam.halo.MulticastDnsSd.DOMAIN;
 import static io.omam.halo.MulticastDnsSd.RT_DISCOVERY;
+import static io.omam.halo.MulticastDnsSd.RT_DISCOVERY_NAME;
 import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
+import static io.omam.halo.MulticastDnsSd.uniqueClass;
 
 import java.util.Collection;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 
 import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
 
 /**
  * Halo registration type browser.
@@ -56,18 +61,22 @@ final class HaloRegistrationTypeBrowser extends HaloBrowser {
     @SuppressWarnings("synthetic-access")
     private final class QueryTask implements Callable<Void> {
 
+        /** whether the next query is the first one, which requests unicast responses (RFC 6762 section 5.4). */
+        private boolean first;
+
         /**
          * Constructor.
          */
         QueryTask() {
-            // empty.
+            first = true;
         }
 
         @Override
         public final Void call() {
-            final Builder builder =
-                    DnsMessage.query().addQuestion(new DnsQuestion(RT_DISCOVERY, TYPE_PTR, CLASS_IN));
-            halo.sendMessage(builder.get());
+            final short clazz = first ? uniqueClass(CLASS_IN) : CLASS_IN;
+            first = false;
+            final Builder builder = DnsMessage.query().addQuestion(new DnsQuestion(RT_DISCOVERY, TYPE_PTR, clazz));
+            halo.sendMessage(builder.get(), Priority.QUERY);
             return null;
         }
 
@@ -83,7 +92,7 @@ final class HaloRegistrationTypeBrowser extends HaloBrowser {
     private final Collection<RegistrationTypeBrowserListener> listeners;
 
     /** all discovered registration types. */
-    private final Collection<String> rts;
+    private final Set<String> rts;
 
     /**
      * Constructor.
@@ -94,16 +103,16 @@ final class HaloRegistrationTypeBrowser extends HaloBrowser {
         super("registration-discoverer", haloHelper);
         halo = haloHelper;
         listeners = new ConcurrentLinkedQueue<>();
-        rts = new ConcurrentLinkedQueue<>();
+        rts = ConcurrentHashMap.newKeySet();
     }
 
     @Override
     public final void responseReceived(final DnsMessage response, final HaloHelper haloHelper) {
         LOGGER.fine(() -> "Handling " + response);
         response
-            .answers()
+            .answers(RT_DISCOVERY_NAME)
             .stream()
-            .filter(r -> r.type() == TYPE_PTR && r.name().equalsIgnoreCase(RT_DISCOVERY))
+            .filter(r -> r.type() == TYPE_PTR)
             .map(r -> (PtrRecord) r)
             .forEach(this::handlePointer);
     }
@@ -121,6 +130,19 @@ final class HaloRegistrationTypeBrowser extends HaloBrowser {
         listeners.add(listener);
     }
 
+    /**
+     * Adds the names whose records are of interest to this browser to the given collection, i.e.
+     * {@link MulticastDnsSd#RT_DISCOVERY} if registration types are being browsed.
+     *
+     * @param names collection of names of interest
+     */
+    @Override
+    public final void collectInterests(final Collection<DnsName> names) {
+        if (!listeners.isEmpty()) {
+            names.add(RT_DISCOVERY_NAME);
+        }
+    }
+
     /**
      * Removes the given listener.
      *
@@ -147,14 +169,15 @@ final class HaloRegistrationTypeBrowser extends HaloBrowser {
      * @param record pointer record
      */
     private void handlePointer(final PtrRecord record) {
-        final int end = record.target().indexOf(DOMAIN);
+        final DnsName target = record.targetName();
+        final int end = target.lastIndexOf(DOMAIN);
         if (end == -1) {
-            LOGGER.warning(() -> "Ignored pointer to [" + record.target() + "]");
+            LOGGER.warning(() -> "Ignored pointer to [" + target + "]");
         } else {
-            final String regType = record.target().substring(0, end);
-            if (!rts.contains(regType)) {
+            final String regType = target.subName(0, end);
+            /* responses may be handled concurrently: only notify once. */
+            if (rts.add(regType)) {
                 LOGGER.info(() -> "Discovered new registration type [" + record.target() + "]");
-                rts.add(regType);
                 listeners.forEach(l -> l.registrationTypeAdded(regType));
             }
         }
@@ -34,8 +34,9 @@ import static io.omam.halo.HaloProperties.RESOLUTION_TIMEOUT;
 import static io.omam.halo.MulticastDnsSd.CLASS_IN;
 import static io.omam.halo.MulticastDnsSd.DOMAIN;
 import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
-import static io.omam.halo.MulticastDnsSd.toLowerCase;
+import static io.omam.halo.MulticastDnsSd.uniqueClass;
 import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 
 import java.time.Instant;
 import java.util.Collection;
@@ -53,6 +54,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
 
 /**
  * Halo service browser by registration type.
@@ -67,21 +69,26 @@ final class HaloServiceBrowser extends HaloBrowser {
     @SuppressWarnings("synthetic-access")
     private final class QueryTask implements Callable<Void> {
 
+        /** whether the next query is the first one, which requests unicast responses (RFC 6762 section 5.4). */
+        private boolean first;
+
         /**
          * Constructor.
          */
         QueryTask() {
-            // empty.
+            first = true;
         }
 
         @Override
         public final Void call() {
-            final Set<String> rpns = listeners.keySet();
+            final Set<DnsName> rpns = listeners.keySet();
             final Builder builder = DnsMessage.query();
-            for (final String rpn : rpns) {
-                builder.addQuestion(new DnsQuestion(rpn, TYPE_PTR, CLASS_IN));
+            final short clazz = first ? uniqueClass(CLASS_IN) : CLASS_IN;
+            first = false;
+            for (final DnsName rpn : rpns) {
+                builder.addQuestion(new DnsQuestion(rpn.toString(), TYPE_PTR, clazz));
             }
-            halo.sendMessage(builder.get());
+            halo.sendMessage(builder.get(), Priority.QUERY);
             return null;
         }
 
@@ -94,7 +101,7 @@ final class HaloServiceBrowser extends HaloBrowser {
     private final class ResolveTask implements Runnable {
 
         /** registration pointer name of the service being resolved. */
-        private final String rpn;
+        private final DnsName rpn;
 
         /** service to resolve. */
         private final ResolvableService service;
@@ -105,7 +112,7 @@ final class HaloServiceBrowser extends HaloBrowser {
          * @param registrationPointerName registration pointer name of the service being resolved
          * @param aService service to resolve
          */
-        ResolveTask(final String registrationPointerName, final ResolvableService aService) {
+        ResolveTask(final DnsName registrationPointerName, final ResolvableService aService) {
             rpn = registrationPointerName;
             service = aService;
         }
@@ -122,7 +129,7 @@ final class HaloServiceBrowser extends HaloBrowser {
                                 + " attributes: "
                                 + service.attributes());
                     } else {
-                        final String skey = toLowerCase(service.name());
+                        final DnsName skey = DnsName.of(service.name());
                         final boolean added = services.get(rpn).get(skey) == null;
                         services.get(rpn).put(skey, service);
                         final Collection<ServiceBrowserListener> rlisteners = listeners.get(rpn);
@@ -150,7 +157,7 @@ final class HaloServiceBrowser extends HaloBrowser {
          * @return true if already resolved.
          */
         private boolean alreadyResolved() {
-            final String skey = toLowerCase(service.name());
+            final DnsName skey = DnsName.of(service.name());
             final ResolvableService existing = services.get(rpn).get(skey);
             if (existing == null) {
                 return false;
@@ -171,12 +178,12 @@ final class HaloServiceBrowser extends HaloBrowser {
     private final HaloHelper halo;
 
     /** listeners, indexed by registration pointer name. */
-    private final Map<String, Collection<ServiceBrowserListener>> listeners;
+    private final Map<DnsName, Collection<ServiceBrowserListener>> listeners;
 
     /**
      * resolved services, indexed by registration pointer name, indexed by service name.
      */
-    private final Map<String, Map<String, ResolvableService>> services;
+    private final Map<DnsName, Map<DnsName, ResolvableService>> services;
 
     /** single thread executor in which all requests are executed. */
     private final ExecutorService executor;
@@ -198,10 +205,10 @@ final class HaloServiceBrowser extends HaloBrowser {
      * Returns the registration pointer name for the given registration type.
      *
      * @param registrationType registration type
-     * @return registration pointer name (lower case)
+     * @return registration pointer name
      */
-    private static String toRpn(final String registrationType) {
-        return toLowerCase(registrationType + DOMAIN + ".");
+    private static DnsName toRpn(final String registrationType) {
+        return DnsName.of(registrationType + DOMAIN + ".");
     }
 
     @Override
@@ -212,7 +219,9 @@ final class HaloServiceBrowser extends HaloBrowser {
     /**
      * Adds the given listener for the given service registration type.
      * <p>
-     * Services already discovered and resolved are notified to the listener.
+     * Services already discovered and resolved are notified to the listener. When the registration type starts
+     * being browsed, the services whose PTR record is cached, e.g. loaded from a snapshot, are resolved without
+     * waiting for the network to answer the first query.
      *
      * @param registrationType service registration type
      * @param listener listener
@@ -220,13 +229,44 @@ final class HaloServiceBrowser extends HaloBrowser {
     final void addListener(final String registrationType, final ServiceBrowserListener listener) {
         Objects.requireNonNull(registrationType);
         Objects.requireNonNull(listener);
-        final String rpn = toRpn(registrationType);
+        final DnsName rpn = toRpn(registrationType);
         final Collection<ServiceBrowserListener> rls =
                 listeners.computeIfAbsent(rpn, k -> new ConcurrentLinkedQueue<>());
-        final Map<String, ResolvableService> resolved =
+        final Map<DnsName, ResolvableService> resolved =
                 services.computeIfAbsent(rpn, k -> new ConcurrentHashMap<>());
         resolved.values().forEach(listener::serviceAdded);
+        final boolean started = rls.isEmpty();
         rls.add(listener);
+        if (started) {
+            final Instant now = halo.now();
+            final List<PtrRecord> cached = halo
+                .cachedRecords(rpn)
+                .stream()
+                .filter(r -> r.type() == TYPE_PTR && !r.isExpired(now))
+                .map(r -> (PtrRecord) r)
+                .collect(toList());
+            if (!cached.isEmpty()) {
+                executor.execute(() -> handleResponse(rpn, cached));
+            }
+        }
+    }
+
+    /**
+     * Adds the names whose records are of interest to this browser to the given collection, i.e. the browsed
+     * registration pointer names, and the names and servers of the services resolved for a browsed registration
+     * type.
+     *
+     * @param names collection of names of interest
+     */
+    @Override
+    public final void collectInterests(final Collection<DnsName> names) {
+        for (final DnsName rpn : listeners.keySet()) {
+            names.add(rpn);
+            final Map<DnsName, ResolvableService> rservices = services.get(rpn);
+            if (rservices != null) {
+                rservices.values().forEach(service -> service.collectInterests(names));
+            }
+        }
     }
 
     /**
@@ -238,7 +278,7 @@ final class HaloServiceBrowser extends HaloBrowser {
     final void removeListener(final String registrationType, final ServiceBrowserListener listener) {
         Objects.requireNonNull(registrationType);
         Objects.requireNonNull(listener);
-        final String rpn = toRpn(registrationType);
+        final DnsName rpn = toRpn(registrationType);
         final Collection<ServiceBrowserListener> rls = listeners.get(rpn);
         if (rls == null) {
             LOGGER.warning(() -> registrationType + " is not being browsed.");
@@ -266,10 +306,9 @@ final class HaloServiceBrowser extends HaloBrowser {
      * @param rlisteners listeners for the registration type
      * @param serviceName service name associated to the expired PTR record
      */
-    private void handlePtrExpiry(final Map<String, ResolvableService> rservices,
-            final Collection<ServiceBrowserListener> rlisteners, final String serviceName) {
-        final String skey = toLowerCase(serviceName);
-        final ResolvableService service = rservices.remove(skey);
+    private void handlePtrExpiry(final Map<DnsName, ResolvableService> rservices,
+            final Collection<ServiceBrowserListener> rlisteners, final DnsName serviceName) {
+        final ResolvableService service = rservices.remove(serviceName);
         if (service != null) {
             LOGGER.info(() -> "Service [" + serviceName + "] has been removed");
             rlisteners.forEach(l -> l.serviceRemoved(service));
@@ -282,12 +321,12 @@ final class HaloServiceBrowser extends HaloBrowser {
      * @param rpn registration pointer name
      * @param pointers PTR records
      */
-    private void handleResponse(final String rpn, final Collection<PtrRecord> pointers) {
-        final Map<String, ResolvableService> rservices = services.get(rpn);
+    private void handleResponse(final DnsName rpn, final Collection<PtrRecord> pointers) {
+        final Map<DnsName, ResolvableService> rservices = services.get(rpn);
         final Collection<ServiceBrowserListener> rlisteners = listeners.get(rpn);
         final Instant now = halo.now();
         for (final PtrRecord ptr : pointers) {
-            final String serviceName = ptr.target();
+            final DnsName serviceName = ptr.targetName();
             if (ptr.isExpired(now)) {
                 handlePtrExpiry(rservices, rlisteners, serviceName);
             } else {
@@ -300,16 +339,16 @@ final class HaloServiceBrowser extends HaloBrowser {
      * Extracts all PTR records related to browsed service types.
      *
      * @param response DNS response
-     * @return map of PTR records indexed by browsed registration pointer name in lower case
+     * @return map of PTR records indexed by browsed registration pointer name
      */
-    private Map<String, List<PtrRecord>> pointers(final DnsMessage response) {
-        final Set<String> rpns = listeners.keySet();
+    private Map<DnsName, List<PtrRecord>> pointers(final DnsMessage response) {
+        final Set<DnsName> rpns = listeners.keySet();
         return response
-            .answers()
+            .answers(TYPE_PTR)
             .stream()
-            .filter(r -> r.type() == TYPE_PTR && rpns.contains(toLowerCase(r.name())))
+            .filter(r -> rpns.contains(r.dnsName()))
             .map(r -> (PtrRecord) r)
-            .collect(groupingBy(r -> toLowerCase(r.name())));
+            .collect(groupingBy(DnsRecord::dnsName));
     }
 
     /**
@@ -318,7 +357,7 @@ final class HaloServiceBrowser extends HaloBrowser {
      * @param rpn registration pointer name
      * @param serviceName service name
      */
-    private void submitResolution(final String rpn, final String serviceName) {
+    private void submitResolution(final DnsName rpn, final DnsName serviceName) {
         final Optional<String> instanceName = ResolvableService.instanceNameOf(serviceName);
         final Optional<String> registrationType = ResolvableService.registrationTypeOf(serviceName);
         if (instanceName.isPresent() && registrationType.isPresent()) {
@@ -0,0 +1,104 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+/**
+ * {@link Statistics} of a {@link Halo} instance, read from its channel.
+ */
+final class HaloStatistics implements Statistics {
+
+    /** channel. */
+    private final HaloChannel channel;
+
+    /**
+     * Constructor.
+     *
+     * @param aChannel channel
+     */
+    HaloStatistics(final HaloChannel aChannel) {
+        channel = aChannel;
+    }
+
+    @Override
+    public final long deferredMessages() {
+        return channel.deferredMessages();
+    }
+
+    @Override
+    public final long droppedDatagrams() {
+        return channel.droppedDatagrams();
+    }
+
+    @Override
+    public final long droppedMessages() {
+        return channel.droppedMessages();
+    }
+
+    @Override
+    public final long ignoredDatagrams() {
+        return channel.ignoredDatagrams();
+    }
+
+    @Override
+    public final long oversizedDatagrams() {
+        return channel.oversizedDatagrams();
+    }
+
+    @Override
+    public final int pendingDatagrams() {
+        return channel.pendingDatagrams();
+    }
+
+    @Override
+    public final int pendingMessages() {
+        return channel.pendingMessages();
+    }
+
+    @Override
+    public final String toString() {
+        return "Statistics [deferredMessages="
+            + deferredMessages()
+            + ", droppedDatagrams="
+            + droppedDatagrams()
+            + ", droppedMessages="
+            + droppedMessages()
+            + ", ignoredDatagrams="
+            + ignoredDatagrams()
+            + ", oversizedDatagrams="
+            + oversizedDatagrams()
+            + ", pendingDatagrams="
+            + pendingDatagrams()
+            + ", pendingMessages="
+            + pendingMessages()
+            + "]";
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A network link on which DNS messages are sent and received: a network interface and an address family.
+ */
+final class Link {
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(Link.class.getName());
+
+    /** name of the network interface. */
+    private final String name;
+
+    /** index of the network interface, or -1 if unknown. */
+    private final int index;
+
+    /** address family. */
+    private final ProtocolFamily family;
+
+    /** maximum transmission unit of the network interface in bytes, or -1 if unknown. */
+    private final int mtu;
+
+    /** addresses of the network interface and the length of their network prefix in bits. */
+    private final Map<InetAddress, Integer> addresses;
+
+    /**
+     * Constructor.
+     *
+     * @param aName name of the network interface
+     * @param anIndex index of the network interface, or -1 if unknown
+     * @param aFamily address family
+     * @param aMtu maximum transmission unit of the network interface in bytes, or -1 if unknown
+     * @param someAddresses addresses of the network interface and the length of their network prefix in bits
+     */
+    Link(final String aName, final int anIndex, final ProtocolFamily aFamily, final int aMtu,
+            final Map<InetAddress, Integer> someAddresses) {
+        name = aName;
+        index = anIndex;
+        family = aFamily;
+        mtu = aMtu;
+        addresses = Collections.unmodifiableMap(new HashMap<>(someAddresses));
+    }
+
+    /**
+     * Returns the link of the given network interface for the given address family.
+     *
+     * @param nic network interface
+     * @param family address family
+     * @return link
+     */
+    static Link of(final NetworkInterface nic, final ProtocolFamily family) {
+        int mtu;
+        try {
+            mtu = nic.getMTU();
+        } catch (final IOException e) {
+            LOGGER.log(Level.FINE, e, () -> "Could not get MTU of " + nic.getName());
+            mtu = -1;
+        }
+        final Map<InetAddress, Integer> addresses = new HashMap<>();
+        for (final InterfaceAddress ia : nic.getInterfaceAddresses()) {
+            addresses.put(ia.getAddress(), Integer.valueOf(ia.getNetworkPrefixLength()));
+        }
+        return new Link(nic.getName(), nic.getIndex(), family, mtu, addresses);
+    }
+
+    /**
+     * Returns whether the given address belongs to the given network.
+     *
+     * @param address address
+     * @param network network address
+     * @param prefixLength network prefix length in bits
+     * @return true if both addresses share the same network prefix
+     */
+    private static boolean isInNetwork(final InetAddress address, final InetAddress network,
+            final int prefixLength) {
+        final byte[] a = address.getAddress();
+        final byte[] n = network.getAddress();
+        if (a.length != n.length || prefixLength <= 0 || prefixLength > a.length * 8) {
+            return false;
+        }
+        final int bytes = prefixLength / 8;
+        for (int i = 0; i < bytes; i++) {
+            if (a[i] != n[i]) {
+                return false;
+            }
+        }
+        final int bits = prefixLength % 8;
+        if (bits == 0) {
+            return true;
+        }
+        final int mask = 0xFF << 8 - bits & 0xFF;
+        return (a[bytes] & mask) == (n[bytes] & mask);
+    }
+
+    @Override
+    public final boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Link)) {
+            return false;
+        }
+        final Link other = (Link) obj;
+        return family == other.family && name.equals(other.name);
+    }
+
+    @Override
+    public final int hashCode() {
+        return 31 * name.hashCode() + family.hashCode();
+    }
+
+    @Override
+    public final String toString() {
+        return name + (family == StandardProtocolFamily.INET ? "/IPv4" : "/IPv6");
+    }
+
+    /**
+     * @return the addresses of the network interface of this link.
+     */
+    final Set<InetAddress> addresses() {
+        return addresses.keySet();
+    }
+
+    /**
+     * @return the address family of this link.
+     */
+    final ProtocolFamily family() {
+        return family;
+    }
+
+    /**
+     * Returns whether the given address is one of the addresses of the network interface of this link.
+     *
+     * @param address address
+     * @return true if the address is local to this link
+     */
+    final boolean isLocal(final InetAddress address) {
+        return addresses.containsKey(address);
+    }
+
+    /**
+     * Returns whether a datagram sent from the given address has been received through this link.
+     * <p>
+     * An IPv6 link-local address belongs to this link if its scope is the index of the network interface. Any
+     * other address belongs to this link if it is in the network of one of the addresses of the interface.
+     *
+     * @param address address of the sender of the datagram
+     * @return true if the datagram has been received through this link
+     */
+    final boolean isOrigin(final InetAddress address) {
+        final Class<? extends InetAddress> ipvClass =
+                family == StandardProtocolFamily.INET ? Inet4Address.class : Inet6Address.class;
+        if (!ipvClass.isInstance(address)) {
+            return false;
+        }
+        if (address.isLinkLocalAddress() && address instanceof Inet6Address) {
+            return ((Inet6Address) address).getScopeId() == index;
+        }
+        return addresses
+            .entrySet()
+            .stream()
+            .anyMatch(e -> isInNetwork(address, e.getKey(), e.getValue().intValue()));
+    }
+
+    /**
+     * Returns whether the given link has the same addresses, network prefixes and MTU as this link.
+     *
+     * @param other other link
+     * @return true if both links have the same addresses, network prefixes and MTU
+     */
+    final boolean isSameAs(final Link other) {
+        return mtu == other.mtu && addresses.equals(other.addresses);
+    }
+
+    /**
+     * @return the maximum transmission unit of the network interface of this link in bytes, or -1 if unknown.
+     */
+    final int mtu() {
+        return mtu;
+    }
+
+    /**
+     * @return the name of the network interface of this link.
+     */
+    final String name() {
+        return name;
+    }
+
+}
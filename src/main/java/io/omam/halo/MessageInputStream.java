@@ -30,66 +30,106 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * An input stream to read the data received in a single {@link DnsMessage}.
  * <p>
- * Data is read from a {@link ByteArrayInputStream} using big-endian ordering.
+ * Data is read directly from a {@link ByteBuffer} using big-endian ordering: the buffer is neither copied nor
+ * modified. Like a {@link java.io.ByteArrayInputStream}, reading past the end of the data returns {@code -1}
+ * rather than throwing an exception.
  * <p>
- * This class implements the compression algorithm used for names described in https://www.ietf.org/rfc/rfc1035.txt
+ * This class implements the compression algorithm used for names described in https://www.ietf.org/rfc/rfc1035.txt:
+ * compression pointers are followed by offset into the data, so that any name can be read in any order. Since a
+ * pointer must refer to a prior occurrence of a name, only pointers to an offset before the labels containing them
+ * are followed, and at most {@link #MAX_POINTERS} of them per name: the cost of reading a name of a hostile
+ * message is therefore bounded.
  */
-final class MessageInputStream extends ByteArrayInputStream {
+final class MessageInputStream implements AutoCloseable {
 
-    /** pointers for decompression: index of a string in this stream. */
-    private final Map<Integer, String> pointers;
+    /** maximum length of a name in bytes, as encoded. */
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /** maximum number of compression pointers followed while reading a name. */
+    private static final int MAX_POINTERS = MAX_NAME_LENGTH / 2;
+
+    /** number of slots of the cache of names, a power of two. */
+    private static final int NAMES_CAPACITY = 64;
+
+    /** view of the data: position is the index of the next byte to read, limit is the number of bytes. */
+    private final ByteBuffer buf;
+
+    /** bytes of the last name read, each label being followed by a dot; null until a name is read. */
+    private byte[] name;
+
+    /** cache of the names read by offset: a name replaces any other name sharing its slot; null until needed. */
+    private String[] names;
+
+    /** offset of each cached name, -1 if the slot is empty; null until needed. */
+    private int[] offsets;
 
     /**
      * Creates a {@code MessageInputStream} so that it uses {@code buffer} as its buffer array. The buffer array is
      * not copied.
      *
-     * @see ByteArrayInputStream#ByteArrayInputStream(byte[])
      * @param buffer the input buffer.
      */
     MessageInputStream(final byte[] buffer) {
-        super(buffer);
-        pointers = new HashMap<>();
+        this(ByteBuffer.wrap(buffer));
     }
 
     /**
-     * Closing a {@code MessageInputStream} has no effect. The methods in this class can be called after the stream
-     * has been closed without generating an {@code IOException}.
+     * Creates a {@code MessageInputStream} reading the remaining bytes of the given buffer. The content of the
+     * buffer is not copied, and neither its position nor its limit are modified.
      *
-     * @see ByteArrayInputStream#close()
+     * @param buffer the input buffer, heap or direct
+     */
+    MessageInputStream(final ByteBuffer buffer) {
+        buf = buffer.slice();
+        buf.order(ByteOrder.BIG_ENDIAN);
+        name = null;
+        names = null;
+        offsets = null;
+    }
+
+    /**
+     * Closing a {@code MessageInputStream} has no effect. The methods in this class can be called after the stream
+     * has been closed.
      */
     @Override
     public final void close() {
         // empty.
     }
 
+    /**
+     * @return the index of the next byte to read.
+     */
+    final int position() {
+        return buf.position();
+    }
+
     /**
      * Reads the next byte of data from this input stream.
      *
-     * @see ByteArrayInputStream#read()
      * @return the next byte of data, or {@code -1} if the end of the stream has been reached.
      */
     final int readByte() {
-        return read();
+        return buf.hasRemaining() ? buf.get() & 0xFF : -1;
     }
 
     /**
      * Reads up to {@code length} bytes of data into an array of bytes from this input stream.
      *
-     * @see ByteArrayInputStream#read(byte[], int, int)
      * @param length the maximum number of bytes to read
      * @return an array containing the read bytes
      */
     final byte[] readBytes(final int length) {
         final byte[] bytes = new byte[length];
-        read(bytes, 0, length);
+        buf.get(bytes, 0, Math.min(length, buf.remaining()));
         return bytes;
     }
 
@@ -104,43 +144,28 @@ final class MessageInputStream extends ByteArrayInputStream {
 
     /**
      * Reads the next name ({@link StandardCharsets#UTF_8 UTF8} String) from this input stream.
+     * <p>
+     * A name made of a single compression pointer to a name already read is returned without being decoded again.
      *
      * @return the name
+     * @throws IOException if the name is longer than 255 bytes, is truncated, contains a reserved label type or
+     *             an invalid compression pointer
      */
-    final String readName() {
-        final Map<Integer, StringBuilder> names = new HashMap<>();
-        final StringBuilder name = new StringBuilder();
-        boolean finished = false;
-        while (!finished) {
-            final int read = readByte();
-            if (read == 0) {
-                break;
-            }
-            if ((read & 0xC0) == 0x00) {
-                final int offset = pos - 1;
-                final String label = readString(read) + ".";
-                name.append(label);
-                for (final StringBuilder previousLabel : names.values()) {
-                    previousLabel.append(label);
-                }
-                names.put(offset, new StringBuilder(label));
-
-            } else {
-                final int index = (read & 0x3F) << 8 | readByte();
-                final String compressedLabel = pointers.get(Integer.valueOf(index));
-                name.append(compressedLabel);
-                for (final StringBuilder previousLabel : names.values()) {
-                    previousLabel.append(compressedLabel);
-                }
-                finished = true;
+    final String readName() throws IOException {
+        final int start = buf.position();
+        final int read = readByte();
+        if (read >= 0xC0) {
+            final int target = (read & 0x3F) << 8 | readByte();
+            final String cached = cachedName(target);
+            if (cached != null && target < start) {
+                return cached;
             }
         }
-
-        for (final Map.Entry<Integer, StringBuilder> entry : names.entrySet()) {
-            final Integer index = entry.getKey();
-            pointers.put(index, entry.getValue().toString());
-        }
-        return name.toString();
+        buf.position(start);
+        final int length = walkName();
+        final String result = new String(name, 0, length, StandardCharsets.UTF_8);
+        cacheName(start, result);
+        return result;
     }
 
     /**
@@ -153,15 +178,121 @@ final class MessageInputStream extends ByteArrayInputStream {
     }
 
     /**
-     * Reads up to {@code length} bytes of data into an {@link StandardCharsets#UTF_8 UTF8} String from this input
-     * stream
+     * Sets the index of the next byte to read.
      *
-     * @param length the maximum number of bytes to read
-     * @return a String
+     * @param position index of the next byte to read, which must not be greater than the number of bytes
+     */
+    final void seek(final int position) {
+        buf.position(position);
+    }
+
+    /**
+     * Skips over up to {@code length} bytes of data from this input stream.
+     *
+     * @param length the number of bytes to be skipped
+     * @return the actual number of bytes skipped
      */
-    private String readString(final int length) {
-        final byte[] bytes = readBytes(length);
-        return new String(bytes, StandardCharsets.UTF_8);
+    final long skip(final long length) {
+        final int skipped = (int) Math.max(0, Math.min(length, buf.remaining()));
+        buf.position(buf.position() + skipped);
+        return skipped;
+    }
+
+    /**
+     * Returns the name read at the given offset if cached.
+     *
+     * @param offset offset of the name
+     * @return the name or null if not cached
+     */
+    private String cachedName(final int offset) {
+        if (names == null) {
+            return null;
+        }
+        final int slot = offset & NAMES_CAPACITY - 1;
+        return offsets[slot] == offset ? names[slot] : null;
+    }
+
+    /**
+     * Caches the given name read at the given offset.
+     *
+     * @param offset offset of the name
+     * @param aName name
+     */
+    private void cacheName(final int offset, final String aName) {
+        if (names == null) {
+            names = new String[NAMES_CAPACITY];
+            offsets = new int[NAMES_CAPACITY];
+            Arrays.fill(offsets, -1);
+        }
+        final int slot = offset & NAMES_CAPACITY - 1;
+        names[slot] = aName;
+        offsets[slot] = offset;
+    }
+
+    /**
+     * Reads the next name, copying its labels, each followed by a dot, into {@link #name}. The position of this
+     * stream is set after the name as stored at its position, i.e. after the first compression pointer if any.
+     *
+     * @return the number of bytes copied
+     * @throws IOException if the name is longer than 255 bytes, is truncated, contains a reserved label type or
+     *             an invalid compression pointer
+     */
+    private int walkName() throws IOException {
+        if (name == null) {
+            name = new byte[MAX_NAME_LENGTH];
+        }
+        final int limit = buf.limit();
+        /* start of the labels being read: a pointer must refer to an offset before. */
+        int labels = buf.position();
+        int position = labels;
+        int next = -1;
+        int length = 0;
+        int pointers = 0;
+        while (true) {
+            if (position == limit) {
+                throw new IOException("Truncated name");
+            }
+            final int read = buf.get(position) & 0xFF;
+            position++;
+            if (read == 0) {
+                break;
+            }
+            if ((read & 0xC0) == 0x00) {
+                final int size = read;
+                if (size > limit - position) {
+                    throw new IOException("Truncated label");
+                }
+                /* the encoded name also has the length of the first label and the terminating zero. */
+                if (length + size + 2 > MAX_NAME_LENGTH) {
+                    throw new IOException("Name exceeds " + MAX_NAME_LENGTH + " bytes");
+                }
+                for (int i = 0; i < size; i++) {
+                    name[length++] = buf.get(position + i);
+                }
+                name[length++] = '.';
+                position += size;
+            } else {
+                /* 0x40 and 0x80 are reserved label types (RFC 1035 section 4.1.4, RFC 6891). */
+                if ((read & 0xC0) != 0xC0) {
+                    throw new IOException("Invalid label type 0x" + Integer.toHexString(read & 0xC0));
+                }
+                if (position == limit) {
+                    throw new IOException("Truncated name");
+                }
+                final int target = (read & 0x3F) << 8 | buf.get(position) & 0xFF;
+                position++;
+                if (next == -1) {
+                    next = position;
+                }
+                if (target >= labels || ++pointers > MAX_POINTERS) {
+                    throw new IOException("Invalid compression pointer to offset " + target);
+                }
+                labels = target;
+                position = target;
+            }
+        }
+        buf.position(next == -1 ? position : next);
+        return length;
     }
 
 }
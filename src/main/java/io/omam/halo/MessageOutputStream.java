@@ -30,53 +30,360 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * An output stream to write data of a single {@link DnsMessage} that allows to skip bytes and write at selected
  * position.
  * <p>
- * Data is written into a {@link ByteArrayOutputStream} using big-endian ordering.
+ * Data is written straight into a {@link ByteBuffer}, which may be direct and reused for every message, using
+ * big-endian ordering: length fields are skipped then backfilled so that no intermediate array is created. A
+ * {@link BufferOverflowException} is thrown if the data does not fit in the buffer.
  * <p>
- * This class implements the compression algorithm used for names described in https://www.ietf.org/rfc/rfc1035.txt
+ * This class implements the compression algorithm used for names described in https://www.ietf.org/rfc/rfc1035.txt:
+ * every suffix of every name written is recorded, so that the longest suffix of a name already written is found
+ * without creating any string. Since its compression table is only allocated when it is created or grows, a stream
+ * should be {@link #clear() cleared} and reused for every message written into the same buffer.
  */
-final class MessageOutputStream extends ByteArrayOutputStream {
+final class MessageOutputStream {
+
+    /**
+     * The suffixes of the names written so far.
+     * <p>
+     * A suffix is the name it has been written from and the index of its first character in that name: names are
+     * referenced, never copied. The hash of a suffix is the {@link String#hashCode() hash code} of the remainder of
+     * its name. Suffixes are found in an open addressing hash table keyed by their hash.
+     */
+    private static final class Suffixes {
+
+        /** initial number of suffixes. */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /** index of no suffix. */
+        static final int NONE = -1;
+
+        /** hash of each suffix. */
+        private int[] hashes;
+
+        /** name of each suffix. */
+        private String[] names;
+
+        /** position of each suffix in the stream. */
+        private int[] offsets;
+
+        /** number of suffixes. */
+        private int size;
+
+        /** hash of the suffix in each slot of the hash table. */
+        private int[] slotHashes;
+
+        /** hash table of the suffixes: index of a suffix plus one, or 0 if empty. */
+        private int[] slots;
+
+        /** index of the first character of each suffix in its name. */
+        private int[] starts;
+
+        /**
+         * Constructor.
+         */
+        Suffixes() {
+            hashes = new int[INITIAL_CAPACITY];
+            names = new String[INITIAL_CAPACITY];
+            offsets = new int[INITIAL_CAPACITY];
+            size = 0;
+            slotHashes = new int[INITIAL_CAPACITY * 2];
+            slots = new int[INITIAL_CAPACITY * 2];
+            starts = new int[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Spreads the given hash, so that the hashes of names which only differ by their first characters do not
+         * cluster in the hash table.
+         *
+         * @param hash hash
+         * @return spread hash
+         */
+        private static int spread(final int hash) {
+            final int h = hash * 0x9E3779B9;
+            return h ^ h >>> 16;
+        }
+
+        /**
+         * Records the given suffix.
+         *
+         * @param name name holding the suffix
+         * @param start index of the first character of the suffix in the name
+         * @param hash hash of the suffix
+         * @param offset position of the suffix in the stream
+         */
+        final void add(final String name, final int start, final int hash, final int offset) {
+            if (size == hashes.length) {
+                final int capacity = size * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                names = Arrays.copyOf(names, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                slotHashes = new int[capacity * 2];
+                slots = new int[capacity * 2];
+                for (int i = 0; i < size; i++) {
+                    index(i);
+                }
+            }
+            hashes[size] = hash;
+            names[size] = name;
+            offsets[size] = offset;
+            starts[size] = start;
+            index(size);
+            size++;
+        }
+
+        /**
+         * Forgets all suffixes.
+         */
+        final void clear() {
+            if (size > 0) {
+                Arrays.fill(names, 0, size, null);
+                Arrays.fill(slots, 0);
+                size = 0;
+            }
+        }
+
+        /**
+         * Returns the given suffix if it has been recorded.
+         *
+         * @param name name holding the suffix
+         * @param start index of the first character of the suffix in the name
+         * @param hash hash of the suffix
+         * @return the index of the suffix or {@link #NONE} if not recorded
+         */
+        final int find(final String name, final int start, final int hash) {
+            final int length = name.length() - start;
+            final int mask = slots.length - 1;
+            for (int slot = spread(hash) & mask; slots[slot] != 0; slot = slot + 1 & mask) {
+                if (slotHashes[slot] == hash) {
+                    final int suffix = slots[slot] - 1;
+                    if (matches(suffix, name, start, length)) {
+                        return suffix;
+                    }
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * Determines whether the given suffix is made of the given characters. Names written more than once are
+         * usually the same string, which is compared as a whole.
+         *
+         * @param suffix suffix
+         * @param name name holding the characters
+         * @param start index of the first character in the name
+         * @param length number of characters, up to the end of the name
+         * @return {@code true} iff the characters of the suffix are the given characters
+         */
+        private boolean matches(final int suffix, final String name, final int start, final int length) {
+            final String other = names[suffix];
+            final int otherStart = starts[suffix];
+            if (other.length() - otherStart != length) {
+                return false;
+            }
+            if (start == 0 && otherStart == 0) {
+                return name.equals(other);
+            }
+            return name.regionMatches(start, other, otherStart, length);
+        }
+
+        /**
+         * Returns the position of the given suffix in the stream.
+         *
+         * @param suffix suffix
+         * @return position
+         */
+        final int offset(final int suffix) {
+            return offsets[suffix];
+        }
+
+        /**
+         * Forgets all suffixes at or after the given position.
+         * <p>
+         * Suffixes are recorded in the order they are written, therefore such suffixes are the last ones.
+         *
+         * @param position position
+         */
+        final void truncate(final int position) {
+            int newSize = size;
+            while (newSize > 0 && offsets[newSize - 1] >= position) {
+                newSize--;
+                names[newSize] = null;
+            }
+            if (newSize != size) {
+                size = newSize;
+                Arrays.fill(slots, 0);
+                for (int i = 0; i < size; i++) {
+                    index(i);
+                }
+            }
+        }
+
+        /**
+         * Adds the given suffix to the hash table.
+         *
+         * @param suffix suffix
+         */
+        private void index(final int suffix) {
+            final int mask = slots.length - 1;
+            int slot = spread(hashes[suffix]) & mask;
+            while (slots[slot] != 0) {
+                slot = slot + 1 & mask;
+            }
+            slotHashes[slot] = hashes[suffix];
+            slots[slot] = suffix + 1;
+        }
+
+    }
 
     /** dot character. */
     private static final char DOT = '.';
 
-    /** pointers for decompression: string to index in this stream. */
-    private final Map<String, Integer> pointers;
+    /** maximum position that can be pointed to by a compression pointer. */
+    private static final int MAX_POINTER = 0x3FFF;
+
+    /** 31 to the power of every length of a name that fits in a message. */
+    private static final int[] POWERS = new int[256];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 31;
+        }
+    }
+
+    /** buffer, the message starting at index 0. */
+    private final ByteBuffer buf;
+
+    /** bytes of the ASCII characters being written, reused for every string. */
+    private byte[] ascii;
+
+    /** suffixes of the names written so far, pointed to by compression pointers. */
+    private final Suffixes suffixes;
+
+    /** UTF-8 encoder. */
+    private final CharsetEncoder utf8;
 
     /**
-     * Creates a new byte array output stream. The buffer capacity is initially 32 bytes, though its size increases
-     * if necessary.
+     * Creates a new stream writing into the given buffer, which is cleared first.
      *
-     * @see ByteArrayOutputStream#ByteArrayOutputStream()
+     * @param aBuffer buffer, big-endian
      */
-    MessageOutputStream() {
-        pointers = new HashMap<>();
+    MessageOutputStream(final ByteBuffer aBuffer) {
+        buf = aBuffer;
+        buf.clear();
+        ascii = new byte[64];
+        suffixes = new Suffixes();
+        /* same replacement as String#getBytes. */
+        utf8 = StandardCharsets.UTF_8
+            .newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     /**
-     * Closing a {@code MessageOutputStream} has no effect. The methods in this class can be called after the
-     * stream has been closed without generating an {@code IOException}.
+     * Returns the number of bytes of the given string once encoded in UTF-8.
      *
-     * @see ByteArrayOutputStream#close()
+     * @param value string
+     * @return the number of bytes of the given string once encoded in UTF-8
      */
-    @Override
-    public final void close() {
-        // empty.
+    static int utf8Length(final String value) {
+        final int length = value.length();
+        int result = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x800) {
+                /* 3 bytes, or 4 bytes for a surrogate pair. */
+                result += 2;
+            } else if (c >= 0x80) {
+                result++;
+            }
+        }
+        return result;
     }
 
     /**
-     * @return the number of valid bytes in the buffer.
+     * Returns whether the given characters of the given string are all ASCII characters, which are encoded in
+     * UTF-8 as a single byte of the same value.
+     *
+     * @param value string
+     * @param start index of the first character
+     * @param end index after the last character
+     * @return true if all the characters are ASCII characters
+     */
+    private static boolean isAscii(final String value, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns 31 to the power of the given exponent, overflowing as {@link String#hashCode()} does.
+     *
+     * @param exponent exponent, positive or zero
+     * @return 31 to the power of the given exponent
+     */
+    private static int power(final int exponent) {
+        if (exponent < POWERS.length) {
+            return POWERS[exponent];
+        }
+        int result = POWERS[POWERS.length - 1];
+        for (int e = POWERS.length - 1; e < exponent; e++) {
+            result *= 31;
+        }
+        return result;
+    }
+
+    /**
+     * Clears this stream so that a new message can be written: the buffer is cleared and all names written so far
+     * are forgotten.
+     */
+    final void clear() {
+        buf.clear();
+        suffixes.clear();
+    }
+
+    /**
+     * Returns a copy of the bytes written since the given position.
+     *
+     * @param from position, which must not be greater than the current {@link #position()}
+     * @return a copy of the bytes written since the given position
+     */
+    final byte[] copy(final int from) {
+        final ByteBuffer written = buf.duplicate();
+        written.limit(buf.position());
+        written.position(from);
+        final byte[] bytes = new byte[written.remaining()];
+        written.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Flips the buffer of this stream: the written message is ready to be read.
+     */
+    final void flip() {
+        buf.flip();
+    }
+
+    /**
+     * @return the number of bytes written so far.
      */
     final int position() {
-        return count;
+        return buf.position();
     }
 
     /**
@@ -85,27 +392,59 @@ final class MessageOutputStream extends ByteArrayOutputStream {
      * @param length number of bytes to skip over
      */
     final void skip(final int length) {
-        count += length;
+        if (buf.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        buf.position(buf.position() + length);
+    }
+
+    /**
+     * Discards all bytes written after the given position, including any name that could otherwise be used as a
+     * compression pointer by subsequent writes.
+     *
+     * @param position position, which must not be greater than the current {@link #position()}
+     */
+    final void truncate(final int position) {
+        buf.position(position);
+        suffixes.truncate(position);
     }
 
     /**
      * Writes the given byte array to this output stream.
      *
-     * @see ByteArrayOutputStream#write(byte[], int, int)
      * @param bytes bytes
      */
     final void writeAllBytes(final byte[] bytes) {
-        write(bytes, 0, bytes.length);
+        buf.put(bytes);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to this output stream, without changing the position of the
+     * given buffer.
+     *
+     * @param bytes bytes
+     */
+    final void writeAllBytes(final ByteBuffer bytes) {
+        buf.put(bytes.duplicate());
     }
 
     /**
      * Writes the given byte to this output stream.
      *
-     * @see ByteArrayOutputStream#write(int)
      * @param value byte
      */
     final void writeByte(final int value) {
-        write(value & 0xFF);
+        buf.put((byte) value);
+    }
+
+    /**
+     * Writes the given byte at the given index to this output stream without advancing the position.
+     *
+     * @param index index
+     * @param value byte
+     */
+    final void writeByte(final int index, final int value) {
+        buf.put(index, (byte) value);
     }
 
     /**
@@ -114,40 +453,54 @@ final class MessageOutputStream extends ByteArrayOutputStream {
      * @param value integer
      */
     final void writeInt(final int value) {
-        writeShort(value >> 16);
-        writeShort(value);
+        buf.putInt(value);
     }
 
     /**
      * Writes the given name, using compression, to this output stream.
+     * <p>
+     * The hash of each suffix is derived from the {@link String#hashCode() hash code} of the name, which is cached
+     * by the string, and the hash of the labels written before it: characters are only visited when their label is
+     * written.
      *
      * @param name name
      */
     final void writeName(final String name) {
-        String sub = name;
+        final int length = name.length();
+        final int hash = name.hashCode();
+        /* hash of the characters before the current label, as computed by String#hashCode. */
+        int prefix = 0;
+        int start = 0;
         while (true) {
-            int split = sub.indexOf(DOT);
+            int split = name.indexOf(DOT, start);
             if (split < 0) {
-                split = sub.length();
+                split = length;
             }
-            if (split <= 0) {
+            if (split <= start) {
                 writeByte(0);
                 return;
             }
-            final String label = sub.substring(0, split);
-            final Integer offset = pointers.get(sub);
-            if (offset != null) {
-                final int val = offset.intValue();
+            final int suffixHash = hash - prefix * power(length - start);
+            final int suffix = suffixes.find(name, start, suffixHash);
+            if (suffix != Suffixes.NONE) {
+                final int val = suffixes.offset(suffix);
                 writeByte(val >> 8 | 0xC0);
                 writeByte(val & 0xFF);
                 return;
             }
-            pointers.put(sub, Integer.valueOf(size()));
-            writeCharacterString(label);
-            sub = sub.substring(split);
-            if (sub.charAt(0) == DOT) {
-                sub = sub.substring(1);
+            /* a compression pointer cannot reach beyond MAX_POINTER. */
+            if (position() <= MAX_POINTER) {
+                suffixes.add(name, start, suffixHash, position());
             }
+            writeCharacterString(name, start, split);
+            int next = split;
+            if (next < length && name.charAt(next) == DOT) {
+                next++;
+            }
+            for (int i = start; i < next; i++) {
+                prefix = 31 * prefix + name.charAt(i);
+            }
+            start = next;
         }
     }
 
@@ -157,8 +510,7 @@ final class MessageOutputStream extends ByteArrayOutputStream {
      * @param value short
      */
     final void writeShort(final int value) {
-        writeByte(value >> 8);
-        writeByte(value);
+        buf.putShort((short) value);
     }
 
     /**
@@ -168,8 +520,7 @@ final class MessageOutputStream extends ByteArrayOutputStream {
      * @param value short
      */
     final void writeShort(final int index, final short value) {
-        buf[index] = (byte) (value >> 8 & 0xFF);
-        buf[index + 1] = (byte) (value & 0xFF);
+        buf.putShort(index, value);
     }
 
     /**
@@ -178,20 +529,51 @@ final class MessageOutputStream extends ByteArrayOutputStream {
      * @param value UTF8 string
      */
     final void writeString(final String value) {
-        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-        writeAllBytes(bytes);
+        writeString(value, 0, value.length());
     }
 
     /**
-     * Writes the size of the given {@link StandardCharsets#UTF_8 UTF8} String, followed by the given String to
-     * this output stream.
+     * Writes the size of the given characters of the given {@link StandardCharsets#UTF_8 UTF8} String, followed by
+     * these characters to this output stream.
      *
      * @param value UTF8 string
+     * @param start index of the first character to write
+     * @param end index after the last character to write
      */
-    private void writeCharacterString(final String value) {
-        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-        writeByte(bytes.length);
-        writeAllBytes(bytes);
+    private void writeCharacterString(final String value, final int start, final int end) {
+        final int sizePos = position();
+        skip(1);
+        writeString(value, start, end);
+        writeByte(sizePos, position() - sizePos - 1);
+    }
+
+    /**
+     * Writes the given characters of the given {@link StandardCharsets#UTF_8 UTF8} String to this output stream.
+     *
+     * @param value UTF8 string
+     * @param start index of the first character to write
+     * @param end index after the last character to write
+     */
+    private void writeString(final String value, final int start, final int end) {
+        if (isAscii(value, start, end)) {
+            if (buf.remaining() < end - start) {
+                throw new BufferOverflowException();
+            }
+            final int length = end - start;
+            if (ascii.length < length) {
+                ascii = new byte[Math.max(ascii.length * 2, length)];
+            }
+            for (int i = 0; i < length; i++) {
+                ascii[i] = (byte) value.charAt(start + i);
+            }
+            buf.put(ascii, 0, length);
+            return;
+        }
+        utf8.reset();
+        final CharBuffer chars = CharBuffer.wrap(value, start, end);
+        if (utf8.encode(chars, buf, true).isOverflow() || utf8.flush(buf).isOverflow()) {
+            throw new BufferOverflowException();
+        }
     }
 
 }
@@ -30,6 +30,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
+import java.time.Duration;
 import java.util.Locale;
 
 /**
@@ -43,9 +44,30 @@ final class MulticastDnsSd {
     /** registration types discovery. */
     static final String RT_DISCOVERY = "_services._dns-sd._udp.local.";
 
+    /** registration types discovery, to be compared ignoring case. */
+    static final DnsName RT_DISCOVERY_NAME = DnsName.of(RT_DISCOVERY);
+
     /** maximum size of DNS message in bytes. */
     static final int MAX_DNS_MESSAGE_SIZE = 65_536;
 
+    /**
+     * maximum size of a multicast DNS packet in bytes: RFC 6762 section 17, even when fragmentation is used, a
+     * Multicast DNS packet, including IP and UDP headers, MUST NOT exceed 9000 bytes.
+     */
+    static final int MAX_MDNS_PACKET_SIZE = 9000;
+
+    /** size in bytes of the IPv4 and UDP headers preceding a DNS message. */
+    static final int IPV4_HEADERS_SIZE = 28;
+
+    /** size in bytes of the IPv6 and UDP headers preceding a DNS message. */
+    static final int IPV6_HEADERS_SIZE = 48;
+
+    /** maximum time to live of records in a response to a legacy unicast query: RFC 6762 section 6.7. */
+    static final Duration LEGACY_TTL = Duration.ofSeconds(10);
+
+    /** size in bytes of the DNS message header. */
+    static final int DNS_HEADER_SIZE = 12;
+
     /** query or response mask (unsigned). */
     static final short FLAGS_QR_MASK = (short) 0x8000;
 
@@ -58,6 +80,9 @@ final class MulticastDnsSd {
     /** authoritative answer flag (unsigned). */
     static final short FLAGS_AA = 0x0400;
 
+    /** truncated flag (unsigned): in a query, more known answers follow in the next packet. */
+    static final short FLAGS_TC = 0x0200;
+
     /** Internet class. */
     static final short CLASS_IN = 1;
 
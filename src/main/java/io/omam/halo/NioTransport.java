@@ -0,0 +1,478 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.CHANNEL_MONITORING;
+import static io.omam.halo.HaloProperties.IPV4_ADDR;
+import static io.omam.halo.HaloProperties.IPV6_ADDR;
+import static io.omam.halo.HaloProperties.MDNS_PORT;
+import static io.omam.halo.MulticastDnsSd.MAX_MDNS_PACKET_SIZE;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MulticastChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link Transport} over {@link DatagramChannel}s joined to the mDNS multicast group on network interfaces of this
+ * machine: one channel per network interface and address family.
+ * <p>
+ * Network interfaces are checked every {@link HaloProperties#CHANNEL_MONITORING}: a channel is opened for each
+ * interface that came up and closed for each interface that went down, and the listener is notified of every
+ * added, removed or updated link.
+ */
+final class NioTransport implements Transport {
+
+    /**
+     * Datagram receiver: drains all channels ready for reading and checks the network interfaces when due.
+     * <p>
+     * Channels are opened, registered and closed by this thread only, so that registering a channel never waits
+     * for the selector.
+     */
+    private final class Receiver implements Runnable {
+
+        /** listener to hand over received datagrams to. */
+        private final Listener listener;
+
+        /**
+         * buffer used to drain datagrams when the listener has no buffer available, the datagram is dropped; like
+         * the buffers of the listener, it has one more byte than the largest datagram.
+         */
+        private final ByteBuffer overflow;
+
+        /**
+         * Constructor.
+         *
+         * @param aListener listener to hand over received datagrams to
+         */
+        Receiver(final Listener aListener) {
+            listener = aListener;
+            overflow = ByteBuffer.allocate(MAX_MDNS_PACKET_SIZE + 1);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void run() {
+            /* a timeout of zero blocks until a channel is ready, disabling monitoring. */
+            final long interval = CHANNEL_MONITORING.toMillis();
+            long checked = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    selector.select(interval);
+                    final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        final SelectionKey key = selected.next();
+                        selected.remove();
+                        drain(key);
+                    }
+                    final long now = System.nanoTime();
+                    if (interval > 0 && now - checked >= CHANNEL_MONITORING.toNanos()) {
+                        checked = now;
+                        update(listener);
+                    }
+                } catch (final ClosedChannelException e) {
+                    LOGGER.log(Level.FINE, "Channel closed while waiting to receive DNS message", e);
+                    Thread.currentThread().interrupt();
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, "I/O error while receiving DNS message", e);
+                }
+            }
+        }
+
+        /**
+         * Receives all datagrams available on the channel of the given key.
+         *
+         * @param key selection key of the channel
+         * @throws IOException in case of I/O error
+         */
+        private void drain(final SelectionKey key) throws IOException {
+            if (!key.isValid()) {
+                return;
+            }
+            final DatagramChannel channel = (DatagramChannel) key.channel();
+            final Link link = (Link) key.attachment();
+            while (true) {
+                final ByteBuffer pooled = listener.acquire();
+                final ByteBuffer buf;
+                if (pooled == null) {
+                    overflow.clear();
+                    buf = overflow;
+                } else {
+                    buf = pooled;
+                }
+                final InetSocketAddress address = (InetSocketAddress) channel.receive(buf);
+                if (address == null) {
+                    if (pooled != null) {
+                        listener.release(pooled);
+                    }
+                    return;
+                }
+                buf.flip();
+                if (pooled == null) {
+                    listener.dropped(address);
+                } else {
+                    listener.received(pooled, address, link);
+                }
+            }
+        }
+
+    }
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(NioTransport.class.getName());
+
+    /** executor service to receive datagrams. */
+    private final ExecutorService executor;
+
+    /** selection key of the channel of each link. */
+    private final Map<Link, SelectionKey> keys;
+
+    /** names of the network interfaces to use, empty to use all network interfaces. */
+    private final Set<String> names;
+
+    /** future to cancel receiving datagrams. */
+    private Future<?> receiver;
+
+    /** multiplexor. */
+    private final Selector selector;
+
+    /**
+     * Constructor.
+     *
+     * @param someNames names of the network interfaces to use, empty to use all network interfaces
+     * @throws IOException if an I/O error occurs or if no network interface is suitable for multicast
+     */
+    private NioTransport(final Set<String> someNames) throws IOException {
+        executor = Executors.newSingleThreadExecutor(new HaloThreadFactory("transport"));
+        keys = new ConcurrentHashMap<>();
+        names = someNames;
+        selector = Selector.open();
+
+        update(null);
+
+        if (keys.isEmpty()) {
+            selector.close();
+            executor.shutdownNow();
+            throw new IOException("No network interface suitable for multicast");
+        }
+    }
+
+    /**
+     * Creates a new transport sending/receiving on all interfaces on this machine.
+     *
+     * @return a new transport
+     * @throws IOException if an I/O error occurs
+     */
+    static NioTransport allNetworkInterfaces() throws IOException {
+        return new NioTransport(Collections.emptySet());
+    }
+
+    /**
+     * Creates a new transport sending/receiving on the given interfaces.
+     *
+     * @param nics network interfaces
+     * @return a new transport
+     * @throws IOException if an I/O error occurs
+     */
+    static NioTransport networkInterfaces(final Collection<NetworkInterface> nics) throws IOException {
+        final Set<String> names = new HashSet<>();
+        nics.forEach(nic -> names.add(nic.getName()));
+        return new NioTransport(names);
+    }
+
+    /**
+     * Returns the links of the given network interfaces on which a channel can be opened: network interfaces
+     * which {@link NetworkInterface#supportsMulticast() support multicast}, are {@link NetworkInterface#isUp()
+     * up} and have at least one address of the link family.
+     *
+     * @param nis network interfaces
+     * @param loopback {@code true} if network interfaces must be the loopback, {@code false} if they must not
+     * @return the network interface of each link
+     */
+    private static Map<Link, NetworkInterface> candidates(final Collection<NetworkInterface> nis,
+            final boolean loopback) {
+        final Map<Link, NetworkInterface> candidates = new LinkedHashMap<>();
+        for (final NetworkInterface ni : nis) {
+            try {
+                if (ni.supportsMulticast() && ni.isUp() && ni.isLoopback() == loopback) {
+                    if (hasIpv(ni, Inet4Address.class)) {
+                        candidates.put(Link.of(ni, StandardProtocolFamily.INET), ni);
+                    }
+                    if (hasIpv(ni, Inet6Address.class)) {
+                        candidates.put(Link.of(ni, StandardProtocolFamily.INET6), ni);
+                    }
+                }
+            } catch (final SocketException e) {
+                LOGGER.log(Level.FINE, e, () -> "Ignored " + ni);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Determines whether the given network interface has an address of the given class.
+     *
+     * @param iface network interface
+     * @param inetClass {@link InetAddress} class
+     * @return {@code true} if given network interface has an address of the given class
+     */
+    private static boolean hasIpv(final NetworkInterface iface, final Class<? extends InetAddress> inetClass) {
+        for (final Enumeration<InetAddress> e = iface.getInetAddresses(); e.hasMoreElements();) {
+            if (e.nextElement().getClass().isAssignableFrom(inetClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens a new {@link MulticastChannel multicast channel} for the the given network interface.
+     *
+     * @param iface network interface
+     * @param family IPV4 or IPV6
+     * @return a new multicast channel or empty if it could not be opened
+     */
+    private static Optional<DatagramChannel> openChannel(final NetworkInterface iface,
+            final ProtocolFamily family) {
+        final InetAddress addr = family == StandardProtocolFamily.INET ? IPV4_ADDR : IPV6_ADDR;
+        final Optional<DatagramChannel> channel = openChannel(family);
+        if (channel.isPresent()) {
+            try {
+                channel.get().setOption(StandardSocketOptions.IP_MULTICAST_IF, iface);
+                channel.get().join(addr, iface);
+                LOGGER.info(() -> "Joined multicast address " + addr + " on " + iface);
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, e, () -> "Ignored " + iface + " for " + addr);
+                close(channel.get());
+                return Optional.empty();
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Opens a new {@link DatagramChannel}.
+     *
+     * @param family the protocol family
+     * @return a new datagram channel
+     */
+    private static Optional<DatagramChannel> openChannel(final ProtocolFamily family) {
+        try {
+            final DatagramChannel channel = DatagramChannel.open(family);
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 255);
+            channel.bind(new InetSocketAddress(family == StandardProtocolFamily.INET ? InetAddress.getByName("0.0.0.0") : null, MDNS_PORT));
+            return Optional.of(channel);
+        } catch (final UnsupportedOperationException e) {
+            LOGGER
+                .log(Level.FINE, e,
+                        () -> "Protocol Family [" + family.name() + "] not supported on this machine.");
+            return Optional.empty();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Fail to create channel", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Closes the given channel.
+     *
+     * @param channel channel
+     */
+    private static void close(final DatagramChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "I/O error when closing channel", e);
+        }
+    }
+
+    @Override
+    public final synchronized void close() {
+        LOGGER.fine("Closing transport");
+        selector.wakeup();
+        if (receiver != null) {
+            receiver.cancel(true);
+        }
+        executor.shutdownNow();
+        keys.values().forEach(key -> close((DatagramChannel) key.channel()));
+    }
+
+    @Override
+    public final List<Link> links() {
+        return Collections.unmodifiableList(new ArrayList<>(keys.keySet()));
+    }
+
+    @Override
+    public final void send(final Link link, final ByteBuffer datagram, final InetSocketAddress target)
+            throws IOException {
+        final SelectionKey key = keys.get(link);
+        if (key == null) {
+            throw new IOException("Unknown link " + link);
+        }
+        ((DatagramChannel) key.channel()).send(datagram, target);
+    }
+
+    @Override
+    public final synchronized void start(final Listener listener) {
+        if (receiver == null) {
+            receiver = executor.submit(new Receiver(listener));
+        }
+    }
+
+    /**
+     * Returns the network interfaces to use.
+     *
+     * @return the network interfaces to use
+     * @throws SocketException if an I/O error occurs
+     */
+    private Collection<NetworkInterface> networkInterfaces() throws SocketException {
+        final Collection<NetworkInterface> nis = new ArrayList<>();
+        if (names.isEmpty()) {
+            final Enumeration<NetworkInterface> all = NetworkInterface.getNetworkInterfaces();
+            while (all != null && all.hasMoreElements()) {
+                nis.add(all.nextElement());
+            }
+        } else {
+            for (final String name : names) {
+                final NetworkInterface ni = NetworkInterface.getByName(name);
+                if (ni != null) {
+                    nis.add(ni);
+                }
+            }
+        }
+        return nis;
+    }
+
+    /**
+     * Brings the channels in line with the current network interfaces: opens a channel for every new link, closes
+     * the channel of every link that is gone and attaches the updated link to the channel of every link whose
+     * addresses or MTU have changed.
+     * <p>
+     * The loopback interface is used only if no other network interface is suitable.
+     *
+     * @param listener listener to notify of every change, or {@code null}
+     */
+    private void update(final Listener listener) {
+        final Map<Link, NetworkInterface> candidates;
+        try {
+            final Collection<NetworkInterface> nis = networkInterfaces();
+            final Map<Link, NetworkInterface> nonLoopback = candidates(nis, false);
+            candidates = nonLoopback.isEmpty() ? candidates(nis, true) : nonLoopback;
+        } catch (final SocketException e) {
+            LOGGER.log(Level.WARNING, "Could not list network interfaces", e);
+            return;
+        }
+
+        final List<Link> removed = new ArrayList<>(keys.keySet());
+        removed.removeAll(candidates.keySet());
+        for (final Link link : removed) {
+            final SelectionKey key = keys.remove(link);
+            close((DatagramChannel) key.channel());
+            LOGGER.info(() -> "Removed " + link);
+            if (listener != null) {
+                listener.linkRemoved(link);
+            }
+        }
+
+        for (final Map.Entry<Link, NetworkInterface> candidate : candidates.entrySet()) {
+            final Link link = candidate.getKey();
+            final Optional<Link> previous = keys.keySet().stream().filter(link::equals).findFirst();
+            if (!previous.isPresent()) {
+                final Optional<SelectionKey> key =
+                        openChannel(candidate.getValue(), link.family()).map(c -> register(c, link));
+                if (key.isPresent()) {
+                    keys.put(link, key.get());
+                    LOGGER.info(() -> "Added " + link);
+                    if (listener != null) {
+                        listener.linkAdded(link);
+                    }
+                }
+            } else if (!previous.get().isSameAs(link)) {
+                final SelectionKey key = keys.remove(previous.get());
+                key.attach(link);
+                keys.put(link, key);
+                LOGGER.info(() -> "Updated " + link);
+                if (listener != null) {
+                    listener.linkUpdated(previous.get(), link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the given channel with the {@link #selector} for read operation, the selection key being attached
+     * the given link.
+     *
+     * @param channel channel
+     * @param link link of the channel
+     * @return selection key
+     */
+    private SelectionKey register(final DatagramChannel channel, final Link link) {
+        try {
+            return channel.register(selector, SelectionKey.OP_READ, link);
+        } catch (final ClosedChannelException e) {
+            LOGGER.severe(() -> "Could not register channel with selector");
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -34,7 +34,6 @@ import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Objects;
 
 /**
  * Pointer Record (PTR) - maps a domain name representing an Internet Address to a hostname.
@@ -42,7 +41,7 @@ import java.util.Objects;
 final class PtrRecord extends DnsRecord {
 
     /** target */
-    private final String target;
+    private final DnsName target;
 
     /**
      * Constructor.
@@ -56,8 +55,7 @@ final class PtrRecord extends DnsRecord {
     PtrRecord(final String aName, final short aClass, final Duration aTtl, final Instant now,
             final String aTarget) {
         super(aName, TYPE_PTR, aClass, aTtl, now);
-        Objects.requireNonNull(aTarget);
-        target = aTarget;
+        target = DnsName.of(aTarget);
     }
 
     @Override
@@ -79,11 +77,33 @@ final class PtrRecord extends DnsRecord {
      * @return pointer target.
      */
     final String target() {
+        return target.toString();
+    }
+
+    /**
+     * @return pointer target, to be compared ignoring case.
+     */
+    final DnsName targetName() {
         return target;
     }
 
+    @Override
+    protected final int estimatedDataSize() {
+        return target.estimatedSize();
+    }
+
+    @Override
+    protected final boolean hasSameData(final DnsRecord other) {
+        return target.equals(((PtrRecord) other).target);
+    }
+
+    @Override
+    protected final int maxDataSize() {
+        return target.maxEncodedSize();
+    }
+
     @Override
     protected final void write(final MessageOutputStream mos) {
-        mos.writeName(target);
+        mos.writeName(target.toString());
     }
 }
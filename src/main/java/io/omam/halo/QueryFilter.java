@@ -0,0 +1,201 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.MulticastDnsSd.DNS_HEADER_SIZE;
+import static io.omam.halo.MulticastDnsSd.FLAGS_QR_MASK;
+import static io.omam.halo.MulticastDnsSd.FLAGS_QR_QUERY;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A pre-filter of received queries, so that queries which do not ask for any name this responder is authoritative
+ * for are dropped without being decoded.
+ * <p>
+ * The filter holds the case-insensitive hash of each such name, and hashes the question names of a query straight
+ * from the bytes of the datagram. A query is accepted as soon as the hash of one of its question names is known:
+ * hash collisions only cause irrelevant queries to be decoded. Names are compared ignoring the case of ASCII
+ * characters only (RFC 6762 section 16): names containing other characters, as well as anything the filter cannot
+ * parse, are accepted and left to the decoder. Responses are always accepted.
+ * <p>
+ * This class is thread-safe.
+ */
+final class QueryFilter {
+
+    /** FNV-1a offset basis. */
+    private static final int FNV_OFFSET = 0x811C9DC5;
+
+    /** FNV-1a prime. */
+    private static final int FNV_PRIME = 0x01000193;
+
+    /** maximum length of a name on the wire. */
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /** sorted hash of each name this responder is authoritative for. */
+    private volatile int[] hashes;
+
+    /**
+     * Constructor: no name is known.
+     */
+    QueryFilter() {
+        hashes = new int[0];
+    }
+
+    /**
+     * Returns the given hash updated with the given ASCII character, ignoring its case.
+     *
+     * @param hash hash
+     * @param c ASCII character
+     * @return the updated hash
+     */
+    private static int hash(final int hash, final int c) {
+        final int lower = c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+        return (hash ^ lower) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the case-insensitive hash of the given ASCII name, the trailing dot being optional.
+     *
+     * @param name ASCII name
+     * @return hash
+     */
+    private static int hash(final String name) {
+        int hash = FNV_OFFSET;
+        final int length = name.length();
+        for (int i = 0; i < length; i++) {
+            hash = hash(hash, name.charAt(i));
+        }
+        if (length == 0 || name.charAt(length - 1) != '.') {
+            hash = hash(hash, '.');
+        }
+        return hash;
+    }
+
+    /**
+     * Returns whether the given name is made of ASCII characters only.
+     *
+     * @param name name
+     * @return true if the name is made of ASCII characters only
+     */
+    private static boolean isAscii(final String name) {
+        return name.chars().allMatch(c -> c < 0x80);
+    }
+
+    /**
+     * Returns whether the given datagram shall be decoded: it is not a query, or at least one of its questions may
+     * ask for a name this responder is authoritative for.
+     * <p>
+     * Neither the content, the position nor the limit of the given buffer are modified.
+     *
+     * @param datagram buffer containing the datagram, ready to be read
+     * @return false if the datagram is a query which shall be dropped
+     */
+    final boolean accepts(final ByteBuffer datagram) {
+        final int base = datagram.position();
+        final int limit = datagram.limit();
+        if (limit - base < DNS_HEADER_SIZE || (datagram.getShort(base + 2) & FLAGS_QR_MASK) != FLAGS_QR_QUERY) {
+            return true;
+        }
+        final int[] known = hashes;
+        final int questions = datagram.getShort(base + 4) & 0xFFFF;
+        int position = base + DNS_HEADER_SIZE;
+        for (int q = 0; q < questions; q++) {
+            int hash = FNV_OFFSET;
+            int length = 0;
+            /* position following the name in the question section, once known. */
+            int next = -1;
+            int index = position;
+            while (index != -1) {
+                if (index >= limit) {
+                    return true;
+                }
+                final int size = datagram.get(index) & 0xFF;
+                if (size == 0) {
+                    if (next == -1) {
+                        next = index + 1;
+                    }
+                    index = -1;
+                } else if ((size & 0xC0) == 0xC0) {
+                    if (index + 1 >= limit) {
+                        return true;
+                    }
+                    final int target = base + ((size & 0x3F) << 8 | datagram.get(index + 1) & 0xFF);
+                    if (target >= index) {
+                        /* only pointers to prior data are followed, so that pointer loops are impossible. */
+                        return true;
+                    }
+                    if (next == -1) {
+                        next = index + 2;
+                    }
+                    index = target;
+                } else {
+                    length += size + 1;
+                    if ((size & 0xC0) != 0 || index + size >= limit || length > MAX_NAME_LENGTH) {
+                        return true;
+                    }
+                    for (int i = index + 1; i <= index + size; i++) {
+                        final int c = datagram.get(i) & 0xFF;
+                        if (c >= 0x80) {
+                            return true;
+                        }
+                        hash = hash(hash, c);
+                    }
+                    hash = hash(hash, '.');
+                    index += size + 1;
+                }
+            }
+            if (Arrays.binarySearch(known, hash) >= 0) {
+                return true;
+            }
+            /* skip over type and class. */
+            position = next + 4;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the names this responder is authoritative for.
+     *
+     * @param names names, the trailing dot being optional
+     */
+    final void update(final Collection<String> names) {
+        hashes = names
+            .stream()
+            .filter(QueryFilter::isAscii)
+            .mapToInt(QueryFilter::hash)
+            .sorted()
+            .distinct()
+            .toArray();
+    }
+
+}
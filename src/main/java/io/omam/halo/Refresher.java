@@ -0,0 +1,304 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.REFRESHING_INTERVAL;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import io.omam.halo.DnsMessage.Builder;
+import io.omam.halo.SendQueue.Priority;
+
+/**
+ * Periodically queries the network for the cached DNS records which are about to expire, as described in RFC 6762
+ * section 5.2.
+ * <p>
+ * A record is refreshed at 80%, 85%, 90% and 95% of its TTL, each time plus a random variation of up to 2% of
+ * its TTL, until a new record replaces it in the cache. Only records whose name is of interest, i.e. being
+ * browsed or belonging to a service resolved for a browsed registration type or being resolved, when they are due
+ * are refreshed: records cached before their name becomes of interest, e.g. loaded from a snapshot when starting,
+ * are refreshed as well. All refreshes due at the same time are sent in a single query.
+ * <p>
+ * At most one refresh is pending per record: it is superseded when the {@link DnsRecord#isSameRecord(DnsRecord)
+ * same record} is scheduled again, and dropped when its record is no longer cached. Records with the same name,
+ * type and class due at the same time are asked by a single question.
+ */
+final class Refresher implements AutoCloseable {
+
+    /**
+     * A scheduled refresh of a DNS record.
+     */
+    private static final class Refresh {
+
+        /** key of the DNS record in the cache. */
+        private final Cache.Key key;
+
+        /** DNS record to refresh. */
+        private final DnsRecord record;
+
+        /** sequence number of this refresh, to order refreshes due at the same time. */
+        private final long sequence;
+
+        /** index of this refresh in the range [0 .. {@link DnsRecord#REFRESH_STEPS}). */
+        private final int step;
+
+        /** time of this refresh in milliseconds since the epoch. */
+        private final long time;
+
+        /**
+         * Constructor.
+         *
+         * @param aKey key of the DNS record in the cache
+         * @param aRecord DNS record to refresh
+         * @param aSequence sequence number of this refresh
+         * @param aStep index of this refresh in the range [0 .. {@link DnsRecord#REFRESH_STEPS})
+         */
+        Refresh(final Cache.Key aKey, final DnsRecord aRecord, final long aSequence, final int aStep) {
+            key = aKey;
+            record = aRecord;
+            sequence = aSequence;
+            step = aStep;
+            final long jitter = ThreadLocalRandom.current().nextLong(aRecord.ttlMillis() / 50 + 1);
+            time = aRecord.refreshTime(aStep) + jitter;
+        }
+
+    }
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(Refresher.class.getName());
+
+    /** clock. */
+    private final Clock clock;
+
+    /** halo helper. */
+    private final HaloHelper halo;
+
+    /** supplies the names whose records are of interest. */
+    private final Supplier<Set<DnsName>> interests;
+
+    /** pending refreshes of the records of each key, guarded by {@link #refreshes}. */
+    private final Map<Cache.Key, List<Refresh>> pending;
+
+    /** pending refreshes ordered by time, guarded by itself. */
+    private final NavigableSet<Refresh> refreshes;
+
+    /** sequence number of the last scheduled refresh, guarded by {@link #refreshes}. */
+    private long sequence;
+
+    /** scheduled executor service. */
+    private final ScheduledExecutorService ses;
+
+    /** future to cancel the background refreshing task. */
+    private Future<?> future;
+
+    /**
+     * Constructor.
+     *
+     * @param haloHelper halo helper
+     * @param someInterests supplies the names whose records are of interest
+     * @param aClock clock
+     */
+    Refresher(final HaloHelper haloHelper, final Supplier<Set<DnsName>> someInterests, final Clock aClock) {
+        clock = aClock;
+        halo = haloHelper;
+        interests = someInterests;
+        pending = new HashMap<>();
+        refreshes =
+                new TreeSet<>(Comparator.<Refresh> comparingLong(r -> r.time).thenComparingLong(r -> r.sequence));
+        sequence = 0;
+        ses = Executors.newSingleThreadScheduledExecutor(new HaloThreadFactory("refresher"));
+    }
+
+    /**
+     * Cancels the pending refresh of the given DNS record, which is no longer cached, if any.
+     *
+     * @param record DNS record
+     */
+    final void cancel(final DnsRecord record) {
+        final Cache.Key key = new Cache.Key(record);
+        synchronized (refreshes) {
+            final List<Refresh> scheduled = pending.get(key);
+            if (scheduled != null) {
+                for (final Iterator<Refresh> it = scheduled.iterator(); it.hasNext();) {
+                    final Refresh refresh = it.next();
+                    if (refresh.record == record) {
+                        it.remove();
+                        refreshes.remove(refresh);
+                    }
+                }
+                if (scheduled.isEmpty()) {
+                    pending.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancel the background task that refreshes records and shuts down the associated executor.
+     */
+    @Override
+    public final void close() {
+        if (future != null) {
+            future.cancel(true);
+            future = null;
+        }
+        ses.shutdownNow();
+        synchronized (refreshes) {
+            pending.clear();
+            refreshes.clear();
+        }
+    }
+
+    /**
+     * Sends a query for all records due for a refresh, if any.
+     * <p>
+     * Refreshes of a record whose time has already passed when the record is refreshed are skipped, so that
+     * a record is asked at most once per query. A record whose name is of no interest is not asked, but its next
+     * refresh is scheduled in case its name becomes of interest.
+     */
+    final void refresh() {
+        final long now = clock.instant().toEpochMilli();
+        final Builder builder = DnsMessage.query();
+        final Set<Cache.Key> asked = new HashSet<>();
+        final Set<DnsName> names = interests.get();
+        synchronized (refreshes) {
+            while (!refreshes.isEmpty() && refreshes.first().time <= now) {
+                final Refresh refresh = refreshes.pollFirst();
+                unschedule(refresh);
+                final DnsRecord record = refresh.record;
+                if (!record.isExpired(now)) {
+                    if (names.contains(record.dnsName()) && asked.add(refresh.key)) {
+                        builder.addQuestion(new DnsQuestion(record.name(), record.type(), record.clazz()));
+                    }
+                    int step = refresh.step + 1;
+                    while (step < DnsRecord.REFRESH_STEPS && record.refreshTime(step) <= now) {
+                        step++;
+                    }
+                    if (step < DnsRecord.REFRESH_STEPS) {
+                        schedule(refresh.key, record, step);
+                    }
+                }
+            }
+        }
+        if (!asked.isEmpty()) {
+            final int count = asked.size();
+            LOGGER.fine(() -> "Refreshing " + count + " cached record(s)");
+            halo.sendMessage(builder.get(), Priority.QUERY);
+        }
+    }
+
+    /**
+     * Schedules the refreshes of the given DNS records, which have just been added to the cache, whether or not
+     * their name is of interest: this is checked when a refresh is due. The pending refresh of the same record, if
+     * any, is superseded.
+     *
+     * @param records DNS records
+     */
+    final void schedule(final Collection<DnsRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        synchronized (refreshes) {
+            for (final DnsRecord record : records) {
+                if (record.ttlMillis() > 0) {
+                    schedule(new Cache.Key(record), record, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a background task to refresh records.
+     */
+    final void start() {
+        future = ses
+            .scheduleAtFixedRate(this::refresh, REFRESHING_INTERVAL.toMillis(), REFRESHING_INTERVAL.toMillis(),
+                    TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the given refresh of the given DNS record, superseding the pending refresh of the same record, if
+     * any. This method is called while holding the lock of {@link #refreshes}.
+     *
+     * @param key key of the DNS record in the cache
+     * @param record DNS record
+     * @param step index of the refresh in the range [0 .. {@link DnsRecord#REFRESH_STEPS})
+     */
+    private void schedule(final Cache.Key key, final DnsRecord record, final int step) {
+        sequence++;
+        final Refresh refresh = new Refresh(key, record, sequence, step);
+        final List<Refresh> scheduled = pending.computeIfAbsent(key, k -> new ArrayList<>(1));
+        for (final Iterator<Refresh> it = scheduled.iterator(); it.hasNext();) {
+            final Refresh superseded = it.next();
+            if (superseded.record.isSameRecord(record)) {
+                it.remove();
+                refreshes.remove(superseded);
+            }
+        }
+        scheduled.add(refresh);
+        refreshes.add(refresh);
+    }
+
+    /**
+     * Forgets the given refresh, which has been removed from {@link #refreshes}. This method is called while
+     * holding the lock of {@link #refreshes}.
+     *
+     * @param refresh refresh
+     */
+    private void unschedule(final Refresh refresh) {
+        final List<Refresh> scheduled = pending.get(refresh.key);
+        if (scheduled != null) {
+            scheduled.remove(refresh);
+            if (scheduled.isEmpty()) {
+                pending.remove(refresh.key);
+            }
+        }
+    }
+
+}
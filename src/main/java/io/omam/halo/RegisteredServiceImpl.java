@@ -33,6 +33,7 @@ package io.omam.halo;
 import static io.omam.halo.HaloProperties.TTL;
 
 import java.io.IOException;
+import java.net.InetAddress;
 
 /**
  * RegisteredService implementation.
@@ -44,6 +45,9 @@ final class RegisteredServiceImpl extends BaseRegistrableService implements Regi
 
     private final HaloHelper halo;
 
+    /** service records, built again whenever the attributes or an address change. */
+    private volatile ServiceRecords records;
+
     /**
      * Constructor.
      *
@@ -55,6 +59,7 @@ final class RegisteredServiceImpl extends BaseRegistrableService implements Regi
               original.ipv6Address(), original.port());
         attributes = original.attributes();
         halo = haloHelper;
+        records = new ServiceRecords(this, halo.now());
     }
 
     @Override
@@ -65,8 +70,25 @@ final class RegisteredServiceImpl extends BaseRegistrableService implements Regi
     @Override
     public final void changeAttributes(final Attributes newAttributes) throws IOException {
         attributes = newAttributes;
+        records = new ServiceRecords(this, halo.now());
         halo.reannounce(this, TTL);
 
     }
 
+    @Override
+    protected final boolean changeAddress(final InetAddress previous, final InetAddress current) {
+        final boolean changed = super.changeAddress(previous, current);
+        if (changed) {
+            records = new ServiceRecords(this, halo.now());
+        }
+        return changed;
+    }
+
+    /**
+     * @return the records of this service.
+     */
+    final ServiceRecords records() {
+        return records;
+    }
+
 }
@@ -37,6 +37,7 @@ import static io.omam.halo.MulticastDnsSd.TYPE_A;
 import static io.omam.halo.MulticastDnsSd.TYPE_AAAA;
 import static io.omam.halo.MulticastDnsSd.TYPE_SRV;
 import static io.omam.halo.MulticastDnsSd.TYPE_TXT;
+import static io.omam.halo.MulticastDnsSd.uniqueClass;
 
 import java.net.Inet4Address;
 import java.net.Inet6Address;
@@ -44,6 +45,8 @@ import java.net.InetAddress;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +55,8 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import io.omam.halo.SendQueue.Priority;
+
 /**
  * A service that is being resolved or as been resolved on the local network.
  */
@@ -69,6 +74,12 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
     /** whether this service is awaiting resolution. */
     private volatile boolean awaitingResolution;
 
+    /** service name, to be compared ignoring case. */
+    private final DnsName dnsName;
+
+    /** service hostname, to be compared ignoring case. */
+    private DnsName host;
+
     /** service hostname. */
     private String hostname;
 
@@ -101,6 +112,8 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
         ipv4Address = Optional.empty();
         ipv6Address = Optional.empty();
         port = -1;
+        dnsName = DnsName.of(name());
+        host = null;
         hostname = null;
 
         awaitingResolution = false;
@@ -115,10 +128,10 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
      * @param serviceName service name
      * @return instance name
      */
-    static Optional<String> instanceNameOf(final String serviceName) {
-        /* everything until first dot. */
-        final int end = serviceName.indexOf('.');
-        return end == -1 ? Optional.empty() : Optional.of(serviceName.substring(0, end));
+    static Optional<String> instanceNameOf(final DnsName serviceName) {
+        /* first label. */
+        final List<String> labels = serviceName.labels();
+        return labels.size() < 2 ? Optional.empty() : Optional.of(labels.get(0));
     }
 
     /**
@@ -127,11 +140,10 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
      * @param serviceName service name
      * @return registration type
      */
-    static Optional<String> registrationTypeOf(final String serviceName) {
-        final int begin = serviceName.indexOf('.');
-        final int end = serviceName.indexOf(DOMAIN);
-        /* everything after first dot and until local. */
-        return begin == -1 || end == -1 ? Optional.empty() : Optional.of(serviceName.substring(begin + 1, end));
+    static Optional<String> registrationTypeOf(final DnsName serviceName) {
+        final int end = serviceName.lastIndexOf(DOMAIN);
+        /* every label after the first one and until local. */
+        return end < 1 ? Optional.empty() : Optional.of(serviceName.subName(1, end));
     }
 
     @Override
@@ -139,6 +151,21 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
         return attributes;
     }
 
+    /**
+     * Adds the names whose records are of interest to this service to the given collection, i.e. the name of
+     * this service and, once known, the name of the server hosting it.
+     *
+     * @param names collection of names of interest
+     */
+    @Override
+    public final void collectInterests(final Collection<DnsName> names) {
+        names.add(dnsName);
+        final DnsName server = host;
+        if (server != null) {
+            names.add(server);
+        }
+    }
+
     @Override
     public final String hostname() {
         return hostname;
@@ -164,7 +191,10 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
         lock.lock();
         LOGGER.fine(() -> "Handling " + response);
         try {
-            response.answers().forEach(a -> update(halo, a));
+            response.answers(dnsName).forEach(a -> update(halo, a));
+            if (host != null) {
+                response.answers(host).forEach(a -> update(halo, a));
+            }
             awaitingResolution = !resolved();
             if (!awaitingResolution) {
                 LOGGER.fine("Received response resolving service");
@@ -188,11 +218,11 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
         final String serviceName = name();
 
         /* look for a cached SRV record. */
-        final Optional<DnsRecord> cachedSrv = halo.cachedRecord(serviceName, TYPE_SRV, CLASS_IN);
+        final Optional<DnsRecord> cachedSrv = halo.cachedRecord(dnsName, TYPE_SRV, CLASS_IN);
         cachedSrv.ifPresent(c -> update(halo, c));
 
         /* look for a cached TXT record. */
-        final Optional<DnsRecord> cachedTxt = halo.cachedRecord(serviceName, TYPE_TXT, CLASS_IN);
+        final Optional<DnsRecord> cachedTxt = halo.cachedRecord(dnsName, TYPE_TXT, CLASS_IN);
         cachedTxt.ifPresent(c -> update(halo, c));
 
         final Optional<DnsRecord> cachedIpV4;
@@ -202,10 +232,10 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
             cachedIpV6 = Optional.empty();
         } else {
             /* look for a cached A record. */
-            cachedIpV4 = halo.cachedRecord(hostname, TYPE_A, CLASS_IN);
+            cachedIpV4 = halo.cachedRecord(host, TYPE_A, CLASS_IN);
             cachedIpV4.ifPresent(c -> update(halo, c));
             /* look for a cached AAAA record. */
-            cachedIpV6 = halo.cachedRecord(hostname, TYPE_AAAA, CLASS_IN);
+            cachedIpV6 = halo.cachedRecord(host, TYPE_AAAA, CLASS_IN);
             cachedIpV6.ifPresent(c -> update(halo, c));
         }
 
@@ -216,22 +246,25 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
         final Queue<Duration> delays = delays(timeout);
         halo.addResponseListener(this);
         try {
+            /* the first query requests unicast responses (RFC 6762 section 5.4). */
+            short clazz = uniqueClass(CLASS_IN);
             while (!resolved() && !delays.isEmpty()) {
                 final Optional<Instant> now = Optional.of(halo.now());
                 final DnsMessage.Builder builder = DnsMessage.query();
-                builder.addQuestion(new DnsQuestion(serviceName, TYPE_SRV, CLASS_IN));
+                builder.addQuestion(new DnsQuestion(serviceName, TYPE_SRV, clazz));
                 cachedSrv.ifPresent(r -> builder.addAnswer(r, now));
 
-                builder.addQuestion(new DnsQuestion(serviceName, TYPE_TXT, CLASS_IN));
+                builder.addQuestion(new DnsQuestion(serviceName, TYPE_TXT, clazz));
                 cachedTxt.ifPresent(r -> builder.addAnswer(r, now));
 
                 if (hostname != null) {
-                    builder.addQuestion(new DnsQuestion(hostname, TYPE_A, CLASS_IN));
+                    builder.addQuestion(new DnsQuestion(hostname, TYPE_A, clazz));
                     cachedIpV4.ifPresent(r -> builder.addAnswer(r, now));
-                    builder.addQuestion(new DnsQuestion(hostname, TYPE_AAAA, CLASS_IN));
+                    builder.addQuestion(new DnsQuestion(hostname, TYPE_AAAA, clazz));
                     cachedIpV6.ifPresent(r -> builder.addAnswer(r, now));
                 }
-                halo.sendMessage(builder.get());
+                clazz = CLASS_IN;
+                halo.sendMessage(builder.get(), Priority.QUERY);
                 awaitResolution(delays.poll());
             }
         } finally {
@@ -316,8 +349,8 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
             LOGGER.info(() -> "Ignored expired " + record);
         } else {
             final String serviceName = name();
-            final boolean matchesService = record.name().equalsIgnoreCase(serviceName);
-            final boolean matchesHost = record.name().equalsIgnoreCase(hostname);
+            final boolean matchesService = record.dnsName().equals(dnsName);
+            final boolean matchesHost = record.dnsName().equals(host);
             if (record.type() == TYPE_A && matchesHost) {
                 ipv4Address = Optional.of((Inet4Address) ((AddressRecord) record).address());
                 LOGGER.fine(() -> "IPV4 address of service [" + serviceName + UPDATED_TO + ipv4Address.get());
@@ -329,11 +362,12 @@ final class ResolvableService extends BaseService implements ResolvedService, Re
             } else if (record.type() == TYPE_SRV && matchesService) {
                 final SrvRecord srv = (SrvRecord) record;
                 port = srv.port();
-                hostname = srv.server();
+                host = srv.serverName();
+                hostname = host.toString();
                 LOGGER.fine(() -> "Port of service [" + serviceName + UPDATED_TO + port);
                 LOGGER.fine(() -> "Server of service [" + serviceName + UPDATED_TO + hostname);
-                halo.cachedRecord(hostname, TYPE_A, CLASS_IN).ifPresent(r -> update(halo, r));
-                halo.cachedRecord(hostname, TYPE_AAAA, CLASS_IN).ifPresent(r -> update(halo, r));
+                halo.cachedRecord(host, TYPE_A, CLASS_IN).ifPresent(r -> update(halo, r));
+                halo.cachedRecord(host, TYPE_AAAA, CLASS_IN).ifPresent(r -> update(halo, r));
 
             } else if (record.type() == TYPE_TXT && matchesService) {
                 attributes = ((TxtRecord) record).attributes();
@@ -30,11 +30,23 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
+import java.util.Collection;
+
 /**
  * The listener interface for receiving incoming DNS responses received on this channel.
  */
 interface ResponseListener {
 
+    /**
+     * Adds the names whose records are of interest to this listener to the given collection. By default a
+     * listener has no names of interest.
+     *
+     * @param names collection of names of interest
+     */
+    default void collectInterests(final Collection<DnsName> names) {
+        // no interest.
+    }
+
     /**
      * Invoked when a DNS response has been received on this channel.
      *
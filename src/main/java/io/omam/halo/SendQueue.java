@@ -0,0 +1,321 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import io.omam.halo.HaloProperties.OverflowPolicy;
+
+/**
+ * A bounded queue of {@link DnsMessage}s waiting to be sent, ordered by {@link Priority} then by insertion order.
+ * <p>
+ * When the queue is full, the given {@link OverflowPolicy} decides which message is dropped: a message is never
+ * dropped in favour of a message of lower priority. This class is thread-safe.
+ */
+final class SendQueue {
+
+    /**
+     * Priority of a message, from highest to lowest.
+     */
+    enum Priority {
+        /** probes, announcements and goodbyes. */
+        REGISTRATION,
+        /** answers to received queries. */
+        ANSWER,
+        /** browsing and resolution queries. */
+        QUERY;
+    }
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(SendQueue.class.getName());
+
+    /** maximum number of queued messages. */
+    private final int capacity;
+
+    /** what to do when the queue is full. */
+    private final OverflowPolicy policy;
+
+    /** maximum duration to wait for room when policy is {@link OverflowPolicy#BLOCK}. */
+    private final Duration timeout;
+
+    /** lock. */
+    private final Lock lock;
+
+    /** condition signalled when a message is added. */
+    private final Condition notEmpty;
+
+    /** condition signalled when a message is removed. */
+    private final Condition notFull;
+
+    /** queued messages, indexed by priority ordinal. */
+    private final List<Deque<DnsMessage>> queues;
+
+    /** number of queued messages. */
+    private int size;
+
+    /** number of dropped messages. */
+    private long dropped;
+
+    /** number of messages which had to wait for room in the queue. */
+    private long deferred;
+
+    /**
+     * Constructor.
+     *
+     * @param aCapacity maximum number of queued messages
+     * @param aPolicy what to do when the queue is full
+     * @param aTimeout maximum duration to wait for room when policy is {@link OverflowPolicy#BLOCK}
+     */
+    SendQueue(final int aCapacity, final OverflowPolicy aPolicy, final Duration aTimeout) {
+        capacity = aCapacity;
+        policy = aPolicy;
+        timeout = aTimeout;
+        lock = new ReentrantLock();
+        notEmpty = lock.newCondition();
+        notFull = lock.newCondition();
+        queues = new ArrayList<>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+        size = 0;
+        dropped = 0;
+        deferred = 0;
+    }
+
+    /**
+     * @return the number of messages which had to wait for room in the queue.
+     */
+    final long deferred() {
+        lock.lock();
+        try {
+            return deferred;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages dropped because the queue was full.
+     */
+    final long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the given message to this queue, applying the {@link OverflowPolicy} if the queue is full.
+     * <p>
+     * If the current thread is interrupted while waiting for room, the message is dropped and the interrupt status
+     * of the thread is set.
+     *
+     * @param msg message
+     * @param priority message priority
+     * @return {@code true} if the message was added, {@code false} if it was dropped
+     */
+    final boolean offer(final DnsMessage msg, final Priority priority) {
+        return offer(msg, priority, true);
+    }
+
+    /**
+     * Adds the given message to this queue, applying the {@link OverflowPolicy} if the queue is full.
+     * <p>
+     * If waiting is not allowed, the message is dropped rather than waiting for room when the policy is
+     * {@link OverflowPolicy#BLOCK}: threads dispatching received messages must never block.
+     *
+     * @param msg message
+     * @param priority message priority
+     * @param mayWait whether the current thread may wait for room when the policy is {@link OverflowPolicy#BLOCK}
+     * @return {@code true} if the message was added, {@code false} if it was dropped
+     */
+    final boolean offer(final DnsMessage msg, final Priority priority, final boolean mayWait) {
+        lock.lock();
+        try {
+            if (size == capacity && !makeRoom(priority, mayWait)) {
+                drop(msg);
+                return false;
+            }
+            queues.get(priority.ordinal()).addLast(msg);
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the oldest message of highest priority, waiting up to the given time if necessary
+     * until a message becomes available.
+     *
+     * @param nanos maximum time to wait in nanoseconds
+     * @return the oldest message of highest priority, or {@code null} if no message became available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    final DnsMessage poll(final long nanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = nanos;
+            while (size == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return remove();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of queued messages.
+     */
+    final int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the oldest message of highest priority, waiting if necessary until a message becomes
+     * available.
+     *
+     * @return the oldest message of highest priority
+     * @throws InterruptedException if interrupted while waiting
+     */
+    final DnsMessage take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return remove();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the given message has been dropped. Lock must be held.
+     *
+     * @param msg dropped message
+     */
+    private void drop(final DnsMessage msg) {
+        dropped++;
+        LOGGER.fine(() -> "Send queue full, dropped " + msg);
+    }
+
+    /**
+     * Tries to make room for a message of the given priority. Lock must be held and queue must be full.
+     * <p>
+     * When the policy is {@link OverflowPolicy#BLOCK}, the newest queued message of lowest priority is dropped if
+     * its priority is lower than the given one, otherwise the current thread waits for room if allowed.
+     *
+     * @param priority priority of the message to add
+     * @param mayWait whether the current thread may wait for room
+     * @return {@code true} if there is room for the message
+     */
+    private boolean makeRoom(final Priority priority, final boolean mayWait) {
+        if (policy == OverflowPolicy.BLOCK) {
+            for (int i = queues.size() - 1; i > priority.ordinal(); i--) {
+                final Deque<DnsMessage> queue = queues.get(i);
+                if (!queue.isEmpty()) {
+                    drop(queue.removeLast());
+                    size--;
+                    return true;
+                }
+            }
+            if (!mayWait) {
+                return false;
+            }
+            deferred++;
+            long nanos = timeout.toNanos();
+            try {
+                while (size == capacity && nanos > 0) {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return size < capacity;
+        }
+        /* lowest priority queued messages are dropped first, but never in favour of a lower priority message. */
+        for (int i = queues.size() - 1; i >= priority.ordinal(); i--) {
+            final Deque<DnsMessage> queue = queues.get(i);
+            if (!queue.isEmpty()) {
+                if (policy == OverflowPolicy.DROP_OLDEST) {
+                    drop(queue.removeFirst());
+                } else if (i > priority.ordinal()) {
+                    drop(queue.removeLast());
+                } else {
+                    /* drop newest: the message being added is the newest of its priority. */
+                    return false;
+                }
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the oldest message of highest priority. Lock must be held and queue must not be empty.
+     *
+     * @return the oldest message of highest priority
+     */
+    private DnsMessage remove() {
+        for (final Deque<DnsMessage> queue : queues) {
+            final DnsMessage msg = queue.pollFirst();
+            if (msg != null) {
+                size--;
+                notFull.signal();
+                return msg;
+            }
+        }
+        throw new IllegalStateException("Empty send queue");
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.TTL;
+import static io.omam.halo.MulticastDnsSd.CLASS_IN;
+import static io.omam.halo.MulticastDnsSd.uniqueClass;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import io.omam.halo.DnsMessage.Builder;
+
+/**
+ * The records describing a {@link Service}: PTR, SRV, TXT and A and/or AAAA.
+ * <p>
+ * Records are built once, with the {@link HaloProperties#TTL default TTL}, and shared by every announcement,
+ * goodbye and answer sent for the service: the TTL is given when the message is built and written in place when
+ * encoded. Records are immutable, therefore a new instance shall be built whenever the attributes or an address of
+ * the service change.
+ */
+final class ServiceRecords {
+
+    /** A record, if the service has an IPv4 address. */
+    private final Optional<AddressRecord> ipv4;
+
+    /** AAAA record, if the service has an IPv6 address. */
+    private final Optional<AddressRecord> ipv6;
+
+    /** PTR record: registration pointer name to service name. */
+    private final PtrRecord ptr;
+
+    /** SRV record: service name to hostname and port. */
+    private final SrvRecord srv;
+
+    /** TXT record: service name to attributes. */
+    private final TxtRecord txt;
+
+    /**
+     * Constructor.
+     *
+     * @param service service
+     * @param now current instant
+     */
+    ServiceRecords(final Service service, final Instant now) {
+        final String hostname = service.hostname();
+        final String serviceName = service.name();
+        final short unique = uniqueClass(CLASS_IN);
+        ptr = new PtrRecord(service.registrationPointerName(), CLASS_IN, TTL, now, serviceName);
+        srv = new SrvRecord(serviceName, unique, TTL, now, service.port(), hostname);
+        txt = new TxtRecord(serviceName, unique, TTL, now, service.attributes());
+        ipv4 = service.ipv4Address().map(a -> new AddressRecord(hostname, unique, TTL, now, a));
+        ipv6 = service.ipv6Address().map(a -> new AddressRecord(hostname, unique, TTL, now, a));
+    }
+
+    /**
+     * Adds all records to the given builder, each record being written with the given TTL.
+     *
+     * @param builder builder
+     * @param ttl TTL
+     */
+    final void addAnswers(final Builder builder, final Duration ttl) {
+        builder.addAnswer(ptr, ttl).addAnswer(srv, ttl).addAnswer(txt, ttl);
+        ipv4.ifPresent(r -> builder.addAnswer(r, ttl));
+        ipv6.ifPresent(r -> builder.addAnswer(r, ttl));
+    }
+
+    /**
+     * @return the A record, if the service has an IPv4 address.
+     */
+    final Optional<AddressRecord> ipv4() {
+        return ipv4;
+    }
+
+    /**
+     * @return the AAAA record, if the service has an IPv6 address.
+     */
+    final Optional<AddressRecord> ipv6() {
+        return ipv6;
+    }
+
+    /**
+     * @return the PTR record.
+     */
+    final PtrRecord ptr() {
+        return ptr;
+    }
+
+    /**
+     * @return the SRV record.
+     */
+    final SrvRecord srv() {
+        return srv;
+    }
+
+    /**
+     * @return the TXT record.
+     */
+    final TxtRecord txt() {
+        return txt;
+    }
+
+}
@@ -34,7 +34,6 @@ import static io.omam.halo.MulticastDnsSd.TYPE_SRV;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Objects;
 
 /**
  * Service record (SRV).
@@ -49,7 +48,7 @@ final class SrvRecord extends DnsRecord {
     private final short port;
 
     /** service server. */
-    private final String server;
+    private final DnsName server;
 
     /**
      * Constructor.
@@ -64,9 +63,8 @@ final class SrvRecord extends DnsRecord {
     SrvRecord(final String aName, final short aClass, final Duration aTtl, final Instant now, final short aPort,
             final String aServer) {
         super(aName, TYPE_SRV, aClass, aTtl, now);
-        Objects.requireNonNull(aServer);
         port = aPort;
-        server = aServer;
+        server = DnsName.of(aServer);
     }
 
     @Override
@@ -97,16 +95,40 @@ final class SrvRecord extends DnsRecord {
      * @return service server.
      */
     final String server() {
+        return server.toString();
+    }
+
+    /**
+     * @return service server, to be compared ignoring case.
+     */
+    final DnsName serverName() {
         return server;
     }
 
+    @Override
+    protected final int estimatedDataSize() {
+        return server.estimatedSize();
+    }
+
+    @Override
+    protected final boolean hasSameData(final DnsRecord other) {
+        final SrvRecord srv = (SrvRecord) other;
+        return port == srv.port && server.equals(srv.server);
+    }
+
+    @Override
+    protected final int maxDataSize() {
+        /* priority, weight and port. */
+        return 6 + server.maxEncodedSize();
+    }
+
     @Override
     protected final void write(final MessageOutputStream mos) {
         /* priority and weight are always 0. */
         mos.writeShort(0);
         mos.writeShort(0);
         mos.writeShort(port);
-        mos.writeName(server);
+        mos.writeName(server.toString());
     }
 
 }
@@ -0,0 +1,82 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+/**
+ * Counters describing the activity of a {@link Halo} instance, e.g. to monitor whether it keeps up with the
+ * network.
+ * <p>
+ * Counters are cumulative since the instance has been created and are read live: values read one after the other
+ * are not a consistent snapshot.
+ *
+ * @see Halo#statistics()
+ */
+public interface Statistics {
+
+    /**
+     * @return the number of messages to send that had to wait for room in the sending queue.
+     */
+    long deferredMessages();
+
+    /**
+     * @return the number of received datagrams that have been dropped because they could not be decoded fast
+     *         enough.
+     */
+    long droppedDatagrams();
+
+    /**
+     * @return the number of messages to send that have been dropped because the sending queue was full.
+     */
+    long droppedMessages();
+
+    /**
+     * @return the number of received datagrams that have been ignored because they were copies of datagrams
+     *         received through another link.
+     */
+    long ignoredDatagrams();
+
+    /**
+     * @return the number of received datagrams that have been dropped because they were larger than the largest
+     *         multicast DNS packet.
+     */
+    long oversizedDatagrams();
+
+    /**
+     * @return the number of received datagrams waiting to be decoded.
+     */
+    int pendingDatagrams();
+
+    /**
+     * @return the number of messages waiting to be sent.
+     */
+    int pendingMessages();
+
+}
@@ -0,0 +1,120 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Sends and receives the datagrams of a {@link HaloChannel} through one or more {@link Link link}s.
+ * <p>
+ * A transport only moves datagrams: encoding, decoding, queuing and aggregation of DNS messages are done by the
+ * channel.
+ */
+interface Transport extends AutoCloseable {
+
+    /**
+     * The listener interface for receiving datagrams and changes to the links from a transport.
+     * <p>
+     * Methods of this interface may be invoked concurrently by several threads of the transport.
+     */
+    interface Listener extends LinkListener {
+
+        /**
+         * Returns a buffer to receive a datagram into.
+         * <p>
+         * The buffer is handed back either by {@link #received(ByteBuffer, InetSocketAddress, Link)} or by
+         * {@link #release(ByteBuffer)}.
+         *
+         * @return a cleared buffer of more than {@link MulticastDnsSd#MAX_MDNS_PACKET_SIZE} bytes, so that a
+         *         datagram truncated to the buffer size is detected by the listener, or {@code null} if no buffer
+         *         is available, in which case the datagram shall be dropped and
+         *         {@link #dropped(InetSocketAddress)} invoked
+         */
+        ByteBuffer acquire();
+
+        /**
+         * Invoked when a datagram has been dropped because no buffer was available to receive it.
+         *
+         * @param sender address of the sender of the datagram
+         */
+        void dropped(InetSocketAddress sender);
+
+        /**
+         * Invoked when a datagram has been received.
+         *
+         * @param buffer buffer obtained from {@link #acquire()} containing the datagram, ready to be read
+         * @param sender address of the sender of the datagram
+         * @param link link through which the datagram has been received
+         */
+        void received(ByteBuffer buffer, InetSocketAddress sender, Link link);
+
+        /**
+         * Hands back the given buffer, unused.
+         *
+         * @param buffer buffer obtained from {@link #acquire()}
+         */
+        void release(ByteBuffer buffer);
+
+    }
+
+    /**
+     * Stops receiving datagrams and releases all underlying resources.
+     */
+    @Override
+    void close();
+
+    /**
+     * @return the current links of this transport.
+     */
+    List<Link> links();
+
+    /**
+     * Sends the given datagram through the given link.
+     *
+     * @param link one of the {@link #links() links} of this transport
+     * @param datagram buffer containing the datagram, ready to be read
+     * @param target address to which the datagram is to be sent, unicast or multicast
+     * @throws IOException in case of I/O error
+     */
+    void send(Link link, ByteBuffer datagram, InetSocketAddress target) throws IOException;
+
+    /**
+     * Starts receiving datagrams through all links, handing them over to the given listener which is also notified
+     * of any later change to the links. Has no effect if already started.
+     *
+     * @param listener listener
+     */
+    void start(Listener listener);
+
+}
@@ -44,6 +44,9 @@ final class TxtRecord extends DnsRecord {
     /** attributes. */
     private final Attributes attributes;
 
+    /** attributes in wire format, as received or encoded the first time this record is written. */
+    private volatile byte[] encoded;
+
     /**
      * Constructor.
      *
@@ -58,6 +61,11 @@ final class TxtRecord extends DnsRecord {
         super(aName, TYPE_TXT, aClass, aTtl, now);
         Objects.requireNonNull(someAttributes);
         attributes = someAttributes;
+        if (someAttributes instanceof EncodedAttributes) {
+            encoded = ((EncodedAttributes) someAttributes).bytes();
+        } else {
+            encoded = null;
+        }
     }
 
     @Override
@@ -82,9 +90,43 @@ final class TxtRecord extends DnsRecord {
         return attributes;
     }
 
+    @Override
+    protected final int estimatedDataSize() {
+        /* attributes are decoded into a map when first accessed, which roughly quadruples their size. */
+        final byte[] bytes = encoded;
+        return bytes == null ? 64 * attributes.keys().size() : 4 * bytes.length;
+    }
+
+    @Override
+    protected final boolean hasSameData(final DnsRecord other) {
+        return attributes.equals(((TxtRecord) other).attributes);
+    }
+
+    @Override
+    protected final int maxDataSize() {
+        final byte[] bytes = encoded;
+        if (bytes != null) {
+            return bytes.length;
+        }
+        /* length of each pair, key, and separator and value if any. */
+        int size = 0;
+        for (final String key : attributes.keys()) {
+            size += 1 + MessageOutputStream.utf8Length(key);
+            size += attributes.value(key).map(v -> 1 + v.remaining()).orElse(0).intValue();
+        }
+        return size;
+    }
+
     @Override
     protected final void write(final MessageOutputStream mos) {
-        AttributesCodec.encode(attributes, mos);
+        final byte[] bytes = encoded;
+        if (bytes == null) {
+            final int from = mos.position();
+            AttributesCodec.encode(attributes, mos);
+            encoded = mos.copy(from);
+        } else {
+            mos.writeAllBytes(bytes);
+        }
     }
 
 }
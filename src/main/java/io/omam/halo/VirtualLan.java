@@ -0,0 +1,379 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.MDNS_PORT;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-process IPv4 network connecting any number of {@link Transport}s, e.g. to run many {@link Halo} instances
+ * in a single JVM without a real network.
+ * <p>
+ * Each {@link #join() joined} transport is given a distinct address in {@code 10.0.0.0/8}, a single link and a
+ * port, {@link HaloProperties#MDNS_PORT} unless {@link #join(int) joined} with another one, e.g. to simulate a
+ * legacy resolver. A datagram sent to a multicast address is delivered to every transport having the target port,
+ * including the sender, whereas a datagram sent to a unicast address is delivered to the transport having this
+ * address and port, if any. Datagrams are sent from the address and port of the sending transport. Every delivery
+ * happens after the configured latency and is independently lost with the configured probability; a datagram
+ * larger than the receiving buffer is dropped. A transport can be {@link #renumber(Transport) renumbered} to
+ * simulate an address change.
+ * <p>
+ * This class is thread-safe.
+ */
+final class VirtualLan implements AutoCloseable {
+
+    /**
+     * A transport joined to the virtual LAN.
+     */
+    private final class Node implements Transport {
+
+        /** address of the node. */
+        private volatile InetAddress address;
+
+        /** link of the node. */
+        private volatile Link link;
+
+        /** listener to hand over received datagrams to, null until started. */
+        private volatile Listener listener;
+
+        /** port of the node. */
+        private final int port;
+
+        /**
+         * Constructor.
+         *
+         * @param anAddress address of the node
+         * @param aPort port of the node
+         */
+        Node(final InetAddress anAddress, final int aPort) {
+            address = anAddress;
+            link = link(anAddress);
+            listener = null;
+            port = aPort;
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void close() {
+            nodes.remove(address, this);
+        }
+
+        @Override
+        public final List<Link> links() {
+            return Collections.singletonList(link);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public final void send(final Link aLink, final ByteBuffer datagram, final InetSocketAddress target)
+                throws IOException {
+            final InetAddress source = address;
+            if (!link.equals(aLink)) {
+                throw new IOException("Unknown link " + aLink);
+            }
+            if (nodes.get(source) != this) {
+                throw new IOException("Transport closed");
+            }
+            final byte[] bytes = new byte[datagram.remaining()];
+            datagram.get(bytes);
+            final InetSocketAddress sender = new InetSocketAddress(source, port);
+            sent.incrementAndGet();
+            if (target.getAddress().isMulticastAddress()) {
+                nodes
+                    .values()
+                    .stream()
+                    .filter(n -> n.port == target.getPort())
+                    .forEach(n -> deliver(bytes, sender, n));
+            } else {
+                final Node recipient = nodes.get(target.getAddress());
+                if (recipient != null && recipient.port == target.getPort()) {
+                    deliver(bytes, sender, recipient);
+                }
+            }
+        }
+
+        @Override
+        public final void start(final Listener aListener) {
+            if (listener == null) {
+                listener = aListener;
+            }
+        }
+
+        /**
+         * Hands over the given datagram to the listener of this node, if started, unless larger than the buffer
+         * provided by the listener.
+         *
+         * @param bytes datagram
+         * @param sender address of the sender of the datagram
+         */
+        @SuppressWarnings("synthetic-access")
+        final void receive(final byte[] bytes, final InetSocketAddress sender) {
+            final Link current = link;
+            final Listener l = listener;
+            if (l == null) {
+                return;
+            }
+            final ByteBuffer buf = l.acquire();
+            if (buf == null) {
+                l.dropped(sender);
+                return;
+            }
+            if (bytes.length > buf.remaining()) {
+                l.release(buf);
+                final long count = oversized.incrementAndGet();
+                LOGGER.fine(() -> "Dropped datagram of " + bytes.length + " bytes from " + sender + ", " + count
+                    + " oversized so far");
+                return;
+            }
+            buf.put(bytes);
+            buf.flip();
+            delivered.incrementAndGet();
+            l.received(buf, sender, current);
+        }
+
+        /**
+         * Changes the address of this node, notifying the listener of this node if started.
+         *
+         * @param anAddress new address
+         */
+        final void renumber(final InetAddress anAddress) {
+            final Link previous = link;
+            address = anAddress;
+            link = link(anAddress);
+            final Listener l = listener;
+            if (l != null) {
+                l.linkUpdated(previous, link);
+            }
+        }
+
+    }
+
+    /** logger. */
+    private static final Logger LOGGER = Logger.getLogger(VirtualLan.class.getName());
+
+    /** name of the link of every node. */
+    private static final String LINK_NAME = "vlan0";
+
+    /** maximum transmission unit of every link in bytes. */
+    private static final int MTU = 1500;
+
+    /** number of datagrams delivered so far. */
+    private final AtomicLong delivered;
+
+    /** executor service delivering datagrams. */
+    private final ScheduledExecutorService executor;
+
+    /** latency of each delivery in nanoseconds. */
+    private final long latency;
+
+    /** probability of each delivery to be lost. */
+    private final double loss;
+
+    /** number of datagrams lost so far. */
+    private final AtomicLong lost;
+
+    /** host part of the address of the last joined node. */
+    private final AtomicInteger last;
+
+    /** joined nodes indexed by address. */
+    private final Map<InetAddress, Node> nodes;
+
+    /** number of datagram deliveries dropped so far since larger than the receiving buffer. */
+    private final AtomicLong oversized;
+
+    /** number of datagrams sent so far. */
+    private final AtomicLong sent;
+
+    /**
+     * Constructor.
+     *
+     * @param aLatency latency of each delivery
+     * @param aLoss probability of each delivery to be lost, between 0 and 1
+     */
+    VirtualLan(final Duration aLatency, final double aLoss) {
+        if (aLatency.isNegative()) {
+            throw new IllegalArgumentException("Negative latency: " + aLatency);
+        }
+        if (aLoss < 0 || aLoss > 1) {
+            throw new IllegalArgumentException("Loss not within [0, 1]: " + aLoss);
+        }
+        delivered = new AtomicLong(0);
+        executor = Executors.newSingleThreadScheduledExecutor(new HaloThreadFactory("lan"));
+        latency = aLatency.toNanos();
+        loss = aLoss;
+        lost = new AtomicLong(0);
+        last = new AtomicInteger(0);
+        nodes = new ConcurrentHashMap<>();
+        oversized = new AtomicLong(0);
+        sent = new AtomicLong(0);
+    }
+
+    /**
+     * Returns the link of a node having the given address.
+     *
+     * @param address address of the node
+     * @return link
+     */
+    private static Link link(final InetAddress address) {
+        return new Link(LINK_NAME, 1, StandardProtocolFamily.INET, MTU,
+                        Collections.singletonMap(address, Integer.valueOf(8)));
+    }
+
+    @Override
+    public final void close() {
+        executor.shutdownNow();
+        nodes.clear();
+    }
+
+    /**
+     * @return the number of datagrams delivered so far.
+     */
+    final long delivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns a new transport joined to this virtual LAN.
+     *
+     * @return a new transport
+     */
+    final Transport join() {
+        return join(MDNS_PORT);
+    }
+
+    /**
+     * Returns a new transport joined to this virtual LAN, sending and receiving datagrams on the given port.
+     *
+     * @param port port
+     * @return a new transport
+     */
+    final Transport join(final int port) {
+        final InetAddress address = nextAddress();
+        final Node node = new Node(address, port);
+        nodes.put(address, node);
+        LOGGER.fine(() -> "Joined virtual LAN as " + address + ":" + port);
+        return node;
+    }
+
+    /**
+     * @return the number of datagram deliveries lost so far.
+     */
+    final long lost() {
+        return lost.get();
+    }
+
+    /**
+     * @return the number of datagram deliveries dropped so far since larger than the receiving buffer.
+     */
+    final long oversized() {
+        return oversized.get();
+    }
+
+    /**
+     * @return the number of datagrams sent so far.
+     */
+    final long sent() {
+        return sent.get();
+    }
+
+    /**
+     * Gives a new address to the given transport, as if the address of its network interface had changed: the
+     * listener of the transport is notified that its link has been updated.
+     *
+     * @param transport transport joined to this virtual LAN
+     * @return the new address
+     */
+    final InetAddress renumber(final Transport transport) {
+        final Node node = (Node) transport;
+        final InetAddress address = nextAddress();
+        nodes.put(address, node);
+        nodes.remove(node.address, node);
+        node.renumber(address);
+        LOGGER.fine(() -> "Renumbered virtual LAN node as " + address);
+        return address;
+    }
+
+    /**
+     * Delivers the given datagram to the given node after the latency of this virtual LAN, unless lost.
+     *
+     * @param bytes datagram
+     * @param sender address of the sender of the datagram
+     * @param recipient recipient node
+     */
+    private void deliver(final byte[] bytes, final InetSocketAddress sender, final Node recipient) {
+        if (loss > 0 && ThreadLocalRandom.current().nextDouble() < loss) {
+            lost.incrementAndGet();
+            return;
+        }
+        try {
+            executor.schedule(() -> recipient.receive(bytes, sender), latency, TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Virtual LAN closed while delivering datagram", e);
+        }
+    }
+
+    /**
+     * @return a new, unused address.
+     */
+    private InetAddress nextAddress() {
+        final int host = last.incrementAndGet();
+        if (host >= 1 << 24) {
+            throw new IllegalStateException("Virtual LAN is full");
+        }
+        final byte[] bytes = { 10, (byte) (host >> 16), (byte) (host >> 8), (byte) host };
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (final UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+/**
+ * Steps to tests saving and reloading the cache, driven by the clock of the cache steps.
+ */
+@SuppressWarnings("javadoc")
+public final class CacheSnapshotSteps {
+
+    private final CacheSteps cacheSteps;
+
+    private Path dir;
+
+    private List<DnsRecord> loaded;
+
+    private CacheSnapshot snapshot;
+
+    public CacheSnapshotSteps(final CacheSteps someCacheSteps) {
+        cacheSteps = someCacheSteps;
+    }
+
+    /* runs before the after hook of the cache steps, since closing saves the cache. */
+    @After(order = 20000)
+    public final void after() throws IOException {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+        }
+        if (dir != null) {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+            dir = null;
+        }
+        loaded = null;
+    }
+
+    final List<DnsRecord> loaded() {
+        return loaded;
+    }
+
+    private Path file() {
+        return dir.resolve("cache.snapshot");
+    }
+
+    @Given("a cache snapshot has been created")
+    public final void givenSnapshot() throws IOException {
+        dir = Files.createTempDirectory("halo");
+        snapshot = new CacheSnapshot(cacheSteps.cache(), file(), cacheSteps.clock());
+    }
+
+    @Given("the following bytes have been written to the snapshot file:")
+    public final void givenWritten(final DataTable data) {
+        write(data, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Then("no record shall have been loaded from the snapshot")
+    public final void thenNoneLoaded() {
+        assertTrue(loaded.isEmpty(), () -> "loaded: " + loaded);
+    }
+
+    @Then("the following records shall have been loaded from the snapshot:")
+    public final void thenLoaded(final DataTable data) {
+        final List<Record> expecteds = Parser.parse(data, Record::new);
+        assertEquals(expecteds.size(), loaded.size(), () -> "loaded: " + loaded);
+        for (final Record expected : expecteds) {
+            final Duration ttl = Duration.parse(expected.ttl());
+            assertTrue(loaded.stream().anyMatch(r -> r.name().equals(expected.name()) && r.ttl().equals(ttl)),
+                    () -> expected.name() + " with TTL " + ttl + " not in " + loaded);
+        }
+    }
+
+    @When("the following bytes have been appended to the snapshot file:")
+    public final void whenAppended(final DataTable data) {
+        write(data, StandardOpenOption.APPEND);
+    }
+
+    @When("the cache snapshot is loaded")
+    public final void whenLoaded() {
+        loaded = snapshot.load();
+    }
+
+    @When("the cache snapshot is saved")
+    public final void whenSaved() {
+        snapshot.save();
+    }
+
+    private void write(final DataTable data, final StandardOpenOption... options) {
+        try {
+            Files.write(file(), Bytes.parse(data), options);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
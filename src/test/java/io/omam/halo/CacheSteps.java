@@ -0,0 +1,250 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.MulticastDnsHelper.classForName;
+import static io.omam.halo.MulticastDnsHelper.typeForName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+/**
+ * Steps to tests the DNS record cache, driven by a fixed clock.
+ */
+@SuppressWarnings("javadoc")
+public final class CacheSteps {
+
+    /** record the capacity of a cache is expressed in: all records of the scenarios have the same size. */
+    private static final DnsRecord SIZE_REFERENCE =
+            new PtrRecord("n01.local.", MulticastDnsSd.CLASS_IN, Duration.ofSeconds(1), Instant.EPOCH, "x.local.");
+
+    private final DnsFactory factory;
+
+    private Cache cache;
+
+    /** clock of the scenario: fixed, but at an instant moved forward each time the time elapses. */
+    private final Clock clock;
+
+    private final Set<DnsName> interests;
+
+    /** notified of every record which is no longer cached. */
+    private Consumer<DnsRecord> listener;
+
+    private Instant now;
+
+    public CacheSteps(final DnsFactory aFactory) {
+        factory = aFactory;
+        interests = new HashSet<>();
+        listener = r -> {
+            // ignored.
+        };
+        clock = new Clock() {
+
+            @Override
+            public final ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public final Instant instant() {
+                return now;
+            }
+
+            @Override
+            public final Clock withZone(final ZoneId zone) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Asserts that the given records are the same records as the expected ones, regardless of order and TTL.
+     *
+     * @param data expected records
+     * @param actuals actual records
+     */
+    private void assertSameRecords(final DataTable data, final Collection<DnsRecord> actuals) {
+        final List<DnsRecord> expecteds = records(data);
+        assertEquals(expecteds.size(), actuals.size(), () -> "records: " + actuals);
+        for (final DnsRecord expected : expecteds) {
+            assertTrue(actuals.stream().anyMatch(expected::isSameRecord), () -> expected + " not in " + actuals);
+        }
+    }
+
+    @After
+    public final void after() {
+        cache = null;
+        interests.clear();
+        listener = r -> {
+            // ignored.
+        };
+        now = null;
+    }
+
+    final Cache cache() {
+        return cache;
+    }
+
+    final Clock clock() {
+        return clock;
+    }
+
+    @Given("a cache has been created")
+    public final void givenCache() {
+        givenCacheOfCapacity(Integer.MAX_VALUE / SIZE_REFERENCE.estimatedSize());
+    }
+
+    @Given("a cache of capacity {int} record(s) has been created")
+    public final void givenCacheOfCapacity(final int capacity) {
+        cache = new Cache((long) capacity * SIZE_REFERENCE.estimatedSize(), () -> interests,
+                r -> listener.accept(r));
+        now = Instant.parse("2020-01-01T00:00:00Z");
+    }
+
+    @Given("the following names are of interest:")
+    public final void givenInterests(final DataTable data) {
+        data.asList().stream().map(DnsName::of).forEach(interests::add);
+    }
+
+    final Set<DnsName> interests() {
+        return interests;
+    }
+
+    /**
+     * Sets the listener notified of every record which is no longer cached.
+     *
+     * @param aListener listener
+     */
+    final void listen(final Consumer<DnsRecord> aListener) {
+        listener = aListener;
+    }
+
+    /**
+     * Returns new records created now from the given data table.
+     *
+     * @param data data table
+     * @return new records
+     */
+    private List<DnsRecord> records(final DataTable data) {
+        return Parser.parse(data, Record::new).stream().map(r -> factory.newRecord(r, now)).collect(
+                Collectors.toList());
+    }
+
+    @Then("the cache shall contain no record")
+    public final void thenCacheEmpty() {
+        assertTrue(cache.entries().isEmpty(), () -> "records: " + cache.entries());
+    }
+
+    @Then("the cache shall contain the following records:")
+    public final void thenCacheRecords(final DataTable data) {
+        assertSameRecords(data, cache.entries());
+    }
+
+    @Then("{int} record(s) shall have been evicted")
+    public final void thenEvicted(final int evictions) {
+        assertEquals(evictions, cache.evictions());
+    }
+
+    @Then("{int} look-up(s) shall have found a record")
+    public final void thenHits(final int hits) {
+        assertEquals(hits, cache.hits());
+    }
+
+    @Then("{int} look-up(s) shall have found no record")
+    public final void thenMisses(final int misses) {
+        assertEquals(misses, cache.misses());
+    }
+
+    @Then("the cached records named {string} shall be:")
+    public final void thenRecordsNamed(final String name, final DataTable data) {
+        assertSameRecords(data, cache.entries(DnsName.of(name)));
+    }
+
+    @Then("the cached records of type {word} shall be:")
+    public final void thenRecordsOfType(final String type, final DataTable data) {
+        assertSameRecords(data, cache.entries(typeForName(type)));
+    }
+
+    @When("the cache has been cleared")
+    public final void whenCleared() {
+        cache.clear();
+    }
+
+    @When("the following records are cached:")
+    public final void whenCached(final DataTable data) {
+        records(data).forEach(cache::add);
+    }
+
+    @When("the cache is cleaned")
+    public final void whenCleaned() {
+        cache.clean(now);
+    }
+
+    @When("{int} second(s) has/have elapsed")
+    public final void whenElapsed(final int seconds) {
+        now = now.plusSeconds(seconds);
+    }
+
+    @When("the following records are expired:")
+    public final void whenExpired(final DataTable data) {
+        records(data).forEach(cache::expire);
+    }
+
+    @When("the following records are looked up:")
+    public final void whenLookedUp(final DataTable data) {
+        Parser
+            .parse(data, Question::new)
+            .forEach(q -> cache.get(DnsName.of(q.name()), typeForName(q.type()), classForName(q.clazz())));
+    }
+
+    @When("the records named {string} are removed")
+    public final void whenRemoved(final String name) {
+        cache.removeAll(DnsName.of(name));
+    }
+
+}
@@ -0,0 +1,335 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.HaloProperties.MDNS_PORT;
+import static io.omam.halo.HaloProperties.RECEIVING_CAPACITY;
+import static io.omam.halo.HaloProperties.SENDING_CAPACITY;
+import static io.omam.halo.HaloProperties.SENDING_OVERFLOW;
+import static io.omam.halo.HaloProperties.SENDING_TIMEOUT;
+import static io.omam.halo.MulticastDnsSd.CLASS_IN;
+import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.omam.halo.HaloProperties.OverflowPolicy;
+import io.omam.halo.SendQueue.Priority;
+
+/**
+ * Steps to tests the channel sending and receiving DNS messages through a transport driven by the steps.
+ */
+@SuppressWarnings("javadoc")
+public final class ChannelSteps {
+
+    /** priority of the message sent by the dispatching thread for each dispatched message, null if none. */
+    private volatile Priority answer;
+
+    private HaloChannel channel;
+
+    /** latch the dispatching thread waits for, null if dispatching is not blocked. */
+    private volatile CountDownLatch gate;
+
+    /** latch counted down when the dispatching of a message has started. */
+    private volatile CountDownLatch started;
+
+    private final List<DnsMessage> dispatched;
+
+    private short lastId;
+
+    private final List<Short> received;
+
+    private final StepTransport transport;
+
+    public ChannelSteps() {
+        dispatched = Collections.synchronizedList(new ArrayList<>());
+        received = new ArrayList<>();
+        transport = new StepTransport();
+    }
+
+    @After
+    public final void after() {
+        if (gate != null) {
+            gate.countDown();
+            gate = null;
+        }
+        transport.unblock();
+        transport.clear();
+        answer = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        dispatched.clear();
+        lastId = 0;
+        received.clear();
+    }
+
+    private void createChannel(final SendQueue queue) {
+        final LinkListener links = new LinkListener() {
+
+            @Override
+            public final void linkAdded(final Link link) {
+                // ignored.
+            }
+
+            @Override
+            public final void linkRemoved(final Link link) {
+                // ignored.
+            }
+
+            @Override
+            public final void linkUpdated(final Link previous, final Link current) {
+                // ignored.
+            }
+        };
+        channel = new HaloChannel(this::dispatch, links, new QueryFilter(), Clock.systemUTC(), transport, queue);
+        channel.enable();
+    }
+
+    @Given("a channel has been created")
+    public final void givenChannel() {
+        givenChannel(1);
+    }
+
+    @Given("a channel receiving through {int} sockets on the same link has been created")
+    public final void givenChannel(final int sockets) {
+        transport.sockets(sockets);
+        createChannel(new SendQueue(SENDING_CAPACITY, SENDING_OVERFLOW, SENDING_TIMEOUT));
+    }
+
+    @Given("a channel with a sending queue of capacity {int} and overflow policy {word} has been created")
+    public final void givenChannel(final int capacity, final String policy) {
+        transport.sockets(1);
+        createChannel(new SendQueue(capacity, OverflowPolicy.valueOf(policy), Duration.ofMillis(100)));
+    }
+
+    @Given("the dispatching of received messages has been blocked")
+    public final void givenDispatchingBlocked() {
+        gate = new CountDownLatch(1);
+        started = new CountDownLatch(1);
+    }
+
+    @Given("each dispatched message is answered with priority {word} by the dispatching thread")
+    public final void givenAnswered(final String priority) {
+        answer = Priority.valueOf(priority);
+    }
+
+    @Given("the sending of messages has been blocked")
+    public final void givenSendingBlocked() {
+        transport.block();
+    }
+
+    @Then("{int} message(s) to send shall have been deferred")
+    public final void thenDeferred(final int count) {
+        assertEquals(count, channel.deferredMessages());
+    }
+
+    @Then("{int} message(s) to send shall have been dropped")
+    public final void thenDroppedMessages(final int count) {
+        assertEquals(count, channel.droppedMessages());
+    }
+
+    @Then("{int} received datagram(s) shall have been ignored")
+    public final void thenIgnored(final int count) {
+        assertEquals(count, channel.ignoredDatagrams());
+    }
+
+    @Then("{int} received datagram(s) shall have been dropped as oversized")
+    public final void thenOversized(final int count) {
+        assertEquals(count, channel.oversizedDatagrams());
+    }
+
+    @Then("the DNS messages with the following IDs shall have been dispatched in order:")
+    public final void thenDispatched(final List<Short> ids) {
+        await().atMost(Duration.ofSeconds(5)).until(() -> dispatched.size() >= ids.size());
+        synchronized (dispatched) {
+            assertEquals(ids, dispatched.stream().map(m -> Short.valueOf(m.id())).collect(Collectors.toList()));
+        }
+        assertEquals(0, channel.pendingDatagrams());
+    }
+
+    @Then("the DNS messages with the following IDs shall have been sent in order:")
+    public final void thenSent(final List<Short> ids) {
+        await().atMost(Duration.ofSeconds(5)).until(() -> transport.sent().size() >= ids.size());
+        assertEquals(ids, transport.sent());
+        assertEquals(0, channel.pendingMessages());
+    }
+
+    @Then("the DNS responses exceeding the capacity of the decoding queue shall have been dropped")
+    public final void thenDroppedBeyondCapacity() {
+        assertEquals(received.size() - 1 - RECEIVING_CAPACITY, channel.droppedDatagrams());
+        assertEquals(RECEIVING_CAPACITY, channel.pendingDatagrams());
+    }
+
+    @Then("the DNS responses which have not been dropped shall have been dispatched in the order they have been "
+        + "received")
+    public final void thenDispatchedInOrder() {
+        final int expected = received.size() - (int) channel.droppedDatagrams();
+        await().atMost(Duration.ofSeconds(5)).until(() -> dispatched.size() >= expected);
+        final List<Short> ids;
+        synchronized (dispatched) {
+            ids = dispatched.stream().map(m -> Short.valueOf(m.id())).collect(Collectors.toList());
+        }
+        assertEquals(received.subList(0, expected), ids);
+        assertEquals(0, channel.pendingDatagrams());
+    }
+
+    @Then("no received datagram shall have been dropped")
+    public final void thenNoneDropped() {
+        assertEquals(0, channel.droppedDatagrams());
+    }
+
+    @When("the dispatching of received messages is unblocked")
+    public final void whenDispatchingUnblocked() {
+        gate.countDown();
+        gate = null;
+    }
+
+    @When("the dispatching of the first received message has started")
+    public final void whenDispatchingStarted() throws InterruptedException {
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @When("{int} DNS quer(y)(ies) is/are sent")
+    public final void whenQueriesSent(final int count) {
+        for (int i = 0; i < count; i++) {
+            channel.send(nextQuery(), Priority.QUERY);
+        }
+    }
+
+    @When("the sending of messages is unblocked")
+    public final void whenSendingUnblocked() {
+        transport.unblock();
+    }
+
+    @When("the sending of the first message has started")
+    public final void whenSendingStarted() throws InterruptedException {
+        assertTrue(transport.awaitSending());
+    }
+
+    @When("{int} milliseconds have elapsed")
+    public final void whenElapsed(final int millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @When("a datagram of {int} bytes is received from {word}")
+    public final void whenDatagramReceived(final int size, final String address) throws UnknownHostException {
+        transport.receive(new byte[size], new InetSocketAddress(InetAddress.getByName(address), MDNS_PORT), 0);
+    }
+
+    @When("the following bytes are received from {word}:")
+    public final void whenBytesReceived(final String address, final DataTable data)
+            throws UnknownHostException {
+        whenBytesReceived(address, 0, data);
+    }
+
+    @When("the following bytes are received from {word} through socket {int}:")
+    public final void whenBytesReceived(final String address, final int socket, final DataTable data)
+            throws UnknownHostException {
+        transport.receive(Bytes.parse(data), new InetSocketAddress(InetAddress.getByName(address), MDNS_PORT),
+                          socket);
+    }
+
+    @When("{int} DNS response(s) is/are received from {word}")
+    public final void whenResponsesReceived(final int count, final String address) throws UnknownHostException {
+        final InetSocketAddress sender = new InetSocketAddress(InetAddress.getByName(address), MDNS_PORT);
+        final Instant now = Instant.now();
+        IntStream.range(0, count).forEach(i -> {
+            lastId++;
+            final DnsMessage response = DnsMessage
+                .response()
+                .id(lastId)
+                .addAnswer(null, new PtrRecord("_music._tcp.local.", CLASS_IN, Duration.ofHours(1), now,
+                                               "Living Room._music._tcp.local."))
+                .get();
+            received.add(Short.valueOf(lastId));
+            transport.receive(response.encode(), sender, 0);
+        });
+    }
+
+    /**
+     * Dispatches the given message: waits for the dispatching to be unblocked if blocked, then decodes its records
+     * and records it.
+     *
+     * @param msg message
+     */
+    private void dispatch(final DnsMessage msg) {
+        final CountDownLatch g = gate;
+        if (g != null) {
+            started.countDown();
+            try {
+                g.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        msg.answers();
+        final Priority p = answer;
+        if (p != null) {
+            channel.send(nextQuery(), p);
+        }
+        dispatched.add(msg);
+    }
+
+    /**
+     * @return a new DNS query, with the next ID.
+     */
+    private synchronized DnsMessage nextQuery() {
+        lastId++;
+        return DnsMessage
+            .query()
+            .id(lastId)
+            .addQuestion(new DnsQuestion("_music._tcp.local.", TYPE_PTR, CLASS_IN))
+            .get();
+    }
+
+}
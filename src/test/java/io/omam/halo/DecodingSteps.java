@@ -33,11 +33,15 @@ package io.omam.halo;
 import static io.omam.halo.Assert.assertDnsQuestionsEquals;
 import static io.omam.halo.Assert.assertDnsRecordsEquals;
 import static io.omam.halo.MulticastDnsHelper.flagsForName;
+import static io.omam.halo.MulticastDnsHelper.typeForName;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
@@ -62,6 +66,11 @@ public final class DecodingSteps {
 
     private Attributes attributes;
 
+    private boolean accepted;
+
+    /** reusable buffer the packet has been decoded from, null if decoded from the packet itself. */
+    private ByteBuffer buffer;
+
     private DnsMessage msg;
 
     private Instant now;
@@ -76,16 +85,34 @@ public final class DecodingSteps {
     @After
     public final void after() {
         attributes = null;
+        accepted = false;
+        buffer = null;
         msg = null;
         now = null;
         packet = null;
     }
 
+    private List<DnsRecord> expectedRecords(final DataTable data) {
+        final List<Record> records = Parser.parse(data, Record::new);
+        return records.stream().map(r -> factory.newRecord(r, now)).collect(Collectors.toList());
+    }
+
     @Given("the following packet has been received:")
     public final void givenPacketReceived(final DataTable data) {
         packet = Bytes.parse(data);
     }
 
+    @Then("the packet shall be {word} by the filter")
+    public final void thenAcceptedOrDropped(final String outcome) {
+        if (outcome.equals("accepted")) {
+            assertTrue(accepted);
+        } else if (outcome.equals("dropped")) {
+            assertFalse(accepted);
+        } else {
+            throw new AssertionError("Expected accepted or dropped, got: " + outcome);
+        }
+    }
+
     @Then("the following attributes shall be returned:")
     public final void thenAttributes(final DataTable data) {
         final List<String> pairs = data.asList();
@@ -97,12 +124,31 @@ public final class DecodingSteps {
                     "for key: " + pair.key()));
     }
 
+    @Then("the decoded attributes shall be equal to the created attributes")
+    public final void thenAttributesEqual() {
+        assertEquals(factory.attributes(), attributes);
+        assertEquals(attributes, factory.attributes());
+        assertEquals(factory.attributes().hashCode(), attributes.hashCode());
+    }
+
     @Then("it contains the following answers:")
     public final void thenContainsAnswers(final DataTable data) {
-        final List<Record> records = Parser.parse(data, Record::new);
-        final List<DnsRecord> expecteds =
-                records.stream().map(r -> factory.newRecord(r, now)).collect(Collectors.toList());
-        assertDnsRecordsEquals(expecteds, msg.answers());
+        assertDnsRecordsEquals(expectedRecords(data), msg.answers());
+    }
+
+    @Then("its answers named {string} shall be:")
+    public final void thenContainsAnswersNamed(final String name, final DataTable data) {
+        assertDnsRecordsEquals(expectedRecords(data), msg.answers(DnsName.of(name)));
+    }
+
+    @Then("its answers of type {word} shall be:")
+    public final void thenContainsAnswersOfType(final String type, final DataTable data) {
+        assertDnsRecordsEquals(expectedRecords(data), msg.answers(typeForName(type)));
+    }
+
+    @Then("the records of the DNS message shall no longer be decodable")
+    public final void thenNotDecodable() {
+        assertThrows(IllegalStateException.class, msg::answers);
     }
 
     @Then("it contains no answer")
@@ -137,6 +183,30 @@ public final class DecodingSteps {
         assertEquals(flagsForName(flags), msg.flags());
     }
 
+    @When("the packet is filtered against the following names:")
+    public final void whenFiltered(final DataTable data) {
+        final QueryFilter filter = new QueryFilter();
+        filter.update(data.asList());
+        final ByteBuffer buffer = ByteBuffer.wrap(packet);
+        accepted = filter.accepts(buffer);
+        assertEquals(0, buffer.position());
+    }
+
+    @When("the DNS message is released and its buffer reused")
+    public final void whenReleased() {
+        msg.release();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0xFF);
+        }
+    }
+
+    @When("the DNS message is encoded and decoded")
+    public final void whenEncodedAndDecoded() {
+        packet = factory.message().encode();
+        whenDecodePacketDnsMessage();
+    }
+
     @When("the packet is decoded into attributes")
     public final void whenDecodePacketAttributes() {
         try (final MessageInputStream is = new MessageInputStream(packet)) {
@@ -149,8 +219,27 @@ public final class DecodingSteps {
         now = Clock.systemUTC().instant();
         try {
             msg = DnsMessage.decode(packet, now);
+            /* records are decoded when first accessed. */
+            msg.answers();
         } catch (final IOException e) {
             exceptions.thrown(e);
+        } catch (final UncheckedIOException e) {
+            msg = null;
+            exceptions.thrown(e.getCause());
         }
     }
+
+    @When("the packet is decoded into a DNS message from a reusable buffer")
+    public final void whenDecodePacketFromBuffer() throws IOException {
+        now = Clock.systemUTC().instant();
+        buffer = ByteBuffer.allocateDirect(MulticastDnsSd.MAX_MDNS_PACKET_SIZE);
+        buffer.put(packet).flip();
+        msg = DnsMessage.decode(buffer, now, null, null);
+    }
+
+    @When("the records of the DNS message are accessed")
+    public final void whenRecordsAccessed() {
+        msg.answers();
+    }
+
 }
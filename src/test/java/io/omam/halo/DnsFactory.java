@@ -42,10 +42,12 @@ import static io.omam.halo.MulticastDnsSd.TYPE_TXT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -64,6 +66,8 @@ public final class DnsFactory {
 
     private Builder builder;
 
+    private final List<DnsMessage> merged;
+
     private DnsRecord otherRecord;
 
     private DnsRecord record;
@@ -72,13 +76,14 @@ public final class DnsFactory {
      * Constructor.
      */
     public DnsFactory() {
-        // empty.
+        merged = new ArrayList<>();
     }
 
     @After
     public final void after() {
         attributes = null;
         builder = null;
+        merged.clear();
         otherRecord = null;
         record = null;
     }
@@ -90,6 +95,23 @@ public final class DnsFactory {
         records.forEach(r -> builder.addAdditional(newRecord(r, now)));
     }
 
+    @Given("another DNS query has been created")
+    public final void givenAnotherDnsQueryCreated() {
+        merged.add(builder.get());
+        builder = DnsMessage.query();
+    }
+
+    @Given("another DNS response has been created")
+    public final void givenAnotherDnsResponseCreated() {
+        merged.add(builder.get());
+        builder = DnsMessage.response();
+    }
+
+    @Given("the DNS message has been addressed to {word} port {int} with ID {int}")
+    public final void givenAddressed(final String address, final int port, final int id) {
+        builder.id((short) id).unicast(new InetSocketAddress(address, port));
+    }
+
     @Given("the following answers have been added:")
     public final void givenAnswersAdded(final DataTable data) {
         final List<Record> records = Parser.parse(data, Record::new);
@@ -197,7 +219,7 @@ public final class DnsFactory {
     }
 
     final DnsMessage message() {
-        return builder.get();
+        return merged.stream().reduce(DnsMessage::merge).map(m -> m.merge(builder.get())).orElseGet(builder);
     }
 
     final DnsQuestion newQuestion(final Question question) {
@@ -30,7 +30,12 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 package io.omam.halo;
 
+import static io.omam.halo.MulticastDnsSd.MAX_DNS_MESSAGE_SIZE;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import io.cucumber.datatable.DataTable;
 import io.cucumber.java.After;
@@ -47,6 +52,8 @@ public final class EncodingSteps {
 
     private final DnsFactory factory;
 
+    private List<byte[]> packets;
+
     public EncodingSteps(final DnsFactory aFactory) {
         factory = aFactory;
     }
@@ -54,6 +61,13 @@ public final class EncodingSteps {
     @After
     public final void after() {
         packet = null;
+        packets = null;
+    }
+
+    @Then("packet {int} shall contain the following bytes:")
+    public final void thenPacketBytes(final int index, final DataTable data) {
+        final byte[] bytes = Bytes.parse(data);
+        assertArrayEquals(bytes, packets.get(index - 1));
     }
 
     @Then("the packet shall contain the following bytes:")
@@ -62,12 +76,19 @@ public final class EncodingSteps {
         assertArrayEquals(bytes, packet);
     }
 
+    @Then("{int} packet\\(s) shall be produced")
+    public final void thenPackets(final int size) {
+        assertEquals(size, packets.size());
+    }
+
     @When("the attributes are encoded")
     public final void whenAttributesEncoded() {
-        try (final MessageOutputStream os = new MessageOutputStream()) {
-            AttributesCodec.encode(factory.attributes(), os);
-            packet = os.toByteArray();
-        }
+        final ByteBuffer buf = ByteBuffer.allocate(MAX_DNS_MESSAGE_SIZE);
+        final MessageOutputStream os = new MessageOutputStream(buf);
+        AttributesCodec.encode(factory.attributes(), os);
+        os.flip();
+        packet = new byte[buf.remaining()];
+        buf.get(packet);
     }
 
     @When("the DNS message is encoded")
@@ -75,4 +96,9 @@ public final class EncodingSteps {
         packet = factory.message().encode();
     }
 
+    @When("the DNS message is encoded in packets of at most {int} bytes")
+    public final void whenDnsMessageEncodedInPackets(final int maxSize) {
+        packets = factory.message().encode(maxSize);
+    }
+
 }
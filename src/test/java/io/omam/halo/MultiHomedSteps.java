@@ -0,0 +1,147 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.Engines.toHalo;
+import static io.omam.halo.HaloProperties.ANNOUNCEMENT_INTERVAL;
+import static io.omam.halo.HaloProperties.ANNOUNCEMENT_NUM;
+import static io.omam.halo.HaloProperties.MDNS_PORT;
+import static io.omam.halo.MulticastDnsSd.CLASS_IN;
+import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+/**
+ * Steps to tests a Halo instance attached to several networks.
+ */
+@SuppressWarnings("javadoc")
+public final class MultiHomedSteps {
+
+    private Halo halo;
+
+    private final StepTransport transport;
+
+    public MultiHomedSteps() {
+        halo = null;
+        transport = new StepTransport();
+    }
+
+    @After
+    public final void after() {
+        if (halo != null) {
+            halo.close();
+            halo = null;
+        }
+        transport.clear();
+    }
+
+    @Given("a Halo instance attached to {int} networks has been created")
+    public final void givenInstance(final int networks) {
+        transport.links(networks);
+        halo = new HaloImpl(Clock.systemDefaultZone(), transport);
+    }
+
+    @Given("the following services have been registered by the instance:")
+    public final void givenServicesRegistered(final DataTable data) throws IOException {
+        for (final ServiceDetails service : Parser.parse(data, ServiceDetails::new)) {
+            halo.register(toHalo(service));
+        }
+    }
+
+    /**
+     * Decodes the given datagram.
+     *
+     * @param datagram datagram
+     * @return the decoded DNS message
+     */
+    private static DnsMessage decode(final byte[] datagram) {
+        try {
+            return DnsMessage.decode(datagram, Instant.now());
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return the number of DNS responses sent so far, through any link.
+     */
+    private long responses() {
+        return transport.datagrams().stream().map(MultiHomedSteps::decode).filter(DnsMessage::isResponse).count();
+    }
+
+    @Then("a response shall have been sent only through link {int}")
+    public final void thenResponseSent(final int index) {
+        await().atMost(Duration.ofSeconds(2)).until(() -> !transport.datagrams().isEmpty());
+        /* no response shall be sent through another link while any other response could be sent. */
+        final Link expected = transport.links().get(index);
+        await()
+            .during(Duration.ofMillis(500))
+            .atMost(Duration.ofSeconds(2))
+            .until(() -> transport.through().stream().allMatch(expected::equals));
+        final List<byte[]> datagrams = transport.datagrams();
+        for (final byte[] datagram : datagrams) {
+            final DnsMessage msg = decode(datagram);
+            assertTrue(msg.isResponse(), msg::toString);
+            assertFalse(msg.answers().isEmpty(), msg::toString);
+        }
+    }
+
+    @When("a query for {string} is received through link {int}")
+    public final void whenQueryReceived(final String name, final int index) throws IOException {
+        /* wait for all the announcements to have been sent through every link. */
+        final long announcements = (long) ANNOUNCEMENT_NUM * transport.links().size();
+        await()
+            .atMost(ANNOUNCEMENT_INTERVAL.multipliedBy(ANNOUNCEMENT_NUM).plusSeconds(2))
+            .until(() -> responses() == announcements);
+        transport.clear();
+        final DnsMessage query =
+                DnsMessage.query().addQuestion(new DnsQuestion(name, TYPE_PTR, CLASS_IN)).get();
+        final InetSocketAddress sender =
+                new InetSocketAddress(InetAddress.getByName("10." + (index + 1) + ".0.2"), MDNS_PORT);
+        transport.receive(query.encode(), sender, index);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.MulticastDnsHelper.classForName;
+import static io.omam.halo.MulticastDnsHelper.typeForName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.omam.halo.SendQueue.Priority;
+
+/**
+ * Steps to tests the refreshing of cached records, driven by the clock of the cache steps.
+ */
+@SuppressWarnings("javadoc")
+public final class RefreshSteps {
+
+    /**
+     * Halo helper collecting the sent messages.
+     */
+    private static final class CollectingHelper extends HaloHelper {
+
+        /** sent messages. */
+        private final List<DnsMessage> sent;
+
+        CollectingHelper() {
+            sent = new ArrayList<>();
+        }
+
+        @Override
+        final void addResponseListener(final ResponseListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final Optional<DnsRecord> cachedRecord(final DnsName name, final short type, final short clazz) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final Collection<DnsRecord> cachedRecords(final DnsName name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final Instant now() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final void reannounce(final RegisteredServiceImpl service, final Duration ttl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final void removeResponseListener(final ResponseListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        final void sendMessage(final DnsMessage msg, final Priority priority) {
+            assertEquals(Priority.QUERY, priority);
+            sent.add(msg);
+        }
+
+    }
+
+    private final CacheSteps cacheSteps;
+
+    private final CollectingHelper helper;
+
+    private Refresher refresher;
+
+    private final CacheSnapshotSteps snapshotSteps;
+
+    public RefreshSteps(final CacheSteps someCacheSteps, final CacheSnapshotSteps someSnapshotSteps) {
+        cacheSteps = someCacheSteps;
+        snapshotSteps = someSnapshotSteps;
+        helper = new CollectingHelper();
+    }
+
+    @After
+    public final void after() {
+        if (refresher != null) {
+            refresher.close();
+            refresher = null;
+        }
+        helper.sent.clear();
+    }
+
+    @Given("a refresher has been created")
+    public final void givenRefresher() {
+        refresher = new Refresher(helper, cacheSteps::interests, cacheSteps.clock());
+        cacheSteps.listen(refresher::cancel);
+    }
+
+    @Then("the refresher shall have sent no query")
+    public final void thenNoQuery() {
+        assertTrue(helper.sent.isEmpty(), () -> "sent: " + helper.sent);
+    }
+
+    @Then("the refresher shall have sent a query for:")
+    public final void thenQuery(final DataTable data) {
+        final List<Question> expecteds = Parser.parse(data, Question::new);
+        assertEquals(1, helper.sent.size(), () -> "sent: " + helper.sent);
+        final List<DnsQuestion> actuals = helper.sent.get(0).questions();
+        assertEquals(expecteds.size(), actuals.size(), () -> "questions: " + actuals);
+        for (final Question expected : expecteds) {
+            final DnsName name = DnsName.of(expected.name());
+            final short type = typeForName(expected.type());
+            final short clazz = classForName(expected.clazz());
+            assertTrue(
+                    actuals
+                        .stream()
+                        .anyMatch(q -> q.dnsName().equals(name) && q.type() == type && q.clazz() == clazz),
+                    () -> expected.name() + " not in " + actuals);
+        }
+        helper.sent.clear();
+    }
+
+    @When("the cached records have been scheduled for refresh")
+    public final void whenScheduled() {
+        refresher.schedule(cacheSteps.cache().entries());
+    }
+
+    @When("the records loaded from the snapshot have been scheduled for refresh")
+    public final void whenLoadedScheduled() {
+        refresher.schedule(snapshotSteps.loaded());
+    }
+
+    @When("the refresher has run")
+    public final void whenRun() {
+        refresher.refresh();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+Copyright 2018 - 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.MulticastDnsSd.CLASS_IN;
+import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.omam.halo.HaloProperties.OverflowPolicy;
+import io.omam.halo.SendQueue.Priority;
+
+/**
+ * Steps to tests the queue of messages to send.
+ */
+@SuppressWarnings("javadoc")
+public final class SendingSteps {
+
+    private SendQueue queue;
+
+    public SendingSteps() {
+        // empty.
+    }
+
+    @After
+    public final void after() {
+        queue = null;
+    }
+
+    @Given("a sending queue of capacity {int} with overflow policy {word} has been created")
+    public final void givenSendQueue(final int capacity, final String policy) {
+        queue = new SendQueue(capacity, OverflowPolicy.valueOf(policy), Duration.ofMillis(50));
+    }
+
+    @Then("{int} message\\(s) shall have been deferred")
+    public final void thenDeferred(final int deferred) {
+        assertEquals(deferred, queue.deferred());
+    }
+
+    @Then("{int} message\\(s) shall have been dropped")
+    public final void thenDropped(final int dropped) {
+        assertEquals(dropped, queue.dropped());
+    }
+
+    @Then("the messages shall be sent in the following order:")
+    public final void thenSentInOrder(final DataTable data) throws InterruptedException {
+        final List<String> sent = new ArrayList<>();
+        while (queue.size() > 0) {
+            sent.add(queue.take().questions().get(0).name());
+        }
+        assertEquals(data.asMaps().stream().map(m -> m.get("name")).collect(Collectors.toList()), sent);
+    }
+
+    @When("the following messages are queued:")
+    public final void whenQueued(final DataTable data) {
+        queue(data, true);
+    }
+
+    @When("the following messages are queued without waiting:")
+    public final void whenQueuedWithoutWaiting(final DataTable data) {
+        queue(data, false);
+    }
+
+    private void queue(final DataTable data, final boolean mayWait) {
+        data.asMaps().forEach(m -> {
+            final DnsQuestion question = new DnsQuestion(m.get("name"), TYPE_PTR, CLASS_IN);
+            final Priority priority = Priority.valueOf(m.get("priority"));
+            queue.offer(DnsMessage.query().addQuestion(question).get(), priority, mayWait);
+        });
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport handing over the datagrams given by the steps, and recording the sent datagrams.
+ * <p>
+ * The transport has one socket per link: the links are either all attached to the same network, so that every
+ * multicast datagram is received through each of them, or each attached to its own network.
+ */
+final class StepTransport implements Transport {
+
+    /** links of the transport. */
+    private final List<Link> links;
+
+    /** listener to hand over received datagrams to, null until started. */
+    private volatile Listener listener;
+
+    /** latch the sending thread waits for, null if sending is not blocked. */
+    private volatile CountDownLatch gate;
+
+    /** latch counted down when the sending of a datagram has started. */
+    private volatile CountDownLatch started;
+
+    /** sent datagrams. */
+    private final List<byte[]> sent;
+
+    /** links through which each datagram has been sent. */
+    private final List<Link> through;
+
+    /**
+     * Constructor.
+     */
+    StepTransport() {
+        links = new ArrayList<>();
+        listener = null;
+        gate = null;
+        started = null;
+        sent = new ArrayList<>();
+        through = new ArrayList<>();
+    }
+
+    /**
+     * Waits until the sending of a datagram has started, sending having been {@link #block() blocked}.
+     *
+     * @return true if the sending of a datagram has started before timing out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    final boolean awaitSending() throws InterruptedException {
+        return started.await(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Blocks the sending of datagrams until {@link #unblock()}.
+     */
+    final void block() {
+        gate = new CountDownLatch(1);
+        started = new CountDownLatch(1);
+    }
+
+    /**
+     * Forgets the datagrams sent so far.
+     */
+    final synchronized void clear() {
+        sent.clear();
+        through.clear();
+    }
+
+    @Override
+    public final void close() {
+        listener = null;
+    }
+
+    /**
+     * @return the sent datagrams, in the order they have been sent.
+     */
+    final synchronized List<byte[]> datagrams() {
+        return new ArrayList<>(sent);
+    }
+
+    @Override
+    public final List<Link> links() {
+        return Collections.unmodifiableList(links);
+    }
+
+    /**
+     * Sets the number of links of this transport, each attached to its own network. This transport must not have
+     * been started.
+     *
+     * @param count number of links
+     */
+    final void links(final int count) {
+        links.clear();
+        for (int i = 0; i < count; i++) {
+            links.add(link(i, "10." + (i + 1) + ".0.1", 16));
+        }
+    }
+
+    /**
+     * Hands over the given datagram to the listener, as if received through the given link of this transport: like
+     * a datagram socket, the datagram is truncated to the size of the buffer of the listener.
+     *
+     * @param bytes datagram
+     * @param sender address of the sender of the datagram
+     * @param index index of the link
+     */
+    final void receive(final byte[] bytes, final InetSocketAddress sender, final int index) {
+        final ByteBuffer buf = listener.acquire();
+        if (buf == null) {
+            listener.dropped(sender);
+        } else {
+            buf.put(bytes, 0, Math.min(bytes.length, buf.remaining())).flip();
+            listener.received(buf, sender, links.get(index));
+        }
+    }
+
+    @Override
+    public final void send(final Link aLink, final ByteBuffer datagram, final InetSocketAddress target) {
+        final CountDownLatch g = gate;
+        if (g != null) {
+            started.countDown();
+            try {
+                g.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        final byte[] bytes = new byte[datagram.remaining()];
+        datagram.duplicate().get(bytes);
+        synchronized (this) {
+            sent.add(bytes);
+            through.add(aLink);
+        }
+    }
+
+    /**
+     * @return the IDs of the sent DNS messages, in the order they have been sent.
+     */
+    final synchronized List<Short> sent() {
+        final List<Short> ids = new ArrayList<>();
+        for (final byte[] bytes : sent) {
+            ids.add(Short.valueOf(ByteBuffer.wrap(bytes).getShort()));
+        }
+        return ids;
+    }
+
+    /**
+     * Sets the number of links of this transport, all attached to the same network. This transport must not have
+     * been started.
+     *
+     * @param count number of links
+     */
+    final void sockets(final int count) {
+        links.clear();
+        for (int i = 0; i < count; i++) {
+            links.add(link(i, "10.0.0." + (i + 1), 8));
+        }
+    }
+
+    @Override
+    public final void start(final Listener aListener) {
+        listener = aListener;
+    }
+
+    /**
+     * @return the links through which the sent datagrams have been sent, in the order they have been sent.
+     */
+    final synchronized List<Link> through() {
+        return new ArrayList<>(through);
+    }
+
+    /**
+     * Unblocks the sending of datagrams.
+     */
+    final void unblock() {
+        final CountDownLatch g = gate;
+        if (g != null) {
+            gate = null;
+            g.countDown();
+        }
+    }
+
+    /**
+     * Returns a new link.
+     *
+     * @param index index of the link
+     * @param address address of this host on the link
+     * @param prefix network prefix length
+     * @return a new link
+     */
+    private static Link link(final int index, final String address, final int prefix) {
+        try {
+            return new Link("step" + index, index + 1, StandardProtocolFamily.INET, 1500,
+                            Collections.singletonMap(InetAddress.getByName(address), Integer.valueOf(prefix)));
+        } catch (final UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -36,7 +36,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import io.cucumber.datatable.DataTable;
 import io.cucumber.java.After;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
@@ -70,11 +74,32 @@ public final class TtlSteps {
         assertFalse(factory.record().isExpired(now));
     }
 
+    @Then("the DNS record shall be refreshed at:")
+    public final void thenRefreshTimesAre(final DataTable data) {
+        final List<Instant> expected = data.asList().stream().map(Instant::parse).collect(Collectors.toList());
+        final DnsRecord record = factory.record();
+        final List<Instant> actual = IntStream
+            .range(0, DnsRecord.REFRESH_STEPS)
+            .mapToObj(i -> Instant.ofEpochMilli(record.refreshTime(i)))
+            .collect(Collectors.toList());
+        assertEquals(expected, actual);
+    }
+
     @Then("the DNS record remaining TTL shall be '{word}'")
     public final void thenRemainingTtlIs(final String ttl) {
         assertEquals(Duration.parse(ttl), factory.record().remainingTtl(now));
     }
 
+    @Then("the DNS record TTL shall be '{word}'")
+    public final void thenTtlIs(final String ttl) {
+        assertEquals(Duration.parse(ttl), factory.record().ttl());
+    }
+
+    @When("the TTL of the DNS record is set to '{word}'")
+    public final void whenTtlSet(final String ttl) {
+        factory.record().setTtl(Duration.parse(ttl));
+    }
+
     @When("the time is '{word}'")
     public final void whenTimeIs(final String time) {
         now = Instant.parse(time);
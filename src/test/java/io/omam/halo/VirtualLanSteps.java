@@ -0,0 +1,305 @@
+/*
+Copyright 2020 Cedric Liegeois
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the name of the copyright holder nor the names of other
+      contributors may be used to endorse or promote products derived
+      from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package io.omam.halo;
+
+import static io.omam.halo.Assert.assertServicesEquals;
+import static io.omam.halo.Engines.toHalo;
+import static io.omam.halo.HaloProperties.IPV4_SOA;
+import static io.omam.halo.MulticastDnsSd.CLASS_IN;
+import static io.omam.halo.MulticastDnsSd.TYPE_PTR;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+/**
+ * Steps to tests Halo instances connected through a virtual LAN.
+ */
+@SuppressWarnings("javadoc")
+public final class VirtualLanSteps {
+
+    /** port of the legacy resolver. */
+    private static final int LEGACY_PORT = 49152;
+
+    /** ID of the queries sent by the legacy resolver. */
+    private static final short LEGACY_ID = 0x1234;
+
+    private VirtualLan lan;
+
+    private Transport resolver;
+
+    private final List<byte[]> resolverReceived;
+
+    private final List<Halo> instances;
+
+    private final List<RegisteredService> registered;
+
+    private final List<Transport> transports;
+
+    public VirtualLanSteps() {
+        lan = null;
+        instances = new ArrayList<>();
+        registered = new ArrayList<>();
+        resolver = null;
+        resolverReceived = Collections.synchronizedList(new ArrayList<>());
+        transports = new ArrayList<>();
+    }
+
+    @After
+    public final void after() {
+        instances.forEach(Halo::close);
+        instances.clear();
+        registered.clear();
+        if (resolver != null) {
+            resolver.close();
+            resolver = null;
+        }
+        resolverReceived.clear();
+        transports.clear();
+        if (lan != null) {
+            lan.close();
+            lan = null;
+        }
+    }
+
+    @Given("{int} Halo instance(s) has/have joined the virtual LAN")
+    public final void givenInstancesJoined(final int count) {
+        assertNotNull(lan);
+        for (int i = 0; i < count; i++) {
+            final Transport transport = lan.join();
+            transports.add(transport);
+            instances.add(new HaloImpl(Clock.systemDefaultZone(), transport));
+        }
+    }
+
+    @Given("a legacy resolver has joined the virtual LAN")
+    public final void givenLegacyResolver() {
+        resolver = lan.join(LEGACY_PORT);
+        resolver.start(new Transport.Listener() {
+
+            @Override
+            public final ByteBuffer acquire() {
+                return ByteBuffer.allocate(MulticastDnsSd.MAX_MDNS_PACKET_SIZE + 1);
+            }
+
+            @Override
+            public final void dropped(final InetSocketAddress sender) {
+                // ignored.
+            }
+
+            @Override
+            public final void linkAdded(final Link link) {
+                // ignored.
+            }
+
+            @Override
+            public final void linkRemoved(final Link link) {
+                // ignored.
+            }
+
+            @Override
+            public final void linkUpdated(final Link previous, final Link current) {
+                // ignored.
+            }
+
+            @SuppressWarnings("synthetic-access")
+            @Override
+            public final void received(final ByteBuffer buffer, final InetSocketAddress sender, final Link link) {
+                final byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                resolverReceived.add(bytes);
+            }
+
+            @Override
+            public final void release(final ByteBuffer buffer) {
+                // ignored.
+            }
+        });
+    }
+
+    @Given("the following services have been registered by instance {int} with its address:")
+    public final void givenServicesRegisteredWithAddress(final int instance, final DataTable data)
+            throws IOException {
+        final Halo halo = instance(instance);
+        final Inet4Address address = (Inet4Address) address(instance);
+        for (final ServiceDetails service : Parser.parse(data, ServiceDetails::new)) {
+            registered
+                .add(halo
+                    .register(RegisterableService
+                        .create(service.instanceName(), service.registrationType(), service.port())
+                        .attributes(toHalo(service.text()))
+                        .ipv4Address(address)
+                        .get()));
+        }
+    }
+
+    @Given("a virtual LAN with a latency of {string} and a loss of {int}% has been created")
+    public final void givenVirtualLan(final String latency, final int loss) {
+        lan = new VirtualLan(Duration.parse(latency), loss / 100.0);
+    }
+
+    @Then("datagrams shall have been sent and lost on the virtual LAN but none delivered")
+    public final void thenLost() {
+        assertTrue(lan.sent() > 0);
+        assertTrue(lan.lost() > 0);
+        assertEquals(0, lan.delivered());
+    }
+
+    @Then("{int} oversized datagram(s) shall have been dropped by the virtual LAN")
+    public final void thenOversized(final int count) {
+        await().atMost(Duration.ofSeconds(2)).until(() -> lan.oversized() == count);
+    }
+
+    @Then("the legacy resolver shall receive a response to its query for {string}")
+    public final void thenLegacyResponse(final String name) {
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+            final List<byte[]> received;
+            synchronized (resolverReceived) {
+                received = new ArrayList<>(resolverReceived);
+            }
+            boolean found = false;
+            for (final byte[] bytes : received) {
+                final DnsMessage msg = DnsMessage.decode(bytes, Instant.now());
+                found |= msg.isResponse()
+                    && msg.id() == LEGACY_ID
+                    && msg.answers().stream().anyMatch(a -> a.name().equalsIgnoreCase(name));
+            }
+            assertTrue(found);
+        });
+    }
+
+    @Then("no received datagram shall have been dropped by instance {int}")
+    public final void thenNoneDropped(final int instance) {
+        final Statistics statistics = instance(instance).statistics();
+        assertEquals(0, statistics.droppedDatagrams(), statistics::toString);
+        assertEquals(0, statistics.pendingDatagrams(), statistics::toString);
+    }
+
+    @Then("the service {string} resolved by instance {int} shall have the address of instance {int}")
+    public final void thenServiceAddress(final String service, final int instance, final int other) {
+        final int firstDot = service.indexOf('.');
+        final String instanceName = service.substring(0, firstDot);
+        final String registrationType = service.substring(firstDot + 1);
+        final InetAddress expected = address(other);
+        await()
+            .atMost(Duration.ofSeconds(6))
+            .untilAsserted(() -> assertEquals(Optional.of(expected), instance(instance)
+                .resolve(instanceName, registrationType)
+                .flatMap(ResolvedService::ipv4Address)));
+    }
+
+    @Then("no service {string} shall be resolved by instance {int} within {string}")
+    public final void thenServiceNotResolved(final String service, final int instance, final String timeout) {
+        final int firstDot = service.indexOf('.');
+        final Optional<ResolvedService> resolved = instance(instance)
+            .resolve(service.substring(0, firstDot), service.substring(firstDot + 1), Duration.parse(timeout));
+        assertFalse(resolved.isPresent());
+    }
+
+    @Then("the following services shall be resolved by instance {int}:")
+    public final void thenServicesResolved(final int instance, final DataTable data) {
+        final List<ServiceDetails> expecteds = Parser.parse(data, ServiceDetails::new);
+        final Halo halo = instance(instance);
+        await().atMost(Duration.ofSeconds(expecteds.size() * 6)).untilAsserted(() -> {
+            final List<ResolvedService> actuals = new ArrayList<>();
+            for (final ServiceDetails expected : expecteds) {
+                halo.resolve(expected.instanceName(), expected.registrationType()).ifPresent(actuals::add);
+            }
+            assertServicesEquals(expecteds, actuals);
+        });
+    }
+
+    @When("a datagram of {int} bytes is sent by instance {int}")
+    public final void whenDatagramSent(final int size, final int instance) throws IOException {
+        final Transport transport = transports.get(instance - 1);
+        transport.send(transport.links().get(0), ByteBuffer.allocate(size), IPV4_SOA);
+    }
+
+    @When("the legacy resolver queries {string}")
+    public final void whenLegacyQuery(final String name) throws IOException {
+        final DnsMessage query =
+                DnsMessage.query().id(LEGACY_ID).addQuestion(new DnsQuestion(name, TYPE_PTR, CLASS_IN)).get();
+        resolver.send(resolver.links().get(0), ByteBuffer.wrap(query.encode()), IPV4_SOA);
+    }
+
+    @When("the address of instance {int} changes")
+    public final void whenAddressChanges(final int instance) {
+        lan.renumber(transports.get(instance - 1));
+    }
+
+    @When("the attributes of the service {string} registered by instance {int} are updated to {string}")
+    public final void whenAttributesUpdated(final String service, final int instance, final String text)
+            throws IOException {
+        final RegisteredService rs = registered
+            .stream()
+            .filter(r -> r.name().equals(service + "local."))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+        rs.changeAttributes(toHalo(text));
+    }
+
+    @When("the following services are registered by instance {int}:")
+    public final void whenServicesRegistered(final int instance, final DataTable data) throws IOException {
+        final Halo halo = instance(instance);
+        for (final ServiceDetails service : Parser.parse(data, ServiceDetails::new)) {
+            registered.add(halo.register(toHalo(service)));
+        }
+    }
+
+    private InetAddress address(final int instance) {
+        return transports.get(instance - 1).links().get(0).addresses().iterator().next();
+    }
+
+    private Halo instance(final int instance) {
+        return instances.get(instance - 1);
+    }
+
+}
@@ -38,3 +38,18 @@ Feature: Service attributes
       | Bar=bar     |
       | EmptyValue= |
       | NoValue     |
+
+  Scenario: Decoded attributes equal created attributes
+    Given attributes are created with the following key and value pairs:
+      | NoValue     |
+      | EmptyValue= |
+      | Foo=thing   |
+      | Bar=bar     |
+    And the following packet has been received:
+      | 0x7  | 0x42 | 0x61 | 0x72 | 0x3d | 0x62 | 0x61 | 0x72 |
+      | 0x9  | 0x46 | 0x6f | 0x6f | 0x3d | 0x74 | 0x68 | 0x69 |
+      | 0x6e | 0x67 | 0x7  | 0x4e | 0x6f | 0x56 | 0x61 | 0x6c |
+      | 0x75 | 0x65 | 0xb  | 0x45 | 0x6d | 0x70 | 0x74 | 0x79 |
+      | 0x56 | 0x61 | 0x6c | 0x75 | 0x65 | 0x3d |      |      |
+    When the packet is decoded into attributes
+    Then the decoded attributes shall be equal to the created attributes
@@ -0,0 +1,76 @@
+Feature: Cache snapshot
+
+  Background:
+    Given a cache has been created
+    And a cache snapshot has been created
+
+  Scenario: Cache saved and reloaded
+    When the following records are cached:
+      | serviceName        | recordType | recordClass | ttl  | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |             |
+      | living.local.      | A          | IN          | PT2M |                                | 192.168.1.2 |
+    And the cache snapshot is saved
+    And the cache has been cleared
+    And 30 seconds have elapsed
+    And the cache snapshot is loaded
+    Then the following records shall have been loaded from the snapshot:
+      | serviceName        | ttl      |
+      | _music._tcp.local. | PT59M30S |
+      | living.local.      | PT1M30S  |
+    And the cache shall contain the following records:
+      | serviceName        | recordType | recordClass | ttl  | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |             |
+      | living.local.      | A          | IN          | PT2M |                                | 192.168.1.2 |
+
+  Scenario: Records expired since the cache was saved dropped on reload
+    When the following records are cached:
+      | serviceName        | recordType | recordClass | ttl  | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |             |
+      | living.local.      | A          | IN          | PT2M |                                | 192.168.1.2 |
+    And the cache snapshot is saved
+    And the cache has been cleared
+    And 150 seconds have elapsed
+    And the cache snapshot is loaded
+    Then the following records shall have been loaded from the snapshot:
+      | serviceName        | ttl      |
+      | _music._tcp.local. | PT57M30S |
+    And the cache shall contain the following records:
+      | serviceName        | recordType | recordClass | ttl  | target                         |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |
+
+  Scenario: Missing snapshot file ignored
+    When the cache snapshot is loaded
+    Then no record shall have been loaded from the snapshot
+    And the cache shall contain no record
+
+  Scenario: Snapshot file which is not a cache snapshot ignored
+    Given the following bytes have been written to the snapshot file:
+      | 0x48 | 0x41 | 0x4c | 0x4c | 0x4f | 0x20 | 0x57 | 0x4f | 0x52 | 0x4c | 0x44 | 0x0a |
+    When the cache snapshot is loaded
+    Then no record shall have been loaded from the snapshot
+    And the cache shall contain no record
+
+  Scenario: Truncated snapshot file ignored as a whole
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    And the cache snapshot is saved
+    And the cache has been cleared
+    And the following bytes have been appended to the snapshot file:
+      | 0x00 | 0x00 | 0x00 | 0x10 | 0x00 | 0x00 | 0x84 | 0x00 |
+    And the cache snapshot is loaded
+    Then no record shall have been loaded from the snapshot
+    And the cache shall contain no record
+
+  Scenario: Snapshot file with a malformed record ignored as a whole
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    And the cache snapshot is saved
+    And the cache has been cleared
+    And the following bytes have been appended to the snapshot file:
+      | 0x00 | 0x00 | 0x00 | 0x0c | 0x00 | 0x00 | 0x84 | 0x00 |
+      | 0x00 | 0x00 | 0x00 | 0x01 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the cache snapshot is loaded
+    Then no record shall have been loaded from the snapshot
+    And the cache shall contain no record
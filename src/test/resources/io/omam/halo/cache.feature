@@ -0,0 +1,251 @@
+Feature: DNS record cache
+
+  Scenario: Cached records are indexed by name and by type
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName                    | recordType | recordClass | ttl  | target                         | address     | port | server        |
+      | _music._tcp.local.             | PTR        | IN          | PT1H | Living Room._music._tcp.local. |             |      |               |
+      | Living Room._music._tcp.local. | SRV        | IN          | PT1H |                                |             | 9009 | living.local. |
+      | living.local.                  | A          | IN          | PT2M |                                | 192.168.1.2 |      |               |
+      | bedroom.local.                 | A          | IN          | PT2M |                                | 192.168.1.3 |      |               |
+    Then the cached records named "_music._tcp.local." shall be:
+      | serviceName        | recordType | recordClass | ttl  | target                         |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |
+    And the cached records of type A shall be:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | living.local.  | A          | IN          | PT2M | 192.168.1.2 |
+      | bedroom.local. | A          | IN          | PT2M | 192.168.1.3 |
+
+  Scenario: Cached record replaced by the same record
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+      | LIVING.local. | A          | IN          | PT1H | 192.168.1.2 |
+    Then the cache shall contain the following records:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | LIVING.local. | A          | IN          | PT1H | 192.168.1.2 |
+    And the cached records named "living.local." shall be:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | LIVING.local. | A          | IN          | PT1H | 192.168.1.2 |
+    And the cached records of type A shall be:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | LIVING.local. | A          | IN          | PT1H | 192.168.1.2 |
+
+  Scenario: Records with the same name, type and class cached together
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName        | recordType | recordClass | ttl  | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |             |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Bedroom._music._tcp.local.     |             |
+      | living.local.      | A          | IN          | PT2M |                                | 192.168.1.2 |
+      | LIVING.local.      | A          | IN          | PT2M |                                | 192.168.1.4 |
+    Then the cached records named "_music._tcp.local." shall be:
+      | serviceName        | recordType | recordClass | ttl  | target                         |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Living Room._music._tcp.local. |
+      | _music._tcp.local. | PTR        | IN          | PT1H | Bedroom._music._tcp.local.     |
+    And the cached records of type A shall be:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+      | LIVING.local. | A          | IN          | PT2M | 192.168.1.4 |
+
+  Scenario: Only the expired record of a name, type and class reaped
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+      | living.local. | A          | IN          | PT1H | 192.168.1.4 |
+    And the following records are expired:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    And 2 seconds have elapsed
+    And the cache is cleaned
+    Then the cache shall contain the following records:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT1H | 192.168.1.4 |
+
+  Scenario: All cached records of a name removed
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName    | recordType | recordClass | ttl  | address     | text    |
+      | living.local.  | A          | IN          | PT2M | 192.168.1.2 |         |
+      | living.local.  | TXT        | IN          | PT1H |             | foo=bar |
+      | bedroom.local. | A          | IN          | PT2M | 192.168.1.3 |         |
+    And the records named "Living.local." are removed
+    Then the cache shall contain the following records:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | bedroom.local. | A          | IN          | PT2M | 192.168.1.3 |
+    And the cached records named "living.local." shall be:
+      | serviceName | recordType | recordClass | ttl | address |
+    And the cached records of type A shall be:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | bedroom.local. | A          | IN          | PT2M | 192.168.1.3 |
+    And the cached records of type TXT shall be:
+      | serviceName | recordType | recordClass | ttl | text |
+
+  Scenario: Expired records reaped when the cache is cleaned
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | living.local.  | A          | IN          | PT2M | 192.168.1.2 |
+      | bedroom.local. | A          | IN          | PT1H | 192.168.1.3 |
+    And 119 seconds have elapsed
+    And the cache is cleaned
+    Then the cache shall contain the following records:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | living.local.  | A          | IN          | PT2M | 192.168.1.2 |
+      | bedroom.local. | A          | IN          | PT1H | 192.168.1.3 |
+    When 1 second has elapsed
+    And the cache is cleaned
+    Then the cache shall contain the following records:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | bedroom.local. | A          | IN          | PT1H | 192.168.1.3 |
+
+  Scenario: Expired record reaped ahead of its original deadline
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT1H | 192.168.1.2 |
+    And the following records are expired:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT1H | 192.168.1.2 |
+    And the cache is cleaned
+    Then the cache shall contain the following records:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT1S | 192.168.1.2 |
+    When 2 seconds have elapsed
+    And the cache is cleaned
+    Then the cache shall contain no record
+
+  Scenario: Replaced record rescheduled at its new expiration time
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    And 60 seconds have elapsed
+    And the following records are cached:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    And 61 seconds have elapsed
+    And the cache is cleaned
+    Then the cache shall contain the following records:
+      | serviceName   | recordType | recordClass | ttl  | address     |
+      | living.local. | A          | IN          | PT2M | 192.168.1.2 |
+    When 60 seconds have elapsed
+    And the cache is cleaned
+    Then the cache shall contain no record
+
+  Scenario: Least recently used records evicted when the cache is full
+    Given a cache of capacity 10 records has been created
+    When the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n02.local.  | PTR        | IN          | PT1H | x.local. |
+      | n03.local.  | PTR        | IN          | PT1H | x.local. |
+      | n04.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+    And the following records are looked up:
+      | serviceName | recordType | recordClass |
+      | n01.local.  | PTR        | IN          |
+    And the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    Then the cache shall contain the following records:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n04.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    And 2 records shall have been evicted
+
+  Scenario: Look-up of any type counted as a use of the record found
+    Given a cache of capacity 10 records has been created
+    When the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n02.local.  | PTR        | IN          | PT1H | x.local. |
+      | n03.local.  | PTR        | IN          | PT1H | x.local. |
+      | n04.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+    And the following records are looked up:
+      | serviceName | recordType | recordClass |
+      | n01.local.  | ANY        | IN          |
+    And the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    Then the cache shall contain the following records:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n04.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    And 2 records shall have been evicted
+
+  Scenario: Records whose name is of no interest evicted first
+    Given a cache of capacity 10 records has been created
+    And the following names are of interest:
+      | n02.local. |
+      | n03.local. |
+    When the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n02.local.  | PTR        | IN          | PT1H | x.local. |
+      | n03.local.  | PTR        | IN          | PT1H | x.local. |
+      | n04.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+    And the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    Then the cache shall contain the following records:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n02.local.  | PTR        | IN          | PT1H | x.local. |
+      | n03.local.  | PTR        | IN          | PT1H | x.local. |
+      | n05.local.  | PTR        | IN          | PT1H | x.local. |
+      | n06.local.  | PTR        | IN          | PT1H | x.local. |
+      | n07.local.  | PTR        | IN          | PT1H | x.local. |
+      | n08.local.  | PTR        | IN          | PT1H | x.local. |
+      | n09.local.  | PTR        | IN          | PT1H | x.local. |
+      | n10.local.  | PTR        | IN          | PT1H | x.local. |
+      | n11.local.  | PTR        | IN          | PT1H | x.local. |
+    And 2 records shall have been evicted
+
+  Scenario: Cache look-ups counted
+    Given a cache has been created
+    When the following records are cached:
+      | serviceName | recordType | recordClass | ttl  | target   |
+      | n01.local.  | PTR        | IN          | PT1H | x.local. |
+      | n02.local.  | PTR        | IN          | PT1H | x.local. |
+    And the following records are looked up:
+      | serviceName | recordType | recordClass |
+      | n01.local.  | PTR        | IN          |
+      | N02.local.  | PTR        | IN          |
+      | n03.local.  | PTR        | IN          |
+      | n01.local.  | PTR        | IN          |
+    Then 3 look-ups shall have found a record
+    And 1 look-up shall have found no record
+    And 0 records shall have been evicted
@@ -0,0 +1,135 @@
+Feature: Channel
+
+  Received datagrams are handed over by the transport to worker threads which decode them into DNS messages
+  and dispatch them: messages from the same host are dispatched in the order they have been received, and
+  datagrams are dropped rather than blocking the transport when the workers cannot keep up.
+  A multicast datagram is received through every socket attached to the network it has been sent on: its copies
+  received through other sockets shortly after are ignored, but not a retransmission of the same datagram.
+  Messages to send are queued until the sending thread can send them: when the queue is full, messages are either
+  dropped or the sending thread waits for room, but the workers never wait.
+
+  Scenario: Received datagrams decoded and dispatched in order
+    Given a channel has been created
+    When 50 DNS responses are received from 10.0.0.2
+    Then the DNS responses which have not been dropped shall have been dispatched in the order they have been received
+    And no received datagram shall have been dropped
+
+  Scenario: Malformed datagram skipped by the workers
+    Given a channel has been created
+    When 2 DNS responses are received from 10.0.0.2
+    And the following bytes are received from 10.0.0.2:
+      | 0x00 | 0x00 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x01 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And 2 DNS responses are received from 10.0.0.2
+    Then the DNS responses which have not been dropped shall have been dispatched in the order they have been received
+    And no received datagram shall have been dropped
+
+  Scenario: Datagram larger than the receiving buffer dropped rather than decoded truncated
+    Given a channel has been created
+    When 1 DNS response is received from 10.0.0.2
+    And a datagram of 9001 bytes is received from 10.0.0.2
+    And 1 DNS response is received from 10.0.0.2
+    Then 1 received datagram shall have been dropped as oversized
+    And the DNS responses which have not been dropped shall have been dispatched in the order they have been received
+    And no received datagram shall have been dropped
+
+  Scenario: Received datagrams dropped when the workers cannot keep up
+    Given a channel has been created
+    And the dispatching of received messages has been blocked
+    When 1 DNS response is received from 10.0.0.2
+    And the dispatching of the first received message has started
+    And 200 DNS responses are received from 10.0.0.2
+    Then the DNS responses exceeding the capacity of the decoding queue shall have been dropped
+    When the dispatching of received messages is unblocked
+    Then the DNS responses which have not been dropped shall have been dispatched in the order they have been received
+
+  Scenario: Distinct datagrams with the same hash code not mistaken for copies
+    Given a channel has been created
+    When the following bytes are received from 10.0.0.2:
+      | 0x00 | 0x01 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the following bytes are received from 10.0.0.2:
+      | 0x1F | 0x00 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    Then the DNS messages with the following IDs shall have been dispatched in order:
+      | 1    |
+      | 7936 |
+    And 0 received datagram shall have been ignored
+
+  Scenario: Copies of a datagram received through other sockets ignored
+    Given a channel receiving through 2 sockets on the same link has been created
+    When the following bytes are received from 10.0.0.2 through socket 0:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the following bytes are received from 10.0.0.2 through socket 1:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    Then the DNS messages with the following IDs shall have been dispatched in order:
+      | 2 |
+    And 1 received datagram shall have been ignored
+
+  Scenario: Retransmission of a datagram through the same socket accepted
+    Given a channel receiving through 2 sockets on the same link has been created
+    When the following bytes are received from 10.0.0.2 through socket 0:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the following bytes are received from 10.0.0.2 through socket 1:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the following bytes are received from 10.0.0.2 through socket 0:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And the following bytes are received from 10.0.0.2 through socket 1:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    Then the DNS messages with the following IDs shall have been dispatched in order:
+      | 2 |
+      | 2 |
+    And 2 received datagrams shall have been ignored
+
+  Scenario: Copy of a datagram received through another socket after the receiving window accepted
+    Given a channel receiving through 2 sockets on the same link has been created
+    When the following bytes are received from 10.0.0.2 through socket 0:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    And 100 milliseconds have elapsed
+    And the following bytes are received from 10.0.0.2 through socket 1:
+      | 0x00 | 0x02 | 0x84 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 | 0x00 |
+    Then the DNS messages with the following IDs shall have been dispatched in order:
+      | 2 |
+      | 2 |
+    And 0 received datagram shall have been ignored
+
+  Scenario: Oldest messages to send dropped when the sending queue is full
+    Given a channel with a sending queue of capacity 3 and overflow policy DROP_OLDEST has been created
+    And the sending of messages has been blocked
+    When 1 DNS query is sent
+    And the sending of the first message has started
+    And 6 DNS queries are sent
+    Then 3 messages to send shall have been dropped
+    And 0 message to send shall have been deferred
+    When the sending of messages is unblocked
+    Then the DNS messages with the following IDs shall have been sent in order:
+      | 1 |
+      | 5 |
+      | 6 |
+      | 7 |
+
+  Scenario: Messages to send deferred then dropped when the sending queue is full
+    Given a channel with a sending queue of capacity 1 and overflow policy BLOCK has been created
+    And the sending of messages has been blocked
+    When 1 DNS query is sent
+    And the sending of the first message has started
+    And 2 DNS queries are sent
+    Then 1 message to send shall have been deferred
+    And 1 message to send shall have been dropped
+    When the sending of messages is unblocked
+    Then the DNS messages with the following IDs shall have been sent in order:
+      | 1 |
+      | 2 |
+
+  Scenario: Messages to send by the workers dropped without waiting when the sending queue is full
+    Given a channel with a sending queue of capacity 1 and overflow policy BLOCK has been created
+    And each dispatched message is answered with priority QUERY by the dispatching thread
+    And the sending of messages has been blocked
+    When 1 DNS query is sent
+    And the sending of the first message has started
+    And 1 DNS query is sent
+    And 1 DNS response is received from 10.0.0.2
+    Then the DNS responses which have not been dropped shall have been dispatched in the order they have been received
+    And 1 message to send shall have been dropped
+    And 0 message to send shall have been deferred
+    When the sending of messages is unblocked
+    Then the DNS messages with the following IDs shall have been sent in order:
+      | 1 |
+      | 2 |
@@ -0,0 +1,20 @@
+Feature: DNS names
+
+  DNS names are compared ignoring case, and the same name is usually represented by the same instance.
+
+  Scenario Outline: Names differing only in case compared equal
+    When the DNS names "<first>" and "<second>" are obtained
+    Then the DNS names shall be equal
+
+    Examples: 
+      | first                          | second                         |
+      | living.local.                  | LIVING.LOCAL.                  |
+      | Living Room._music._tcp.local. | living room._MUSIC._Tcp.local. |
+
+  Scenario: Names differing by more than case compared not equal
+    When the DNS names "living.local." and "bedroom.local." are obtained
+    Then the DNS names shall not be equal
+
+  Scenario: Same name obtained twice interned
+    When the DNS names "Living Room._music._tcp.local." and "Living Room._music._tcp.local." are obtained
+    Then the DNS names shall be the same instance
@@ -0,0 +1,12 @@
+Feature: Multi-homed host
+
+  A host attached to several networks answers a query only through the link the query has been received
+  through, since the addresses of its services on one network may be unreachable from the others.
+
+  Scenario: Response sent only through the link the query has been received through
+    Given a Halo instance attached to 2 networks has been created
+    And the following services have been registered by the instance:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    When a query for "_music._tcp.local." is received through link 1
+    Then a response shall have been sent only through link 1
@@ -0,0 +1,52 @@
+Feature: Query filter
+
+  Received queries which do not ask for any name the responder is authoritative for are dropped before being
+  decoded.
+
+  Scenario: Query for a known name is accepted ignoring case
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  | 0x0  | 0x0  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0xff | 0x0  | 0x1  |      |
+    When the packet is filtered against the following names:
+      | other.local.   |
+      | FOO.Bar.local. |
+    Then the packet shall be accepted by the filter
+
+  Scenario: Query for unknown names is dropped
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  | 0x0  | 0x0  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0xff | 0x0  | 0x1  |      |
+    When the packet is filtered against the following names:
+      | other.local. |
+      | bar.local.   |
+    Then the packet shall be dropped by the filter
+
+  # second question is baz + pointer to bar.local.
+  Scenario: Compressed question name is matched
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x0  | 0x2  | 0x0  | 0x0  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0xff | 0x0  | 0x1  | 0x3  |
+      | 0x62 | 0x61 | 0x7a | 0xc0 | 0x10 | 0x0  | 0x21 | 0x0  |
+      | 0x1  |      |      |      |      |      |      |      |
+    When the packet is filtered against the following names:
+      | baz.bar.local |
+    Then the packet shall be accepted by the filter
+
+  Scenario: Response is always accepted
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0x21 | 0x0  | 0x1  | 0x0  |
+      | 0x0  | 0xa  | 0x8c | 0x0  | 0x12 | 0x0  | 0x9a | 0x0  |
+      | 0x2  | 0x1f | 0x48 | 0x6  | 0x73 | 0x65 | 0x72 | 0x76 |
+      | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 | 0x74 | 0x0  |      |
+    When the packet is filtered against the following names:
+      | other.local. |
+    Then the packet shall be accepted by the filter
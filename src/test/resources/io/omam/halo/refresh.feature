@@ -0,0 +1,151 @@
+Feature: Refreshing of cached DNS records
+
+  Background:
+    Given a cache has been created
+    And the following names are of interest:
+      | _music._tcp.local. |
+      | living.local.      |
+    And a refresher has been created
+
+  Scenario: Cached records refreshed at 80%, 85%, 90% and 95% of their TTL
+    When the following records are cached:
+      | serviceName        | recordType | recordClass | ttl    | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT100S | Living Room._music._tcp.local. |             |
+      | living.local.      | A          | IN          | PT100S |                                | 192.168.1.2 |
+    And the cached records have been scheduled for refresh
+    And 79 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent no query
+    When 4 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName        | recordType | recordClass |
+      | _music._tcp.local. | PTR        | IN          |
+      | living.local.      | A          | IN          |
+    When 5 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName        | recordType | recordClass |
+      | _music._tcp.local. | PTR        | IN          |
+      | living.local.      | A          | IN          |
+    When 5 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName        | recordType | recordClass |
+      | _music._tcp.local. | PTR        | IN          |
+      | living.local.      | A          | IN          |
+    When 5 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName        | recordType | recordClass |
+      | _music._tcp.local. | PTR        | IN          |
+      | living.local.      | A          | IN          |
+    When 1 second has elapsed
+    And the refresher has run
+    Then the refresher shall have sent no query
+
+  Scenario: Only cached records whose name is of interest refreshed
+    When the following records are cached:
+      | serviceName    | recordType | recordClass | ttl    | address     |
+      | living.local.  | A          | IN          | PT100S | 192.168.1.2 |
+      | bedroom.local. | A          | IN          | PT100S | 192.168.1.3 |
+    And the cached records have been scheduled for refresh
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName   | recordType | recordClass |
+      | living.local. | A          | IN          |
+    When 15 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName   | recordType | recordClass |
+      | living.local. | A          | IN          |
+
+  Scenario: Replaced record no longer refreshed
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl    | address     |
+      | living.local. | A          | IN          | PT100S | 192.168.1.2 |
+    And the cached records have been scheduled for refresh
+    And 50 seconds have elapsed
+    And the following records are cached:
+      | serviceName   | recordType | recordClass | ttl    | address     |
+      | living.local. | A          | IN          | PT100S | 192.168.1.2 |
+    And 33 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent no query
+
+  Scenario: Cached record of no interest when scheduled refreshed once of interest
+    When the following records are cached:
+      | serviceName    | recordType | recordClass | ttl    | address     |
+      | bedroom.local. | A          | IN          | PT100S | 192.168.1.3 |
+    And the cached records have been scheduled for refresh
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent no query
+    When the following names are of interest:
+      | bedroom.local. |
+    And 5 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName    | recordType | recordClass |
+      | bedroom.local. | A          | IN          |
+
+  Scenario: Records loaded from a snapshot before their name is of interest refreshed
+    Given a cache snapshot has been created
+    When the following records are cached:
+      | serviceName    | recordType | recordClass | ttl    | address     |
+      | kitchen.local. | A          | IN          | PT100S | 192.168.1.4 |
+    And the cache snapshot is saved
+    And the cache has been cleared
+    And the cache snapshot is loaded
+    And the records loaded from the snapshot have been scheduled for refresh
+    And the following names are of interest:
+      | kitchen.local. |
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName    | recordType | recordClass |
+      | kitchen.local. | A          | IN          |
+
+  Scenario: Removed record no longer refreshed
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl    | address     |
+      | living.local. | A          | IN          | PT100S | 192.168.1.2 |
+    And the cached records have been scheduled for refresh
+    And the records named "living.local." are removed
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent no query
+
+  Scenario: Evicted record no longer refreshed
+    Given a cache of capacity 2 records has been created
+    When the following records are cached:
+      | serviceName        | recordType | recordClass | ttl    | target                         | address     |
+      | _music._tcp.local. | PTR        | IN          | PT100S | Living Room._music._tcp.local. |             |
+      | living.local.      | A          | IN          | PT100S |                                | 192.168.1.2 |
+    And the cached records have been scheduled for refresh
+    And the following records are cached:
+      | serviceName    | recordType | recordClass | ttl    | address     |
+      | bedroom.local. | A          | IN          | PT100S | 192.168.1.3 |
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName   | recordType | recordClass |
+      | living.local. | A          | IN          |
+
+  Scenario: Record scheduled again refreshed once per TTL percentage
+    When the following records are cached:
+      | serviceName   | recordType | recordClass | ttl    | address     |
+      | living.local. | A          | IN          | PT100S | 192.168.1.2 |
+    And the cached records have been scheduled for refresh
+    And the cached records have been scheduled for refresh
+    And 83 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName   | recordType | recordClass |
+      | living.local. | A          | IN          |
+    When 5 seconds have elapsed
+    And the refresher has run
+    Then the refresher shall have sent a query for:
+      | serviceName   | recordType | recordClass |
+      | living.local. | A          | IN          |
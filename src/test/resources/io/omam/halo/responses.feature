@@ -17,6 +17,46 @@ Feature: DNS responses
       | 0x0  | 0x1f | 0x48 | 0x6  | 0x73 | 0x65 | 0x72 | 0x76 |
       | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 | 0x74 | 0x0  |      |
 
+  Scenario: Packets from outgoing DNS response exceeding the maximum packet size
+    Given a DNS response has been created
+    And the following answers have been added:
+      | serviceName          | recordType | recordClass | ttl  | address                                 |
+      | some.authority.ipv6. | AAAA       | IN          | PT1H | 2001:0db8:85a3:0000:0000:8a2e:0370:7334 |
+      | some.authority.ipv4. | A          | IN          | PT1H | 192.168.154.0                           |
+    When the DNS message is encoded in packets of at most 60 bytes
+    Then 2 packet(s) shall be produced
+    And packet 1 shall contain the following bytes:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x4  | 0x73 | 0x6f | 0x6d |
+      | 0x65 | 0x9  | 0x61 | 0x75 | 0x74 | 0x68 | 0x6f | 0x72 |
+      | 0x69 | 0x74 | 0x79 | 0x4  | 0x69 | 0x70 | 0x76 | 0x36 |
+      | 0x0  | 0x0  | 0x1c | 0x0  | 0x1  | 0x0  | 0x0  | 0xe  |
+      | 0x10 | 0x0  | 0x10 | 0x20 | 0x1  | 0xd  | 0xb8 | 0x85 |
+      | 0xa3 | 0x0  | 0x0  | 0x0  | 0x0  | 0x8a | 0x2e | 0x3  |
+      | 0x70 | 0x73 | 0x34 |      |      |      |      |      |
+    And packet 2 shall contain the following bytes:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x4  | 0x73 | 0x6f | 0x6d |
+      | 0x65 | 0x9  | 0x61 | 0x75 | 0x74 | 0x68 | 0x6f | 0x72 |
+      | 0x69 | 0x74 | 0x79 | 0x4  | 0x69 | 0x70 | 0x76 | 0x34 |
+      | 0x0  | 0x0  | 0x1  | 0x0  | 0x1  | 0x0  | 0x0  | 0xe  |
+      | 0x10 | 0x0  | 0x4  | 0xc0 | 0xa8 | 0x9a | 0x0  |      |
+
+  Scenario: Packet from outgoing DNS response to a legacy unicast query
+    Given a DNS response has been created
+    And the DNS message has been addressed to 192.168.154.1 port 40000 with ID 4660
+    And the following answers have been added:
+      | serviceName          | recordType | recordClass | ttl  | address       |
+      | some.authority.ipv4. | A          | IN          | PT1H | 192.168.154.0 |
+    When the DNS message is encoded
+    Then the packet shall contain the following bytes:
+      | 0x12 | 0x34 | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x4  | 0x73 | 0x6f | 0x6d |
+      | 0x65 | 0x9  | 0x61 | 0x75 | 0x74 | 0x68 | 0x6f | 0x72 |
+      | 0x69 | 0x74 | 0x79 | 0x4  | 0x69 | 0x70 | 0x76 | 0x34 |
+      | 0x0  | 0x0  | 0x1  | 0x0  | 0x1  | 0x0  | 0x0  | 0x0  |
+      | 0xa  | 0x0  | 0x4  | 0xc0 | 0xa8 | 0x9a | 0x0  |      |
+
   Scenario: DNS response with an answer from incoming packet
     Given the following packet has been received:
       | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
@@ -69,4 +109,91 @@ Feature: DNS responses
       | 0x65 | 0x72 | 0x76 | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 |
       | 0x74 | 0x0  |      |      |      |      |      |      |
     When the packet is decoded into a DNS message
-    Then a "java.io.IOException" shall be thrown with message containing "Failed to skip over ignored record"
+    Then a "java.io.IOException" shall be thrown with message containing "Invalid label type"
+
+  Scenario: Truncated records are rejected
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0x21 | 0x0  | 0x1  | 0x0  |
+      | 0x0  | 0xa  | 0x8c | 0x0  | 0x12 | 0x0  | 0x9a | 0x0  |
+      | 0x2  | 0x1f | 0x48 | 0x6  | 0x73 | 0x65 | 0x72 | 0x76 |
+      | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 |      |      |      |
+    When the packet is decoded into a DNS message
+    Then a "java.io.IOException" shall be thrown with message containing "Truncated"
+
+  Scenario: Names with a compression pointer loop are rejected
+    Given the following packet has been received:
+      | 0x0  | 0x0 | 0x0 | 0x0 | 0x0 | 0x1  | 0x0  | 0x0  |
+      | 0x0  | 0x0 | 0x0 | 0x0 | 0x3 | 0x66 | 0x6f | 0x6f |
+      | 0xc0 | 0xc | 0x0 | 0xc | 0x0 | 0x1  |      |      |
+    When the packet is decoded into a DNS message
+    Then a "java.io.IOException" shall be thrown with message containing "Invalid compression pointer"
+
+  Scenario: Names with a truncated label are rejected
+    Given the following packet has been received:
+      | 0x0 | 0x0 | 0x0 | 0x0 | 0x0 | 0x1  | 0x0  | 0x0  |
+      | 0x0 | 0x0 | 0x0 | 0x0 | 0x5 | 0x66 | 0x6f | 0x6f |
+    When the packet is decoded into a DNS message
+    Then a "java.io.IOException" shall be thrown with message containing "Truncated label"
+
+  Scenario: Names with a reserved label type are rejected
+    Given the following packet has been received:
+      | 0x0  | 0x0 | 0x0 | 0x0 | 0x0 | 0x1  | 0x0  | 0x0  |
+      | 0x0  | 0x0 | 0x0 | 0x0 | 0x3 | 0x66 | 0x6f | 0x6f |
+      | 0x40 | 0xc | 0x0 | 0xc | 0x0 | 0x1  |      |      |
+    When the packet is decoded into a DNS message
+    Then a "java.io.IOException" shall be thrown with message containing "Invalid label type"
+
+  Scenario: Records of a received message not decoded from its buffer once released
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0x21 | 0x0  | 0x1  | 0x0  |
+      | 0x0  | 0xa  | 0x8c | 0x0  | 0x12 | 0x0  | 0x0  | 0x0  |
+      | 0x0  | 0x1f | 0x48 | 0x6  | 0x73 | 0x65 | 0x72 | 0x76 |
+      | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 | 0x74 | 0x0  |      |
+    When the packet is decoded into a DNS message from a reusable buffer
+    And the DNS message is released and its buffer reused
+    Then the records of the DNS message shall no longer be decodable
+
+  Scenario: Records of a received message accessed before it is released remain available
+    Given the following packet has been received:
+      | 0x0  | 0x0  | 0x80 | 0x0  | 0x0  | 0x0  | 0x0  | 0x1  |
+      | 0x0  | 0x0  | 0x0  | 0x0  | 0x3  | 0x66 | 0x6f | 0x6f |
+      | 0x3  | 0x62 | 0x61 | 0x72 | 0x5  | 0x6c | 0x6f | 0x63 |
+      | 0x61 | 0x6c | 0x0  | 0x0  | 0x21 | 0x0  | 0x1  | 0x0  |
+      | 0x0  | 0xa  | 0x8c | 0x0  | 0x12 | 0x0  | 0x0  | 0x0  |
+      | 0x0  | 0x1f | 0x48 | 0x6  | 0x73 | 0x65 | 0x72 | 0x76 |
+      | 0x65 | 0x72 | 0x3  | 0x6e | 0x65 | 0x74 | 0x0  |      |
+    When the packet is decoded into a DNS message from a reusable buffer
+    And the records of the DNS message are accessed
+    And the DNS message is released and its buffer reused
+    Then it contains the following answers:
+      | serviceName    | recordType | recordClass | ttl   | port | server      |
+      | foo.bar.local. | SRV        | IN          | PT45M | 8008 | server.net. |
+
+  Scenario: Records of a received message looked up by name and by type
+    Given a DNS response has been created
+    And the following answers have been added:
+      | serviceName                    | recordType | recordClass | ttl  | target                         | port | server        | address     | text      |
+      | _music._tcp.local.             | PTR        | IN          | PT1H | Living Room._music._tcp.local. |      |               |             |           |
+      | Living Room._music._tcp.local. | SRV        | IN          | PT2M |                                | 9009 | living.local. |             |           |
+      | Living Room._music._tcp.local. | TXT        | IN          | PT1H |                                |      |               |             | Some Text |
+      | living.local.                  | A          | IN          | PT2M |                                |      |               | 192.168.1.2 |           |
+      | bedroom.local.                 | A          | IN          | PT2M |                                |      |               | 192.168.1.3 |           |
+    When the DNS message is encoded and decoded
+    Then its answers named "LIVING ROOM._music._tcp.local." shall be:
+      | serviceName                    | recordType | recordClass | ttl  | port | server        | text      |
+      | Living Room._music._tcp.local. | SRV        | IN          | PT2M | 9009 | living.local. |           |
+      | Living Room._music._tcp.local. | TXT        | IN          | PT1H |      |               | Some Text |
+    And its answers named "kitchen.local." shall be:
+      | serviceName | recordType | recordClass | ttl |
+    And its answers of type A shall be:
+      | serviceName    | recordType | recordClass | ttl  | address     |
+      | living.local.  | A          | IN          | PT2M | 192.168.1.2 |
+      | bedroom.local. | A          | IN          | PT2M | 192.168.1.3 |
+    And its answers of type AAAA shall be:
+      | serviceName | recordType | recordClass | ttl |
@@ -0,0 +1,105 @@
+Feature: Sending queue
+
+  Messages to be sent are queued by priority: probes, announcements and goodbyes go ahead of answers,
+  which go ahead of browsing and resolution queries. Messages of the same priority are sent in the
+  order they have been queued.
+
+  When the queue is full, a message is never dropped in favour of a message of lower priority.
+
+  Scenario: Messages are sent by priority then by insertion order
+    Given a sending queue of capacity 10 with overflow policy DROP_OLDEST has been created
+    When the following messages are queued:
+      | name    | priority     |
+      | query1  | QUERY        |
+      | answer1 | ANSWER       |
+      | probe1  | REGISTRATION |
+      | query2  | QUERY        |
+      | probe2  | REGISTRATION |
+    Then the messages shall be sent in the following order:
+      | name    |
+      | probe1  |
+      | probe2  |
+      | answer1 |
+      | query1  |
+      | query2  |
+    And 0 message(s) shall have been dropped
+
+  Scenario: Oldest message of lowest priority is dropped
+    Given a sending queue of capacity 3 with overflow policy DROP_OLDEST has been created
+    When the following messages are queued:
+      | name    | priority     |
+      | query1  | QUERY        |
+      | query2  | QUERY        |
+      | answer1 | ANSWER       |
+      | probe1  | REGISTRATION |
+    Then the messages shall be sent in the following order:
+      | name    |
+      | probe1  |
+      | answer1 |
+      | query2  |
+    And 1 message(s) shall have been dropped
+
+  Scenario: Newest message of lowest priority is dropped
+    Given a sending queue of capacity 2 with overflow policy DROP_NEWEST has been created
+    When the following messages are queued:
+      | name    | priority     |
+      | query1  | QUERY        |
+      | query2  | QUERY        |
+      | query3  | QUERY        |
+      | answer1 | ANSWER       |
+    Then the messages shall be sent in the following order:
+      | name    |
+      | answer1 |
+      | query1  |
+    And 2 message(s) shall have been dropped
+
+  Scenario: Message is never dropped in favour of a message of lower priority
+    Given a sending queue of capacity 2 with overflow policy DROP_OLDEST has been created
+    When the following messages are queued:
+      | name   | priority     |
+      | probe1 | REGISTRATION |
+      | probe2 | REGISTRATION |
+      | query1 | QUERY        |
+    Then the messages shall be sent in the following order:
+      | name   |
+      | probe1 |
+      | probe2 |
+    And 1 message(s) shall have been dropped
+
+  Scenario: Message is dropped after waiting for room
+    Given a sending queue of capacity 1 with overflow policy BLOCK has been created
+    When the following messages are queued:
+      | name   | priority     |
+      | probe1 | REGISTRATION |
+      | probe2 | REGISTRATION |
+    Then the messages shall be sent in the following order:
+      | name   |
+      | probe1 |
+    And 1 message(s) shall have been dropped
+    And 1 message(s) shall have been deferred
+
+  Scenario: Message of lower priority is dropped rather than waiting for room
+    Given a sending queue of capacity 2 with overflow policy BLOCK has been created
+    When the following messages are queued:
+      | name    | priority     |
+      | query1  | QUERY        |
+      | answer1 | ANSWER       |
+      | probe1  | REGISTRATION |
+    Then the messages shall be sent in the following order:
+      | name    |
+      | probe1  |
+      | answer1 |
+    And 1 message(s) shall have been dropped
+    And 0 message(s) shall have been deferred
+
+  Scenario: Message is dropped without waiting by a thread which must not wait
+    Given a sending queue of capacity 1 with overflow policy BLOCK has been created
+    When the following messages are queued without waiting:
+      | name    | priority |
+      | answer1 | ANSWER   |
+      | answer2 | ANSWER   |
+    Then the messages shall be sent in the following order:
+      | name    |
+      | answer1 |
+    And 1 message(s) shall have been dropped
+    And 0 message(s) shall have been deferred
@@ -44,3 +44,21 @@ Feature: Service attributes update
     Then the following resolved services shall be returned:
       | instanceName        | registrationType | port | text         |
       | Living Room Speaker | _music._tcp.     | 9009 | Another Text |
+
+  Scenario: Records of a registered service rebuilt after its attributes have been updated
+    Given a virtual LAN with a latency of "PT0.005S" and a loss of 0% has been created
+    And 2 Halo instances have joined the virtual LAN
+    And the following services have been registered by instance 1 with its address:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    And the following services shall be resolved by instance 2:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    When the attributes of the service "Living Room Speaker._music._tcp." registered by instance 1 are updated to "Another Text"
+    And 1 Halo instance has joined the virtual LAN
+    Then the following services shall be resolved by instance 2:
+      | instanceName        | registrationType | port | text         |
+      | Living Room Speaker | _music._tcp.     | 9009 | Another Text |
+    And the following services shall be resolved by instance 3:
+      | instanceName        | registrationType | port | text         |
+      | Living Room Speaker | _music._tcp.     | 9009 | Another Text |
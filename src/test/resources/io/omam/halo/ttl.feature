@@ -64,3 +64,36 @@ Feature: DNS record time-to-live
       | PTR  |
       | SRV  |
       | TXT  |
+
+  Scenario Outline: DNS <type> record expiry following a change of TTL
+    Given a DNS <type> record has been created at '2018-01-20T11:05:00.00Z' with a ttl of 'PT30M'
+    When the TTL of the DNS record is set to 'PT10M'
+    And the time is '2018-01-20T11:14:00.00Z'
+    Then the DNS record TTL shall be 'PT10M'
+    And the DNS record remaining TTL shall be 'PT1M'
+    And the DNS record is not expired
+    When the time is '2018-01-20T11:15:00.00Z'
+    Then the DNS record is expired
+
+    Examples: 
+      | type |
+      | A    |
+      | AAAA |
+      | PTR  |
+      | SRV  |
+      | TXT  |
+
+  Scenario: DNS record refresh times following a change of TTL
+    Given a DNS A record has been created at '2018-01-20T11:05:00.00Z' with a ttl of 'PT100S'
+    Then the DNS record shall be refreshed at:
+      | 2018-01-20T11:06:20Z |
+      | 2018-01-20T11:06:25Z |
+      | 2018-01-20T11:06:30Z |
+      | 2018-01-20T11:06:35Z |
+    When the TTL of the DNS record is set to 'PT200S'
+    Then the DNS record TTL shall be 'PT3M20S'
+    And the DNS record shall be refreshed at:
+      | 2018-01-20T11:07:40Z |
+      | 2018-01-20T11:07:50Z |
+      | 2018-01-20T11:08:00Z |
+      | 2018-01-20T11:08:10Z |
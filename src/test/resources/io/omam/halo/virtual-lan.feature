@@ -0,0 +1,54 @@
+Feature: Virtual LAN
+
+  Halo instances connected in process through a virtual LAN rather than through the network
+  interfaces of this machine.
+
+  Scenario: Service resolved by other instances
+    Given a virtual LAN with a latency of "PT0.005S" and a loss of 0% has been created
+    And 3 Halo instances have joined the virtual LAN
+    When the following services are registered by instance 1:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    Then the following services shall be resolved by instance 2:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    And the following services shall be resolved by instance 3:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    And no received datagram shall have been dropped by instance 2
+
+  Scenario: Service not resolved when every datagram is lost
+    Given a virtual LAN with a latency of "PT0S" and a loss of 100% has been created
+    And 2 Halo instances have joined the virtual LAN
+    When the following services are registered by instance 1:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    Then no service "Living Room Speaker._music._tcp." shall be resolved by instance 2 within "PT1S"
+    And datagrams shall have been sent and lost on the virtual LAN but none delivered
+
+  Scenario: Address of a registered service updated after the address of its link has changed
+    Given a virtual LAN with a latency of "PT0.005S" and a loss of 0% has been created
+    And 2 Halo instances have joined the virtual LAN
+    And the following services have been registered by instance 1 with its address:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    And the service "Living Room Speaker._music._tcp." resolved by instance 2 shall have the address of instance 1
+    When the address of instance 1 changes
+    Then the service "Living Room Speaker._music._tcp." resolved by instance 2 shall have the address of instance 1
+
+  Scenario: Legacy unicast query answered to the port of the querier
+    Given a virtual LAN with a latency of "PT0.005S" and a loss of 0% has been created
+    And 1 Halo instances have joined the virtual LAN
+    And a legacy resolver has joined the virtual LAN
+    And the following services have been registered by instance 1 with its address:
+      | instanceName        | registrationType | port | text      |
+      | Living Room Speaker | _music._tcp.     | 9009 | Some Text |
+    When the legacy resolver queries "_music._tcp.local."
+    Then the legacy resolver shall receive a response to its query for "_music._tcp.local."
+
+  Scenario: Datagram larger than the receiving buffer dropped
+    Given a virtual LAN with a latency of "PT0S" and a loss of 0% has been created
+    And 2 Halo instances have joined the virtual LAN
+    When a datagram of 10000 bytes is sent by instance 1
+    Then 2 oversized datagrams shall have been dropped by the virtual LAN
+    And no received datagram shall have been dropped by instance 2